@@ -37,8 +37,16 @@ public class CaseReport extends BaseOpenmrsData implements Serializable {
 	
 	private Set<CaseReportTrigger> reportTriggers;
 	
+	//The decoded report form, it is only decoded when it is first accessed
 	private String reportForm;
 	
+	//Mapped as a lazy proxy so that the encoded report form is only loaded when it is decoded
+	private EncodedReportForm encodedReportForm;
+	
+	//Report forms saved before they were encoded, they get moved to encodedReportForm when the case
+	//report is next saved
+	private String legacyReportForm;
+	
 	private boolean autoSubmitted = Boolean.FALSE;
 	
 	private Date resolutionDate;
@@ -102,11 +110,39 @@ public class CaseReport extends BaseOpenmrsData implements Serializable {
 	}
 	
 	public String getReportForm() {
+		if (reportForm == null) {
+			if (encodedReportForm != null) {
+				reportForm = ReportFormCodec.decode(encodedReportForm.getEncodedForm());
+			} else {
+				reportForm = legacyReportForm;
+			}
+		}
 		return reportForm;
 	}
 	
 	public void setReportForm(String reportForm) {
 		this.reportForm = reportForm;
+		byte[] encodedForm = ReportFormCodec.encode(reportForm);
+		if (encodedReportForm != null) {
+			//Updated in place so that the previous form doesn't become an orphan row
+			encodedReportForm.setEncodedForm(encodedForm);
+		} else if (encodedForm != null) {
+			encodedReportForm = new EncodedReportForm(encodedForm);
+		}
+		legacyReportForm = null;
+	}
+	
+	/**
+	 * Encodes the report form if it is still stored in the legacy plain text column
+	 * 
+	 * @return true if the report form was encoded otherwise false
+	 */
+	public boolean encodeLegacyReportForm() {
+		if (legacyReportForm == null) {
+			return false;
+		}
+		setReportForm(getReportForm());
+		return true;
 	}
 	
 	public boolean getAutoSubmitted() {
@@ -19,13 +19,16 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.Concept;
 import org.openmrs.api.APIException;
+import org.openmrs.api.GlobalPropertyListener;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.BaseModuleActivator;
 import org.openmrs.module.ModuleActivator;
+import org.openmrs.module.casereport.api.CaseReportService;
 import org.openmrs.module.reporting.cohort.definition.CohortDefinition;
 import org.openmrs.module.reporting.cohort.definition.SqlCohortDefinition;
 import org.openmrs.module.reporting.definition.DefinitionContext;
 import org.openmrs.module.reporting.evaluation.parameter.Parameter;
+import org.openmrs.scheduler.SchedulerException;
 import org.openmrs.scheduler.SchedulerService;
 import org.openmrs.scheduler.TaskDefinition;
 
@@ -40,6 +43,7 @@ public class CaseReportActivator extends BaseModuleActivator {
 	 * @see ModuleActivator#willRefreshContext()
 	 */
 	public void willRefreshContext() {
+		removeConfigListener();
 		log.info("Refreshing Case Report Module");
 	}
 	
@@ -54,13 +58,49 @@ public class CaseReportActivator extends BaseModuleActivator {
 	 * <strong>Should</strong> save a cohort queries with a name that matches a retired duplicate
 	 * <strong>Should</strong> load queries and register them with the reporting module
 	 * <strong>Should</strong> add the case report tasks if they do not exist
+	 * <strong>Should</strong> add the submission dispatcher task if it does not exist
+	 * <strong>Should</strong> add the missing queue entries
 	 * @see ModuleActivator#contextRefreshed()
 	 */
 	public void contextRefreshed() {
 		loadQueries();
+		addSubmissionDispatcherTaskIfNecessary();
+		addMissingQueueEntries();
+		addConfigListener();
 		log.info("Case Report Module refreshed");
 	}
 	
+	/**
+	 * Registers the listener that discards the cached global property values of the web layer when
+	 * they are changed, it is registered here rather than when the bean is created since the services
+	 * can't be used while the application context is being refreshed.
+	 */
+	private void addConfigListener() {
+		GlobalPropertyListener listener = getConfigListener();
+		if (listener != null) {
+			Context.getAdministrationService().addGlobalPropertyListener(listener);
+		}
+	}
+	
+	private void removeConfigListener() {
+		GlobalPropertyListener listener = getConfigListener();
+		if (listener != null) {
+			Context.getAdministrationService().removeGlobalPropertyListener(listener);
+		}
+	}
+	
+	private GlobalPropertyListener getConfigListener() {
+		try {
+			return Context.getRegisteredComponent(CaseReportConstants.CONFIG_LISTENER_BEAN_NAME,
+			    GlobalPropertyListener.class);
+		}
+		catch (APIException e) {
+			//The listener is defined by the web layer which is not loaded in some environments e.g. tests
+			log.debug("No case report config listener found", e);
+			return null;
+		}
+	}
+	
 	private void loadQueries() {
 		log.info("Loading queries...");
 		
@@ -153,6 +193,37 @@ public class CaseReportActivator extends BaseModuleActivator {
 		}
 	}
 	
+	private void addSubmissionDispatcherTaskIfNecessary() {
+		SchedulerService ss = Context.getSchedulerService();
+		if (ss.getTaskByName(CaseReportConstants.SUBMISSION_DISPATCHER_TASK_NAME) != null) {
+			return;
+		}
+		
+		log.info("Creating Case Report Submission Dispatcher Task");
+		
+		String description = Context.getMessageSourceService().getMessage(
+		    "casereport.description.submissionDispatcherTask");
+		TaskDefinition td = new TaskDefinition(null, CaseReportConstants.SUBMISSION_DISPATCHER_TASK_NAME, description,
+		        CaseReportConstants.SUBMISSION_DISPATCHER_TASK_CLASS);
+		td.setStartOnStartup(true);
+		td.setStartTime(new Date());
+		td.setRepeatInterval(CaseReportConstants.SUBMISSION_DISPATCHER_TASK_INTERVAL);
+		ss.saveTaskDefinition(td);
+		try {
+			ss.scheduleTask(td);
+		}
+		catch (SchedulerException e) {
+			log.warn("Failed to schedule the submission dispatcher task, it will be started on the next startup", e);
+		}
+	}
+	
+	private void addMissingQueueEntries() {
+		int count = Context.getService(CaseReportService.class).addMissingQueueEntries();
+		if (count > 0) {
+			log.info("Added the queue entries of " + count + " case report(s)");
+		}
+	}
+	
 	/**
 	 * @see ModuleActivator#willStart()
 	 */
@@ -171,6 +242,7 @@ public class CaseReportActivator extends BaseModuleActivator {
 	 * @see ModuleActivator#willStop()
 	 */
 	public void willStop() {
+		removeConfigListener();
 		log.info("Stopping Case Report Module");
 	}
 	
@@ -178,6 +250,7 @@ public class CaseReportActivator extends BaseModuleActivator {
 	 * @see ModuleActivator#stopped()
 	 */
 	public void stopped() {
+		ConceptCache.clear();
 		log.info("Case Report Module stopped");
 	}
 	
@@ -0,0 +1,291 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.casereport;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.APIException;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.context.UserContext;
+import org.openmrs.module.casereport.api.CaseReportService;
+
+/**
+ * Submits the case reports that get automatically created when a trigger is run. If the pool size
+ * is greater than 1 the reports are submitted in parallel by a pool of worker threads, each worker
+ * opens its own OpenMRS session and the number of reports waiting for a worker is bounded by the
+ * queue size, otherwise the reports are submitted one at a time in the calling thread. The reports
+ * are processed in chunks and the clinical data for the report forms of the patients in a chunk is
+ * loaded together via {@link CaseReportFormDataLoader}. A failure
+ * to submit a report doesn't stop the others from being submitted, instead it is recorded in the
+ * {@link Result}. An instance is meant to be used for a single trigger run, the reports of every
+ * batch of the run are added to the same pool and result via {@link #add(List)} and
+ * {@link #finish()} must be called when the run is done to wait for them and stop the workers.
+ */
+public class CaseReportAutoSubmitter {
+	
+	private static final Log log = LogFactory.getLog(CaseReportAutoSubmitter.class);
+	
+	private static final AtomicInteger threadCount = new AtomicInteger();
+	
+	//The number of reports for which the form data is loaded together
+	private static final int CHUNK_SIZE = 50;
+	
+	private final Result result = new Result();
+	
+	//Null if the reports are submitted in the calling thread
+	private final ExecutorService executor;
+	
+	private final Semaphore permits;
+	
+	/**
+	 * @param poolSize the maximum number of reports to submit in parallel
+	 * @param queueSize the maximum number of reports that can wait for a free worker
+	 */
+	public CaseReportAutoSubmitter(int poolSize, int queueSize) {
+		if (poolSize > 1) {
+			//The threads are only started when the first chunk is added
+			executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+			        new LinkedBlockingQueue<Runnable>(), new AutoSubmitThreadFactory());
+			permits = new Semaphore(poolSize + queueSize);
+		} else {
+			executor = null;
+			permits = null;
+		}
+	}
+	
+	/**
+	 * Submits the case reports with the specified uuids and waits for them to be submitted, the
+	 * submitter can't be used after this call.
+	 *
+	 * @param caseReportUuids the uuids of the case reports to submit
+	 * @return the summary of the successful and failed submissions
+	 */
+	public Result submit(List<String> caseReportUuids) {
+		try {
+			add(caseReportUuids);
+		}
+		finally {
+			finish();
+		}
+		return result;
+	}
+	
+	/**
+	 * Adds the case reports with the specified uuids to be submitted, this allows the reports of a
+	 * trigger run to be submitted batch by batch as they are created by the same workers while
+	 * keeping a single summary. The call blocks while the queue of the workers is full.
+	 *
+	 * @param caseReportUuids the uuids of the case reports to submit
+	 */
+	public void add(List<String> caseReportUuids) {
+		List<List<String>> chunks = new ArrayList<>();
+		for (int fromIndex = 0; fromIndex < caseReportUuids.size(); fromIndex += CHUNK_SIZE) {
+			chunks.add(caseReportUuids.subList(fromIndex, Math.min(fromIndex + CHUNK_SIZE, caseReportUuids.size())));
+		}
+		
+		if (executor == null) {
+			for (List<String> chunk : chunks) {
+				submitChunk(chunk, result);
+			}
+			return;
+		}
+		
+		final UserContext userContext = Context.getUserContext();
+		for (final List<String> chunk : chunks) {
+			//Blocks until there is room in the queue
+			permits.acquireUninterruptibly();
+			try {
+				executor.execute(new Runnable() {
+					
+					@Override
+					public void run() {
+						try {
+							Context.openSession();
+							Context.setUserContext(userContext);
+							submitChunk(chunk, result);
+						}
+						finally {
+							Context.closeSession();
+							permits.release();
+						}
+					}
+				});
+			}
+			catch (RejectedExecutionException e) {
+				permits.release();
+				throw new APIException("Reports can't be added after the auto submission has finished", e);
+			}
+		}
+	}
+	
+	/**
+	 * Waits for all the added case reports to be submitted and stops the workers
+	 *
+	 * @return the summary of the successful and failed submissions of all the added reports
+	 */
+	public Result finish() {
+		if (executor != null) {
+			executor.shutdown();
+			try {
+				while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+					log.info("Waiting for auto submission of case reports to complete...");
+				}
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new APIException("Interrupted while waiting for auto submission of case reports to complete", e);
+			}
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Loads the case reports with the specified uuids and the clinical data of their patients and
+	 * then submits them one by one, any error is logged and added to the specified result instead of
+	 * being rethrown, if the reports or the clinical data fail to load all the reports in the chunk
+	 * are recorded as failed.
+	 *
+	 * @param uuids the uuids of the case reports to submit
+	 * @param result the result to update
+	 */
+	void submitChunk(List<String> uuids, Result result) {
+		List<CaseReport> caseReports = new ArrayList<>(uuids.size());
+		Set<String> notFoundUuids = new HashSet<>();
+		Map<Integer, CaseReportFormDataLoader.FormData> patientIdAndFormDataMap;
+		try {
+			CaseReportService service = Context.getService(CaseReportService.class);
+			Set<Integer> patientIds = new HashSet<>();
+			for (String uuid : uuids) {
+				CaseReport caseReport = service.getCaseReportByUuid(uuid);
+				if (caseReport == null) {
+					notFoundUuids.add(uuid);
+					result.addFailure(uuid, new APIException("No case report found with uuid: " + uuid));
+					continue;
+				}
+				caseReports.add(caseReport);
+				patientIds.add(caseReport.getPatient().getPatientId());
+			}
+			patientIdAndFormDataMap = CaseReportFormDataLoader.load(patientIds);
+		}
+		catch (Throwable t) {
+			log.warn("Failed to load the case reports to auto submit", t);
+			//Record all the reports in the chunk including those not yet loaded when the error occurred
+			for (String uuid : uuids) {
+				if (!notFoundUuids.contains(uuid)) {
+					result.addFailure(uuid, t);
+				}
+			}
+			return;
+		}
+		
+		for (CaseReport caseReport : caseReports) {
+			submit(caseReport, patientIdAndFormDataMap.get(caseReport.getPatient().getPatientId()), result);
+		}
+	}
+	
+	/**
+	 * Generates the report form for the specified case report from the specified form data and
+	 * submits it, any error is logged and added to the specified result instead of being rethrown
+	 *
+	 * @param caseReport the case report to submit
+	 * @param formData the clinical data of the patient
+	 * @param result the result to update
+	 */
+	private void submit(CaseReport caseReport, CaseReportFormDataLoader.FormData formData, Result result) {
+		try {
+			CaseReportService service = Context.getService(CaseReportService.class);
+			CaseReportForm form = new CaseReportForm(caseReport, formData);
+			caseReport.setReportForm(JsonCodec.writeForm(form));
+			service.submitCaseReport(caseReport);
+			result.addSuccess(caseReport.getUuid());
+		}
+		catch (Throwable t) {
+			log.warn("Failed to auto submit " + caseReport, t);
+			//Discard the changes made to the report in the failed attempt so that they don't
+			//get flushed to the database along with other reports sharing the session
+			Context.evictFromSession(caseReport);
+			result.addFailure(caseReport.getUuid(), t);
+		}
+	}
+	
+	/**
+	 * Creates named daemon threads for the auto submission workers
+	 */
+	private static class AutoSubmitThreadFactory implements ThreadFactory {
+		
+		/**
+		 * @see ThreadFactory#newThread(Runnable)
+		 */
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "casereport-auto-submit-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+	
+	/**
+	 * Encapsulates the outcome of submitting a group of case reports
+	 */
+	public static class Result {
+		
+		private int successCount;
+		
+		private Map<String, String> failures = new LinkedHashMap<>();
+		
+		private synchronized void addSuccess(String uuid) {
+			successCount++;
+		}
+		
+		private synchronized void addFailure(String uuid, Throwable t) {
+			failures.put(uuid, t.getMessage() != null ? t.getMessage() : t.getClass().getName());
+		}
+		
+		/**
+		 * @return the number of reports that were successfully submitted
+		 */
+		public synchronized int getSuccessCount() {
+			return successCount;
+		}
+		
+		/**
+		 * @return a map of the uuids of the reports that failed to be submitted and the errors
+		 */
+		public synchronized Map<String, String> getFailures() {
+			return Collections.unmodifiableMap(new LinkedHashMap<>(failures));
+		}
+		
+		/**
+		 * @see Object#toString()
+		 */
+		@Override
+		public synchronized String toString() {
+			return "Succeeded: " + successCount + ", Failed: " + failures.size()
+			        + (failures.isEmpty() ? "" : " " + failures);
+		}
+	}
+}
@@ -9,14 +9,11 @@
  */
 package org.openmrs.module.casereport;
 
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-
 public class CaseReportConstants {
 	
 	public static final String MODULE_ID = "casereport";
 	
-	public static final DateFormat DATE_FORMATTER = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+	public static final DateCodec DATE_FORMATTER = new DateCodec("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
 	
 	public static final String TRIGGER_PATIENT_DIED = "Patient Died";
 	
@@ -26,8 +23,39 @@ public class CaseReportConstants {
 	
 	public static final String AUTO_SUBMIT_TASK_PROPERTY = "Auto Submit";
 	
+	public static final String CONFIG_LISTENER_BEAN_NAME = MODULE_ID + "-configListener";
+	
 	public static final String GP_AUTO_SUBMIT_PROVIDER_UUID = MODULE_ID + ".autoSubmitProviderUuid";
 	
+	public static final String GP_TASK_BATCH_SIZE = MODULE_ID + ".taskBatchSize";
+	
+	public static final int DEFAULT_TASK_BATCH_SIZE = 500;
+	
+	public static final String GP_SAVE_BATCH_SIZE = MODULE_ID + ".saveBatchSize";
+	
+	public static final int DEFAULT_SAVE_BATCH_SIZE = 50;
+	
+	public static final String GP_AUTO_SUBMIT_POOL_SIZE = MODULE_ID + ".autoSubmitPoolSize";
+	
+	public static final int DEFAULT_AUTO_SUBMIT_POOL_SIZE = 1;
+	
+	public static final String GP_AUTO_SUBMIT_QUEUE_SIZE = MODULE_ID + ".autoSubmitQueueSize";
+	
+	public static final int DEFAULT_AUTO_SUBMIT_QUEUE_SIZE = 100;
+	
+	public static final String GP_STREAM_COHORTS = MODULE_ID + ".streamCohorts";
+	
+	public static final String GP_COHORT_FETCH_SIZE = MODULE_ID + ".cohortFetchSize";
+	
+	public static final int DEFAULT_COHORT_FETCH_SIZE = 1000;
+	
+	public static final String SUBMISSION_DISPATCHER_TASK_NAME = "Case Report Submission Dispatcher";
+	
+	//The task class lives in the web layer since it uses the web service client to deliver documents
+	public static final String SUBMISSION_DISPATCHER_TASK_CLASS = "org.openmrs.module.casereport.SubmissionDispatcherTask";
+	
+	public static final long SUBMISSION_DISPATCHER_TASK_INTERVAL = 60;
+	
 	public static final String PRIV_GET_CASE_REPORTS = "Get Case Reports";
 	
 	public static final String PRIV_MANAGE_CASE_REPORTS = "Manage Case Reports";
@@ -25,7 +25,6 @@ import org.openmrs.Obs;
 import org.openmrs.Patient;
 import org.openmrs.PatientIdentifier;
 import org.openmrs.PersonName;
-import org.openmrs.Visit;
 import org.openmrs.api.APIException;
 import org.openmrs.api.context.Context;
 
@@ -86,6 +85,19 @@ public class CaseReportForm {
 	}
 	
 	public CaseReportForm(CaseReport caseReport) {
+		this(caseReport, CaseReportFormDataLoader.load(caseReport.getPatient()));
+	}
+	
+	/**
+	 * Creates a report form for the specified case report from the specified pre loaded clinical
+	 * data of the patient, this avoids querying the database for each form when generating the
+	 * forms for several case reports.
+	 *
+	 * @param caseReport the case report
+	 * @param formData the clinical data of the patient
+	 * @see CaseReportFormDataLoader#load(java.util.Collection)
+	 */
+	public CaseReportForm(CaseReport caseReport, CaseReportFormDataLoader.FormData formData) {
 		setReportUuid(caseReport.getUuid());
 		setReportDate(caseReport.getDateCreated());
 		Patient patient = caseReport.getPatient();
@@ -121,27 +133,23 @@ public class CaseReportForm {
 			getTriggers().add(new DatedUuidAndValue(tr.getUuid(), tr.getName(), DATE_FORMATTER.format(tr.getDateCreated())));
 		}
 		
-		List<Obs> mostRecentCd4Counts = CaseReportUtil.getMostRecentCD4counts(patient);
-		for (Obs o : mostRecentCd4Counts) {
+		for (Obs o : formData.getMostRecentCd4Counts()) {
 			getMostRecentCd4Counts().add(
 			    new DatedUuidAndValue(o.getUuid(), o.getValueNumeric(), DATE_FORMATTER.format(o.getObsDatetime())));
 		}
 		
-		List<Obs> mostRecentHivTests = CaseReportUtil.getMostRecentHIVTests(patient);
-		for (Obs o : mostRecentHivTests) {
+		for (Obs o : formData.getMostRecentHivTests()) {
 			getMostRecentHivTests().add(
 			    new DatedUuidAndValue(o.getUuid(), o.getValueAsString(Context.getLocale()), DATE_FORMATTER.format(o
 			            .getObsDatetime())));
 		}
 		
-		List<Obs> mostRecentViralLoads = CaseReportUtil.getMostRecentViralLoads(patient);
-		for (Obs o : mostRecentViralLoads) {
+		for (Obs o : formData.getMostRecentViralLoads()) {
 			getMostRecentViralLoads().add(
 			    new DatedUuidAndValue(o.getUuid(), o.getValueNumeric(), DATE_FORMATTER.format(o.getObsDatetime())));
 		}
 		
-		List<DrugOrder> arvOrders = CaseReportUtil.getActiveArvDrugOrders(patient, null);
-		for (DrugOrder drugOrder : arvOrders) {
+		for (DrugOrder drugOrder : formData.getActiveArvDrugOrders()) {
 			String displayName = "";
 			displayName += drugOrder.getConcept().getDisplayString();
 			if (drugOrder.getDrug() != null && StringUtils.isNotBlank(drugOrder.getDrug().getName())) {
@@ -153,21 +161,21 @@ public class CaseReportForm {
 			getCurrentHivMedications().add(new DatedUuidAndValue(drugOrder.getDrug().getUuid(), displayName, dateActivated));
 		}
 		
-		Obs mostRecentWHOStageObs = CaseReportUtil.getMostRecentWHOStage(patient);
+		Obs mostRecentWHOStageObs = formData.getMostRecentWhoStage();
 		if (mostRecentWHOStageObs != null) {
 			setCurrentHivWhoStage(new UuidAndValue(mostRecentWHOStageObs.getUuid(),
 			        mostRecentWHOStageObs.getValueAsString(Context.getLocale())));
 		}
 		
-		Obs mostRecentArvStopReasonObs = CaseReportUtil.getMostRecentReasonARVsStopped(patient);
+		Obs mostRecentArvStopReasonObs = formData.getMostRecentArvStopReason();
 		if (mostRecentArvStopReasonObs != null) {
 			setMostRecentArvStopReason(new UuidAndValue(mostRecentArvStopReasonObs.getUuid(),
 			        mostRecentArvStopReasonObs.getValueAsString(Context.getLocale())));
 		}
 		
-		Visit visit = CaseReportUtil.getLastVisit(patient);
-		if (visit != null) {
-			setLastVisitDate(new UuidAndValue(visit.getUuid(), DATE_FORMATTER.format(visit.getStartDatetime())));
+		UuidAndValue lastVisit = formData.getLastVisitStartDate();
+		if (lastVisit != null) {
+			setLastVisitDate(new UuidAndValue(lastVisit.getUuid(), DATE_FORMATTER.format(lastVisit.getValue())));
 		}
 	}
 	
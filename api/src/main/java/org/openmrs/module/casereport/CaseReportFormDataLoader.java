@@ -0,0 +1,173 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.casereport;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openmrs.Concept;
+import org.openmrs.DrugOrder;
+import org.openmrs.Obs;
+import org.openmrs.Patient;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.casereport.api.CaseReportService;
+
+/**
+ * Loads the clinical data needed to generate the report forms of a group of patients using a few
+ * queries for all the patients instead of several queries per patient, the forms are then
+ * generated from the loaded data via {@link CaseReportForm#CaseReportForm(CaseReport, FormData)}
+ */
+public class CaseReportFormDataLoader {
+	
+	private static final int MAX_OBS_COUNT = 3;
+	
+	/**
+	 * Loads the form data for the specified patient
+	 *
+	 * @param patient the patient to load the data for
+	 * @return the loaded form data
+	 */
+	public static FormData load(Patient patient) {
+		return load(Collections.singleton(patient.getPatientId())).get(patient.getPatientId());
+	}
+	
+	/**
+	 * Loads the form data for the patients with the specified ids
+	 *
+	 * @param patientIds the ids of the patients to load the data for
+	 * @return a map of the patient ids and their form data, it has an entry for every specified id
+	 * <strong>Should</strong> load the form data for the patients with the specified ids
+	 */
+	public static Map<Integer, FormData> load(Collection<Integer> patientIds) {
+		Map<Integer, FormData> patientIdAndFormDataMap = new HashMap<>();
+		for (Integer patientId : patientIds) {
+			patientIdAndFormDataMap.put(patientId, new FormData());
+		}
+		
+		CaseReportService service = Context.getService(CaseReportService.class);
+		Concept cd4Count = getCielConcept(CaseReportConstants.CIEL_CODE_CD4_COUNT);
+		Concept hivTest = getCielConcept(CaseReportConstants.CIEL_CODE_HIV_TEST);
+		Concept viralLoad = getCielConcept(CaseReportConstants.CIEL_CODE_VIRAL_LOAD);
+		Concept whoStage = getCielConcept(CaseReportConstants.CIEL_CODE_WHO_STAGE);
+		Concept arvStopReason = getCielConcept(CaseReportConstants.CIEL_CODE_REASON_FOR_STOPPING_ARVS);
+		List<Concept> concepts = Arrays.asList(cd4Count, hivTest, viralLoad, whoStage, arvStopReason);
+		for (Obs obs : service.getMostRecentObs(patientIds, concepts, MAX_OBS_COUNT)) {
+			FormData formData = patientIdAndFormDataMap.get(obs.getPerson().getPersonId());
+			Concept concept = obs.getConcept();
+			if (concept.equals(cd4Count)) {
+				addObs(formData.mostRecentCd4Counts, obs);
+			} else if (concept.equals(hivTest)) {
+				addObs(formData.mostRecentHivTests, obs);
+			} else if (concept.equals(viralLoad)) {
+				addObs(formData.mostRecentViralLoads, obs);
+			} else if (concept.equals(whoStage) && formData.mostRecentWhoStage == null) {
+				formData.mostRecentWhoStage = obs;
+			} else if (concept.equals(arvStopReason) && formData.mostRecentArvStopReason == null) {
+				formData.mostRecentArvStopReason = obs;
+			}
+		}
+		
+		Concept arvMedset = getCielConcept(CaseReportConstants.CIEL_CODE_ARV_MED_SET);
+		for (DrugOrder drugOrder : service.getActiveDrugOrders(patientIds, arvMedset, null)) {
+			patientIdAndFormDataMap.get(drugOrder.getPatient().getPatientId()).activeArvDrugOrders.add(drugOrder);
+		}
+		
+		for (Map.Entry<Integer, UuidAndValue> entry : service.getLastVisitStartDates(patientIds).entrySet()) {
+			patientIdAndFormDataMap.get(entry.getKey()).lastVisitStartDate = entry.getValue();
+		}
+		
+		return patientIdAndFormDataMap;
+	}
+	
+	private static Concept getCielConcept(String code) {
+		return CaseReportUtil.getConceptByMapping(code, CaseReportConstants.SOURCE_CIEL_HL7_CODE);
+	}
+	
+	private static void addObs(List<Obs> obsList, Obs obs) {
+		//Obs with the same date time can make the query return more than the maximum
+		if (obsList.size() < MAX_OBS_COUNT) {
+			obsList.add(obs);
+		}
+	}
+	
+	/**
+	 * Encapsulates the clinical data of a single patient that is included in the report form
+	 */
+	public static class FormData {
+		
+		private List<Obs> mostRecentCd4Counts = new ArrayList<>();
+		
+		private List<Obs> mostRecentHivTests = new ArrayList<>();
+		
+		private List<Obs> mostRecentViralLoads = new ArrayList<>();
+		
+		private Obs mostRecentWhoStage;
+		
+		private Obs mostRecentArvStopReason;
+		
+		private List<DrugOrder> activeArvDrugOrders = new ArrayList<>();
+		
+		private UuidAndValue lastVisitStartDate;
+		
+		/**
+		 * @return the 3 most recent cd4 count observations with the most recent first
+		 */
+		public List<Obs> getMostRecentCd4Counts() {
+			return mostRecentCd4Counts;
+		}
+		
+		/**
+		 * @return the 3 most recent HIV test observations with the most recent first
+		 */
+		public List<Obs> getMostRecentHivTests() {
+			return mostRecentHivTests;
+		}
+		
+		/**
+		 * @return the 3 most recent viral load observations with the most recent first
+		 */
+		public List<Obs> getMostRecentViralLoads() {
+			return mostRecentViralLoads;
+		}
+		
+		/**
+		 * @return the most recent WHO stage observation
+		 */
+		public Obs getMostRecentWhoStage() {
+			return mostRecentWhoStage;
+		}
+		
+		/**
+		 * @return the most recent observation for the reason why the patient stopped taking ARVs
+		 */
+		public Obs getMostRecentArvStopReason() {
+			return mostRecentArvStopReason;
+		}
+		
+		/**
+		 * @return the active ARV drug orders
+		 */
+		public List<DrugOrder> getActiveArvDrugOrders() {
+			return activeArvDrugOrders;
+		}
+		
+		/**
+		 * @return the uuid and start date of the last visit
+		 */
+		public UuidAndValue getLastVisitStartDate() {
+			return lastVisitStartDate;
+		}
+	}
+}
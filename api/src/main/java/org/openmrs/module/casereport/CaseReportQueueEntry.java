@@ -0,0 +1,183 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.casereport;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.commons.lang.StringUtils;
+import org.openmrs.Patient;
+import org.openmrs.PatientIdentifier;
+import org.openmrs.PersonName;
+
+/**
+ * An instance of this class is a denormalized copy of the details of a case report that are
+ * displayed in the queue, i.e. the patient's name and identifier and the trigger names, so that the
+ * queue can be filtered, sorted and paged by the database without joining the patient's names,
+ * identifiers and the triggers. There is an entry for each case report and it is updated in the same
+ * transaction whenever the case report is saved, the patient details are also updated when the
+ * patient is saved via the PatientService. The lower cased name, family name and identifier are
+ * stored separately so that the queue can be filtered by their prefix using an index.
+ *
+ * @see CaseReport
+ */
+public class CaseReportQueueEntry implements Serializable {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private static final int MAX_PATIENT_NAME_LENGTH = 255;
+	
+	private static final int MAX_TRIGGER_NAMES_LENGTH = 1024;
+	
+	private Integer caseReportId;
+	
+	private String uuid;
+	
+	private Integer patientId;
+	
+	private String patientUuid;
+	
+	private String patientName;
+	
+	private String patientIdentifier;
+	
+	private String searchName;
+	
+	private String searchFamilyName;
+	
+	private String searchIdentifier;
+	
+	private String triggerNames;
+	
+	private CaseReport.Status status;
+	
+	private Date dateCreated;
+	
+	private Date resolutionDate;
+	
+	private boolean voided;
+	
+	public CaseReportQueueEntry() {
+	}
+	
+	public CaseReportQueueEntry(CaseReport caseReport) {
+		update(caseReport);
+	}
+	
+	/**
+	 * Copies the queue details from the specified case report
+	 *
+	 * @param caseReport the case report to copy from
+	 */
+	public void update(CaseReport caseReport) {
+		updatePatient(caseReport.getPatient());
+		updateCaseReport(caseReport);
+	}
+	
+	/**
+	 * Copies the queue details from the specified case report except for the details of its patient,
+	 * this allows the patient details to be copied while the patient is still attached to a session
+	 *
+	 * @param caseReport the case report to copy from
+	 */
+	public void updateCaseReport(CaseReport caseReport) {
+		caseReportId = caseReport.getCaseReportId();
+		uuid = caseReport.getUuid();
+		List<String> names = new ArrayList<>();
+		for (CaseReportTrigger trigger : caseReport.getReportTriggers()) {
+			names.add(trigger.getName());
+		}
+		//Sorted so that the value doesn't depend on the iteration order of the triggers
+		Collections.sort(names);
+		triggerNames = StringUtils.abbreviate(StringUtils.join(names, ", "), MAX_TRIGGER_NAMES_LENGTH);
+		status = caseReport.getStatus();
+		dateCreated = caseReport.getDateCreated();
+		resolutionDate = caseReport.getResolutionDate();
+		voided = caseReport.isVoided();
+	}
+	
+	/**
+	 * Copies the queue details from the specified patient
+	 *
+	 * @param patient the patient to copy from
+	 */
+	public void updatePatient(Patient patient) {
+		patientId = patient.getPatientId();
+		patientUuid = patient.getUuid();
+		PersonName name = patient.getPersonName();
+		patientName = name != null ? StringUtils.abbreviate(name.getFullName(), MAX_PATIENT_NAME_LENGTH) : null;
+		searchName = StringUtils.lowerCase(patientName);
+		searchFamilyName = name != null ? StringUtils.lowerCase(name.getFamilyName()) : null;
+		PatientIdentifier identifier = patient.getPatientIdentifier();
+		patientIdentifier = identifier != null ? identifier.getIdentifier() : null;
+		searchIdentifier = StringUtils.lowerCase(patientIdentifier);
+	}
+	
+	public Integer getCaseReportId() {
+		return caseReportId;
+	}
+	
+	/**
+	 * @return the uuid of the case report
+	 */
+	public String getUuid() {
+		return uuid;
+	}
+	
+	public Integer getPatientId() {
+		return patientId;
+	}
+	
+	public String getPatientUuid() {
+		return patientUuid;
+	}
+	
+	public String getPatientName() {
+		return patientName;
+	}
+	
+	public String getPatientIdentifier() {
+		return patientIdentifier;
+	}
+	
+	/**
+	 * @return the comma separated names of the triggers of the case report in alphabetical order
+	 */
+	public String getTriggerNames() {
+		return triggerNames;
+	}
+	
+	public CaseReport.Status getStatus() {
+		return status;
+	}
+	
+	public Date getDateCreated() {
+		return dateCreated;
+	}
+	
+	public Date getResolutionDate() {
+		return resolutionDate;
+	}
+	
+	public boolean isVoided() {
+		return voided;
+	}
+	
+	/**
+	 * @see Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "Queue entry for CaseReport #" + caseReportId + " (" + patientName + ", " + status + ")";
+	}
+}
@@ -12,17 +12,21 @@ package org.openmrs.module.casereport;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.time.DateUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.codehaus.jackson.map.ObjectMapper;
 import org.openmrs.Cohort;
 import org.openmrs.Concept;
 import org.openmrs.DrugOrder;
@@ -34,23 +38,37 @@ import org.openmrs.Person;
 import org.openmrs.Visit;
 import org.openmrs.api.APIException;
 import org.openmrs.api.OrderService;
-import org.openmrs.api.PatientService;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.casereport.api.CaseReportService;
+import org.openmrs.module.casereport.api.PatientIdChunkHandler;
 import org.openmrs.module.reporting.cohort.definition.SqlCohortDefinition;
 import org.openmrs.module.reporting.definition.DefinitionContext;
 import org.openmrs.module.reporting.evaluation.EvaluationContext;
 import org.openmrs.module.reporting.evaluation.EvaluationException;
 import org.openmrs.module.reporting.evaluation.parameter.Parameter;
 import org.openmrs.scheduler.TaskDefinition;
-import org.openmrs.util.OpenmrsUtil;
 
 public class CaseReportUtil {
 	
 	protected static final Log log = LogFactory.getLog(CaseReportUtil.class);
 	
+	private static final int PATIENT_LOCK_COUNT = 64;
+	
+	//Ensures the same trigger is never run concurrently while allowing different triggers to run in parallel
+	private static final ConcurrentMap<String, Lock> triggerLocks = new ConcurrentHashMap<>();
+	
+	//Striped locks keyed by patient id that guard the lookup and creation of queue items so that
+	//triggers running in parallel can't create multiple queue items for the same patient
+	private static final Lock[] patientLocks = new Lock[PATIENT_LOCK_COUNT];
+	
+	static {
+		for (int i = 0; i < PATIENT_LOCK_COUNT; i++) {
+			patientLocks[i] = new ReentrantLock();
+		}
+	}
+	
 	private static Concept getCeilConceptByCode(String code) {
-		Concept concept = Context.getConceptService().getConceptByMapping(code, CaseReportConstants.SOURCE_CIEL_HL7_CODE);
+		Concept concept = ConceptCache.getConceptByMapping(code, CaseReportConstants.SOURCE_CIEL_HL7_CODE);
 		if (concept == null) {
 			throw new APIException(
 			        "Failed to find concept with mapping " + CaseReportConstants.SOURCE_CIEL_HL7_CODE + ":" + code);
@@ -134,14 +152,14 @@ public class CaseReportUtil {
 	 * <strong>Should</strong> get the active ARV drug orders for the specified patient
 	 */
 	public static List<DrugOrder> getActiveArvDrugOrders(Patient patient, Date asOfDate) {
-		Concept arvMedset = getCeilConceptByCode(CaseReportConstants.CIEL_CODE_ARV_MED_SET);
 		OrderService os = Context.getOrderService();
 		OrderType orderType = os.getOrderTypeByUuid(OrderType.DRUG_ORDER_TYPE_UUID);
 		List<Order> orders = os.getActiveOrders(patient, orderType, null, asOfDate);
 		List<DrugOrder> arvDrugOrders = new ArrayList<>();
 		for (Order order : orders) {
 			DrugOrder drugOrder = (DrugOrder) order;
-			if (arvMedset.getSetMembers().contains(order.getConcept())) {
+			if (ConceptCache.isSetMember(order.getConcept().getConceptId(), CaseReportConstants.CIEL_CODE_ARV_MED_SET,
+			    CaseReportConstants.SOURCE_CIEL_HL7_CODE)) {
 				arvDrugOrders.add(drugOrder);
 			}
 		}
@@ -172,19 +190,11 @@ public class CaseReportUtil {
 	 * <strong>Should</strong> return the last visit for the specified patient
 	 */
 	public static Visit getLastVisit(Patient patient) {
-		final List<Visit> visits = Context.getVisitService().getVisitsByPatient(patient, true, false);
-		Collections.sort(visits, Collections.reverseOrder(new Comparator<Visit>() {
-			
-			@Override
-			public int compare(Visit v1, Visit v2) {
-				return OpenmrsUtil.compare(v1.getStartDatetime(), v2.getStartDatetime());
-			}
-		}));
-		
-		if (visits.isEmpty()) {
+		UuidAndValue lastVisit = Context.getService(CaseReportService.class).getLastVisitStartDate(patient);
+		if (lastVisit == null) {
 			return null;
 		}
-		return visits.get(0);
+		return Context.getVisitService().getVisitByUuid(lastVisit.getUuid());
 	}
 	
 	public static boolean collContainsItemWithValue(Collection<? extends UuidAndValue> coll, String value) {
@@ -211,7 +221,7 @@ public class CaseReportUtil {
 		}
 		String source = sourceAndCode[0];
 		String code = sourceAndCode[1];
-		Concept concept = Context.getConceptService().getConceptByMapping(code, source);
+		Concept concept = ConceptCache.getConceptByMapping(code, source);
 		if (concept == null && failIfNotFound) {
 			throw new APIException("Failed to find concept with mapping: " + mappingString);
 		}
@@ -227,7 +237,7 @@ public class CaseReportUtil {
 	 * @return the concept
 	 */
 	public static Concept getConceptByMapping(String code, String source) {
-		Concept concept = Context.getConceptService().getConceptByMapping(code, source);
+		Concept concept = ConceptCache.getConceptByMapping(code, source);
 		if (concept == null) {
 			throw new APIException("No concept found with a mapping to source: " + source + " and code: " + code);
 		}
@@ -268,6 +278,32 @@ public class CaseReportUtil {
 		return ret;
 	}
 	
+	/**
+	 * Gets the value of the specified global property as a positive integer, if the value is not set
+	 * or is invalid the specified default value is returned
+	 *
+	 * @param propertyName the global property name
+	 * @param defaultValue the value to return if the global property has no valid value
+	 * @return the integer value
+	 */
+	public static int getPositiveIntegerGlobalProperty(String propertyName, int defaultValue) {
+		String value = Context.getAdministrationService().getGlobalProperty(propertyName);
+		if (StringUtils.isNotBlank(value)) {
+			try {
+				int intValue = Integer.parseInt(value.trim());
+				if (intValue > 0) {
+					return intValue;
+				}
+			}
+			catch (NumberFormatException e) {
+				//ignore and use the default
+			}
+			log.warn("Invalid value for the " + propertyName + " global property: " + value);
+		}
+		
+		return defaultValue;
+	}
+	
 	/**
 	 * Runs the SQL cohort query with the specified name and creates a case report for each matched
 	 * patient of none exists
@@ -282,13 +318,14 @@ public class CaseReportUtil {
 	 * <strong>Should</strong> not create a duplicate trigger for the same patient
 	 * <strong>Should</strong> set the concept mappings in the evaluation context
 	 * <strong>Should</strong> fail for a task where the last execution time cannot be resolved
+	 * <strong>Should</strong> create case reports for the matched patients when streaming cohorts
 	 */
-	public synchronized static void executeTask(TaskDefinition taskDefinition) throws APIException, EvaluationException {
+	public static void executeTask(TaskDefinition taskDefinition) throws APIException, EvaluationException {
 		if (taskDefinition == null) {
 			throw new APIException("TaskDefinition can't be null");
 		}
 		
-		String triggerName = taskDefinition.getProperty(CaseReportConstants.TRIGGER_NAME_TASK_PROPERTY);
+		final String triggerName = taskDefinition.getProperty(CaseReportConstants.TRIGGER_NAME_TASK_PROPERTY);
 		if (StringUtils.isBlank(triggerName)) {
 			throw new APIException(taskDefinition.getName() + " task doesn't have a "
 			        + CaseReportConstants.TRIGGER_NAME_TASK_PROPERTY + " property");
@@ -322,47 +359,181 @@ public class CaseReportUtil {
 			}
 		}
 		
-		evaluationContext.setParameterValues(params);
-		Cohort cohort = (Cohort) DefinitionContext.evaluate(definition, evaluationContext);
-		
-		PatientService ps = Context.getPatientService();
-		CaseReportService caseReportService = Context.getService(CaseReportService.class);
-		List<CaseReport> autoSubmitReports = new ArrayList<>(cohort.getMemberIds().size());
-		for (Integer patientId : cohort.getMemberIds()) {
-			Patient patient = ps.getPatient(patientId);
-			if (patient == null) {
-				throw new APIException("No patient found with patientId: " + patientId);
-			}
-			
-			boolean autoSubmit = false;
-			if ("true".equals(taskDefinition.getProperty(CaseReportConstants.AUTO_SUBMIT_TASK_PROPERTY))) {
-				autoSubmit = true;
+		final boolean autoSubmit = "true".equals(taskDefinition
+		        .getProperty(CaseReportConstants.AUTO_SUBMIT_TASK_PROPERTY));
+		final CaseReportAutoSubmitter autoSubmitter = autoSubmit ? createAutoSubmitter() : null;
+		CaseReportAutoSubmitter.Result autoSubmitResult = null;
+		int batchSize = getPositiveIntegerGlobalProperty(CaseReportConstants.GP_TASK_BATCH_SIZE,
+		    CaseReportConstants.DEFAULT_TASK_BATCH_SIZE);
+		Lock triggerLock = getTriggerLock(triggerName);
+		triggerLock.lock();
+		try {
+			String streamCohorts = Context.getAdministrationService().getGlobalProperty(
+			    CaseReportConstants.GP_STREAM_COHORTS);
+			if (Boolean.valueOf(streamCohorts)) {
+				int fetchSize = getPositiveIntegerGlobalProperty(CaseReportConstants.GP_COHORT_FETCH_SIZE,
+				    CaseReportConstants.DEFAULT_COHORT_FETCH_SIZE);
+				PatientIdChunkHandler handler = new PatientIdChunkHandler() {
+					
+					@Override
+					public void handle(List<Integer> patientIds) {
+						createAndAutoSubmitReports(patientIds, triggerName, autoSubmitter);
+					}
+				};
+				Context.getService(CaseReportService.class).streamPatientIds(definition.getQuery(), params, fetchSize,
+				    batchSize, handler);
+			} else {
+				evaluationContext.setParameterValues(params);
+				Cohort cohort = (Cohort) DefinitionContext.evaluate(definition, evaluationContext);
+				List<Integer> patientIds = new ArrayList<>(cohort.getMemberIds());
+				for (int fromIndex = 0; fromIndex < patientIds.size(); fromIndex += batchSize) {
+					List<Integer> batch = patientIds.subList(fromIndex, Math.min(fromIndex + batchSize, patientIds.size()));
+					createAndAutoSubmitReports(batch, triggerName, autoSubmitter);
+				}
 			}
-			CaseReport caseReport = createReportIfNecessary(patient, autoSubmit, triggerName);
-			if (caseReport != null) {
-				//We can't auto submit an existing report because the surveillance officer needs
-				//to take a look at the other triggers to be included in the existing report
-				if (caseReport.getId() == null && autoSubmit) {
-					caseReport.setAutoSubmitted(true);
-					autoSubmitReports.add(caseReport);
+		}
+		finally {
+			try {
+				if (autoSubmitter != null) {
+					//Waits for the reports of all the batches to be submitted and stops the workers
+					autoSubmitResult = autoSubmitter.finish();
 				}
-				caseReportService.saveCaseReport(caseReport);
-			} else {
-				log.debug(patient + " already has an item in the queue with the trigger " + triggerName);
+			}
+			finally {
+				triggerLock.unlock();
 			}
 		}
 		
-		for (CaseReport caseReport : autoSubmitReports) {
-			//TODO reports should be auto submitted in parallel
-			try {
-				CaseReportForm form = new CaseReportForm(caseReport);
-				caseReport.setReportForm(new ObjectMapper().writeValueAsString(form));
-				caseReportService.submitCaseReport(caseReport);
+		if (autoSubmitResult != null
+		        && (autoSubmitResult.getSuccessCount() > 0 || !autoSubmitResult.getFailures().isEmpty())) {
+			log.info("Auto submitted case reports for trigger " + triggerName + ", " + autoSubmitResult);
+		}
+	}
+	
+	private static CaseReportAutoSubmitter createAutoSubmitter() {
+		int poolSize = getPositiveIntegerGlobalProperty(CaseReportConstants.GP_AUTO_SUBMIT_POOL_SIZE,
+		    CaseReportConstants.DEFAULT_AUTO_SUBMIT_POOL_SIZE);
+		int queueSize = getPositiveIntegerGlobalProperty(CaseReportConstants.GP_AUTO_SUBMIT_QUEUE_SIZE,
+		    CaseReportConstants.DEFAULT_AUTO_SUBMIT_QUEUE_SIZE);
+		return new CaseReportAutoSubmitter(poolSize, queueSize);
+	}
+	
+	/**
+	 * Creates the case reports for the specified batch of patients and then auto submits the new ones
+	 * if necessary, the reports are submitted batch by batch as they are created so that the number
+	 * of uuids held in memory doesn't grow with the size of the cohort.
+	 *
+	 * @param patientIds the ids of the patients in the batch to process
+	 * @param triggerName the trigger name
+	 * @param autoSubmitter the submitter to use or null if the reports are not to be auto submitted
+	 */
+	private static void createAndAutoSubmitReports(List<Integer> patientIds, String triggerName,
+	                                               CaseReportAutoSubmitter autoSubmitter) {
+		List<String> autoSubmitReportUuids = createReports(patientIds, triggerName, autoSubmitter != null);
+		if (!autoSubmitReportUuids.isEmpty()) {
+			autoSubmitter.add(autoSubmitReportUuids);
+		}
+	}
+	
+	/**
+	 * Creates case reports for the patients with the specified ids that don't yet have a queue item
+	 * with the specified trigger, the lookup and creation of the queue items is guarded by the locks
+	 * for the patients.
+	 *
+	 * @param patientIds the ids of the patients in the batch to process
+	 * @param triggerName the trigger name
+	 * @param autoSubmit specifies if the created reports are to be auto submitted
+	 * @return the uuids of the created reports to auto submit
+	 */
+	private static List<String> createReports(List<Integer> patientIds, String triggerName, boolean autoSubmit) {
+		CaseReportService caseReportService = Context.getService(CaseReportService.class);
+		int saveBatchSize = getPositiveIntegerGlobalProperty(CaseReportConstants.GP_SAVE_BATCH_SIZE,
+		    CaseReportConstants.DEFAULT_SAVE_BATCH_SIZE);
+		List<CaseReport> caseReports = new ArrayList<>(patientIds.size());
+		List<String> uuids = new ArrayList<>();
+		List<Lock> locks = lockPatients(patientIds);
+		try {
+			Map<Integer, Patient> patients = caseReportService.getPatients(patientIds);
+			Map<Integer, CaseReport> existingReports = caseReportService.getCaseReportsByPatientIds(patientIds);
+			for (Integer patientId : patientIds) {
+				Patient patient = patients.get(patientId);
+				if (patient == null) {
+					throw new APIException("No patient found with patientId: " + patientId);
+				}
+				
+				CaseReport caseReport = createReportIfNecessary(patient, existingReports.get(patientId), autoSubmit,
+				    triggerName);
+				if (caseReport != null) {
+					//We can't auto submit an existing report because the surveillance officer needs
+					//to take a look at the other triggers to be included in the existing report
+					if (caseReport.getId() == null && autoSubmit) {
+						caseReport.setAutoSubmitted(true);
+						uuids.add(caseReport.getUuid());
+					}
+					caseReports.add(caseReport);
+				} else {
+					log.debug(patient + " already has an item in the queue with the trigger " + triggerName);
+				}
 			}
-			catch (Throwable t) {
-				log.warn("Failed to auto submit " + caseReport, t);
+			
+			caseReportService.saveCaseReports(caseReports, saveBatchSize);
+		}
+		finally {
+			unlockPatients(locks);
+		}
+		
+		return uuids;
+	}
+	
+	/**
+	 * Gets the lock for the trigger with the specified name, trigger names are case insensitive
+	 *
+	 * @param triggerName the trigger name
+	 * @return the lock
+	 */
+	private static Lock getTriggerLock(String triggerName) {
+		String key = triggerName.toLowerCase();
+		Lock lock = triggerLocks.get(key);
+		if (lock == null) {
+			Lock newLock = new ReentrantLock();
+			lock = triggerLocks.putIfAbsent(key, newLock);
+			if (lock == null) {
+				lock = newLock;
 			}
 		}
+		return lock;
+	}
+	
+	/**
+	 * Acquires the locks for the patients with the specified ids, the locks are always acquired in
+	 * the same order to avoid deadlocks between triggers that lock overlapping batches of patients.
+	 *
+	 * @param patientIds the patient ids
+	 * @return the acquired locks
+	 */
+	private static List<Lock> lockPatients(Collection<Integer> patientIds) {
+		SortedSet<Integer> indexes = new TreeSet<>();
+		for (Integer patientId : patientIds) {
+			indexes.add(Math.abs(patientId % PATIENT_LOCK_COUNT));
+		}
+		List<Lock> locks = new ArrayList<>(indexes.size());
+		for (Integer index : indexes) {
+			Lock lock = patientLocks[index];
+			lock.lock();
+			locks.add(lock);
+		}
+		return locks;
+	}
+	
+	/**
+	 * Releases the specified locks in the reverse order in which they were acquired
+	 *
+	 * @param locks the locks to release
+	 */
+	private static void unlockPatients(List<Lock> locks) {
+		for (int i = locks.size() - 1; i >= 0; i--) {
+			locks.get(i).unlock();
+		}
 	}
 	
 	/**
@@ -377,8 +548,18 @@ public class CaseReportUtil {
 	 * @return the created trigger or none was created or if all the triggers are duplicates
 	 */
 	public static CaseReport createReportIfNecessary(Patient patient, boolean createNew, String... triggerNames) {
-		CaseReport caseReport;
 		CaseReport existingCR = Context.getService(CaseReportService.class).getCaseReportByPatient(patient);
+		return createReportIfNecessary(patient, existingCR, createNew, triggerNames);
+	}
+	
+	/**
+	 * @see #createReportIfNecessary(Patient, boolean, String...)
+	 * @param existingCR the existing queue item for the patient if any, this allows callers that
+	 *            have already looked it up e.g. in a batch to skip the database lookup
+	 */
+	private static CaseReport createReportIfNecessary(Patient patient, CaseReport existingCR, boolean createNew,
+	                                                  String... triggerNames) {
+		CaseReport caseReport;
 		if (createNew || existingCR == null) {
 			caseReport = new CaseReport();
 			caseReport.setPatient(patient);
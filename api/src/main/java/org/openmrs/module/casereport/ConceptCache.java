@@ -0,0 +1,160 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.casereport;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openmrs.Concept;
+import org.openmrs.api.APIException;
+import org.openmrs.api.context.Context;
+
+/**
+ * Caches the ids of the concepts looked up by concept mapping, the cache is keyed by source:code and
+ * only the concept ids are cached so that the concepts themselves are always fetched through the
+ * current session, this replaces the query that joins the mapping, reference term and source tables
+ * with a lookup by primary key. The ids of the members of concept sets are cached too so that set
+ * membership checks don't load and scan the set members. The cache is cleared by
+ * {@link ConceptCacheInvalidationAdvice} whenever a concept, reference term or concept source is
+ * saved, retired or purged, so a mapping changed directly in the database is only picked up after
+ * the cache is cleared or the module is restarted.
+ */
+public class ConceptCache {
+	
+	private static volatile ConcurrentMap<String, Integer> conceptIds = new ConcurrentHashMap<>();
+	
+	private static volatile ConcurrentMap<String, int[]> setMemberIds = new ConcurrentHashMap<>();
+	
+	private static final AtomicLong hitCount = new AtomicLong();
+	
+	private static final AtomicLong missCount = new AtomicLong();
+	
+	/**
+	 * Gets the concept with a mapping to the specified source and code
+	 *
+	 * @param code the code to match
+	 * @param source the name or hl7 code of the concept source to match
+	 * @return the matched concept or null if none is found
+	 * <strong>Should</strong> return the concept with the specified mapping
+	 * <strong>Should</strong> look up the concept in the database only once
+	 * <strong>Should</strong> return null if no concept is found
+	 */
+	public static Concept getConceptByMapping(String code, String source) {
+		//Any entry put after a call to clear() goes to the discarded map
+		ConcurrentMap<String, Integer> ids = conceptIds;
+		String key = getKey(code, source);
+		Integer conceptId = ids.get(key);
+		if (conceptId != null) {
+			Concept concept = Context.getConceptService().getConcept(conceptId);
+			if (concept != null) {
+				hitCount.incrementAndGet();
+				return concept;
+			}
+			//The concept was deleted without going through the ConceptService
+			ids.remove(key);
+		}
+		
+		missCount.incrementAndGet();
+		Concept concept = Context.getConceptService().getConceptByMapping(code, source);
+		if (concept != null) {
+			ids.put(key, concept.getConceptId());
+		}
+		
+		return concept;
+	}
+	
+	/**
+	 * Checks if the concept with the specified id is a member of the concept set with a mapping to
+	 * the specified source and code, the ids of the set members are loaded once into a sorted array
+	 * so that the check doesn't scan the set members list
+	 *
+	 * @param conceptId the id of the concept to check
+	 * @param setCode the code to match
+	 * @param setSource the name or hl7 code of the concept source to match
+	 * @return true if the concept is a member of the set otherwise false
+	 * <strong>Should</strong> return true for a member of the concept set
+	 * <strong>Should</strong> return false for a concept that is not a member of the concept set
+	 * <strong>Should</strong> fail if no concept set is found
+	 */
+	public static boolean isSetMember(Integer conceptId, String setCode, String setSource) {
+		ConcurrentMap<String, int[]> ids = setMemberIds;
+		String key = getKey(setCode, setSource);
+		int[] memberIds = ids.get(key);
+		if (memberIds == null) {
+			Concept conceptSet = getConceptByMapping(setCode, setSource);
+			if (conceptSet == null) {
+				throw new APIException("Failed to find concept with mapping " + setSource + ":" + setCode);
+			}
+			List<Concept> members = conceptSet.getSetMembers();
+			memberIds = new int[members.size()];
+			for (int i = 0; i < memberIds.length; i++) {
+				memberIds[i] = members.get(i).getConceptId();
+			}
+			Arrays.sort(memberIds);
+			ids.put(key, memberIds);
+		}
+		
+		return conceptId != null && Arrays.binarySearch(memberIds, conceptId) > -1;
+	}
+	
+	private static String getKey(String code, String source) {
+		return (source + CaseReportConstants.CHAR_COLON + code).toUpperCase();
+	}
+	
+	/**
+	 * Removes all the entries from the cache
+	 * 
+	 * <strong>Should</strong> remove all the entries from the cache
+	 */
+	public static void clear() {
+		conceptIds = new ConcurrentHashMap<>();
+		setMemberIds = new ConcurrentHashMap<>();
+	}
+	
+	/**
+	 * @return the number of lookups that were served from the cache
+	 */
+	public static long getHitCount() {
+		return hitCount.get();
+	}
+	
+	/**
+	 * @return the number of lookups that were not served from the cache
+	 */
+	public static long getMissCount() {
+		return missCount.get();
+	}
+	
+	/**
+	 * @return the number of concept ids in the cache
+	 */
+	public static int size() {
+		return conceptIds.size();
+	}
+	
+	/**
+	 * @return the cache statistics
+	 * <strong>Should</strong> return the size and the hit and miss counts
+	 */
+	public static Map<String, Object> getStatistics() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("size", conceptIds.size());
+		stats.put("setCount", setMemberIds.size());
+		stats.put("hits", hitCount.get());
+		stats.put("misses", missCount.get());
+		
+		return stats;
+	}
+}
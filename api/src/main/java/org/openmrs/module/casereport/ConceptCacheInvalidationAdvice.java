@@ -0,0 +1,49 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.casereport;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.ConceptService;
+import org.springframework.aop.AfterReturningAdvice;
+
+/**
+ * Advice around {@link ConceptService} that clears the {@link ConceptCache} after a method that can
+ * change the concept a mapping resolves to, it is registered in the module's config.xml
+ */
+public class ConceptCacheInvalidationAdvice implements AfterReturningAdvice {
+	
+	private static final Log log = LogFactory.getLog(ConceptCacheInvalidationAdvice.class);
+	
+	private static final Set<String> METHOD_NAMES = new HashSet<>(Arrays.asList("saveConcept", "retireConcept",
+	    "unretireConcept", "purgeConcept", "saveConceptReferenceTerm", "retireConceptReferenceTerm",
+	    "unretireConceptReferenceTerm", "purgeConceptReferenceTerm", "saveConceptSource", "retireConceptSource",
+	    "unretireConceptSource", "purgeConceptSource"));
+	
+	/**
+	 * @see AfterReturningAdvice#afterReturning(Object, Method, Object[], Object)
+	 * <strong>Should</strong> clear the cache when a concept is saved
+	 * <strong>Should</strong> not clear the cache for other methods
+	 */
+	@Override
+	public void afterReturning(Object returnValue, Method method, Object[] args, Object target) throws Throwable {
+		if (METHOD_NAMES.contains(method.getName())) {
+			if (log.isDebugEnabled()) {
+				log.debug("Clearing the concept cache after a call to ConceptService." + method.getName());
+			}
+			ConceptCache.clear();
+		}
+	}
+}
@@ -0,0 +1,77 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.casereport;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Formats and parses dates with a given pattern and is safe to share between threads, unlike
+ * {@link SimpleDateFormat} which corrupts dates when used concurrently. Each thread gets its own
+ * SimpleDateFormat instance which is created the first time the thread uses the codec and then
+ * reused for all subsequent calls.
+ */
+public final class DateCodec {
+	
+	private final String pattern;
+	
+	//The thread local isn't subclassed so that the cached formats don't hold a reference to the
+	//module class loader after the module is stopped
+	private final ThreadLocal<DateFormat> formats = new ThreadLocal<DateFormat>();
+	
+	/**
+	 * @param pattern the pattern as defined by {@link SimpleDateFormat}
+	 */
+	public DateCodec(String pattern) {
+		this.pattern = pattern;
+		//Fail fast on a bad pattern rather than on first use
+		getDateFormat();
+	}
+	
+	/**
+	 * Formats the specified date
+	 * 
+	 * @param date the date to format
+	 * @return the formatted date
+	 * <strong>Should</strong> format and parse dates correctly when used by multiple threads
+	 */
+	public String format(Date date) {
+		return getDateFormat().format(date);
+	}
+	
+	/**
+	 * Parses the specified string to a date
+	 * 
+	 * @param source the string to parse
+	 * @return the parsed date
+	 * @throws ParseException if the string doesn't match the pattern
+	 */
+	public Date parse(String source) throws ParseException {
+		return getDateFormat().parse(source);
+	}
+	
+	/**
+	 * @return the pattern
+	 */
+	public String getPattern() {
+		return pattern;
+	}
+	
+	private DateFormat getDateFormat() {
+		DateFormat format = formats.get();
+		if (format == null) {
+			format = new SimpleDateFormat(pattern);
+			formats.set(format);
+		}
+		return format;
+	}
+}
@@ -0,0 +1,52 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.casereport;
+
+import java.io.Serializable;
+
+/**
+ * An instance of this class holds the encoded report form of a case report, it is mapped to its own
+ * table so that the case report can reference it lazily and loading case reports doesn't load the
+ * report forms unless they are accessed.
+ * 
+ * @see CaseReport#getReportForm()
+ * @see ReportFormCodec
+ */
+public class EncodedReportForm implements Serializable {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private Integer reportFormId;
+	
+	private byte[] encodedForm;
+	
+	public EncodedReportForm() {
+	}
+	
+	public EncodedReportForm(byte[] encodedForm) {
+		this.encodedForm = encodedForm;
+	}
+	
+	public Integer getReportFormId() {
+		return reportFormId;
+	}
+	
+	public void setReportFormId(Integer reportFormId) {
+		this.reportFormId = reportFormId;
+	}
+	
+	public byte[] getEncodedForm() {
+		return encodedForm;
+	}
+	
+	public void setEncodedForm(byte[] encodedForm) {
+		this.encodedForm = encodedForm;
+	}
+}
@@ -0,0 +1,57 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.casereport;
+
+import java.io.IOException;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.map.ObjectReader;
+import org.codehaus.jackson.map.ObjectWriter;
+
+/**
+ * Serializes and deserializes the report forms of case reports to and from JSON. It uses a single
+ * ObjectMapper for the entire module along with a reader and writer for {@link CaseReportForm} that
+ * are created once, unlike the mapper they are immutable so they are safe to share between
+ * threads and they skip the type resolution and serializer lookups on every call.
+ */
+public final class JsonCodec {
+	
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+	
+	private static final ObjectReader FORM_READER = MAPPER.reader(CaseReportForm.class);
+	
+	private static final ObjectWriter FORM_WRITER = MAPPER.writerWithType(CaseReportForm.class);
+	
+	private JsonCodec() {
+	}
+	
+	/**
+	 * Deserializes the specified JSON to a CaseReportForm
+	 * 
+	 * @param json the JSON to deserialize
+	 * @return the CaseReportForm object
+	 * @throws IOException
+	 * <strong>Should</strong> read a form that was written by the codec
+	 */
+	public static CaseReportForm readForm(String json) throws IOException {
+		return FORM_READER.readValue(json);
+	}
+	
+	/**
+	 * Serializes the specified CaseReportForm to JSON
+	 * 
+	 * @param form the CaseReportForm to serialize
+	 * @return the JSON
+	 * @throws IOException
+	 */
+	public static String writeForm(CaseReportForm form) throws IOException {
+		return FORM_WRITER.writeValueAsString(form);
+	}
+}
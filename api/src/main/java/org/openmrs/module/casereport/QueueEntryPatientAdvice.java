@@ -0,0 +1,62 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.casereport;
+
+import java.lang.reflect.Method;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.Patient;
+import org.openmrs.api.PatientService;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.casereport.api.CaseReportService;
+import org.springframework.aop.AfterReturningAdvice;
+
+/**
+ * Advice around {@link PatientService} that copies the patient's current name and identifier to
+ * the queue entries of the patient's case reports after the patient is saved, it is registered in
+ * the module's config.xml. Names and identifiers saved via other services e.g. the PersonService
+ * aren't propagated until the patient or the case report is saved again.
+ * 
+ * @see CaseReportQueueEntry
+ */
+public class QueueEntryPatientAdvice implements AfterReturningAdvice {
+	
+	private static final Log log = LogFactory.getLog(QueueEntryPatientAdvice.class);
+	
+	/**
+	 * @see AfterReturningAdvice#afterReturning(Object, Method, Object[], Object)
+	 * <strong>Should</strong> update the queue entries when a patient is saved
+	 * <strong>Should</strong> not update the queue entries for other methods
+	 */
+	@Override
+	public void afterReturning(Object returnValue, Method method, Object[] args, Object target) throws Throwable {
+		if (!"savePatient".equals(method.getName()) || !(returnValue instanceof Patient)) {
+			return;
+		}
+		
+		Patient patient = (Patient) returnValue;
+		if (patient.getPatientId() == null) {
+			return;
+		}
+		
+		try {
+			//The user saving the patient might not be allowed to manage case reports
+			Context.addProxyPrivilege(CaseReportConstants.PRIV_MANAGE_CASE_REPORTS);
+			int count = Context.getService(CaseReportService.class).updateQueueEntries(patient);
+			if (log.isDebugEnabled() && count > 0) {
+				log.debug("Updated " + count + " queue entries after saving " + patient);
+			}
+		}
+		finally {
+			Context.removeProxyPrivilege(CaseReportConstants.PRIV_MANAGE_CASE_REPORTS);
+		}
+	}
+}
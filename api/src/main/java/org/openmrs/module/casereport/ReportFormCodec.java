@@ -0,0 +1,105 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.casereport;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.openmrs.api.APIException;
+
+/**
+ * Encodes the JSON of report forms to the bytes that get stored in the database and decodes them
+ * back. The first byte of the encoded value is the version of the encoding which is used to decode
+ * the rest of the bytes, this allows the encoding to change without having to migrate the existing
+ * rows. Small forms are stored as plain UTF-8 since compressing them doesn't save any space.
+ */
+public final class ReportFormCodec {
+	
+	public static final byte VERSION_PLAIN = 0;
+	
+	public static final byte VERSION_GZIP = 1;
+	
+	//Forms shorter than this are stored uncompressed
+	private static final int MIN_COMPRESS_LENGTH = 256;
+	
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	
+	private ReportFormCodec() {
+	}
+	
+	/**
+	 * Encodes the specified report form
+	 * 
+	 * @param reportForm the JSON of the report form to encode
+	 * @return the encoded bytes or null if the report form is null
+	 * <strong>Should</strong> compress large report forms
+	 * <strong>Should</strong> not compress small report forms
+	 */
+	public static byte[] encode(String reportForm) {
+		if (reportForm == null) {
+			return null;
+		}
+		
+		byte[] bytes = reportForm.getBytes(UTF_8);
+		ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4 + 1);
+		if (bytes.length < MIN_COMPRESS_LENGTH) {
+			out.write(VERSION_PLAIN);
+			out.write(bytes, 0, bytes.length);
+			return out.toByteArray();
+		}
+		
+		out.write(VERSION_GZIP);
+		try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+			gzip.write(bytes);
+		}
+		catch (IOException e) {
+			throw new APIException("Failed to encode report form", e);
+		}
+		
+		return out.toByteArray();
+	}
+	
+	/**
+	 * Decodes the specified encoded report form
+	 * 
+	 * @param encoded the bytes to decode
+	 * @return the JSON of the report form or null if the encoded bytes are null
+	 * <strong>Should</strong> fail for an unknown version
+	 */
+	public static String decode(byte[] encoded) {
+		if (encoded == null) {
+			return null;
+		}
+		if (encoded.length == 0) {
+			throw new APIException("The encoded report form has no version");
+		}
+		
+		switch (encoded[0]) {
+			case VERSION_PLAIN:
+				return new String(Arrays.copyOfRange(encoded, 1, encoded.length), UTF_8);
+			case VERSION_GZIP:
+				try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(encoded, 1, encoded.length - 1))) {
+					return IOUtils.toString(in, UTF_8.name());
+				}
+				catch (IOException e) {
+					throw new APIException("Failed to decode report form", e);
+				}
+			default:
+				throw new APIException("Unsupported report form encoding version: " + encoded[0]);
+		}
+	}
+}
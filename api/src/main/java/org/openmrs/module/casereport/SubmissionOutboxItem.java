@@ -0,0 +1,137 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.casereport;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import org.openmrs.BaseOpenmrsObject;
+
+/**
+ * An instance of this class records a submitted case report whose document is waiting to be
+ * delivered to the HIE, it is saved in the same transaction as the submission and the document is
+ * then delivered in the background. A failed delivery is retried until the maximum number of
+ * attempts is reached after which the item is moved to the dead letter state.
+ * 
+ * @see CaseReport
+ */
+public class SubmissionOutboxItem extends BaseOpenmrsObject implements Serializable {
+	
+	private static final long serialVersionUID = 1L;
+	
+	public enum Status {
+		PENDING, DELIVERED, DEAD
+	}
+	
+	private Integer submissionOutboxItemId;
+	
+	private CaseReport caseReport;
+	
+	private Status status = Status.PENDING;
+	
+	private Integer attempts = 0;
+	
+	private Date nextAttemptDate;
+	
+	private String lastError;
+	
+	private Date dateCreated;
+	
+	private Date dateChanged;
+	
+	public SubmissionOutboxItem() {
+	}
+	
+	public SubmissionOutboxItem(CaseReport caseReport) {
+		this.caseReport = caseReport;
+	}
+	
+	public Integer getSubmissionOutboxItemId() {
+		return submissionOutboxItemId;
+	}
+	
+	public void setSubmissionOutboxItemId(Integer submissionOutboxItemId) {
+		this.submissionOutboxItemId = submissionOutboxItemId;
+	}
+	
+	public CaseReport getCaseReport() {
+		return caseReport;
+	}
+	
+	public void setCaseReport(CaseReport caseReport) {
+		this.caseReport = caseReport;
+	}
+	
+	public Status getStatus() {
+		return status;
+	}
+	
+	public void setStatus(Status status) {
+		this.status = status;
+	}
+	
+	public Integer getAttempts() {
+		return attempts;
+	}
+	
+	public void setAttempts(Integer attempts) {
+		this.attempts = attempts;
+	}
+	
+	public Date getNextAttemptDate() {
+		return nextAttemptDate;
+	}
+	
+	public void setNextAttemptDate(Date nextAttemptDate) {
+		this.nextAttemptDate = nextAttemptDate;
+	}
+	
+	public String getLastError() {
+		return lastError;
+	}
+	
+	public void setLastError(String lastError) {
+		this.lastError = lastError;
+	}
+	
+	public Date getDateCreated() {
+		return dateCreated;
+	}
+	
+	public void setDateCreated(Date dateCreated) {
+		this.dateCreated = dateCreated;
+	}
+	
+	public Date getDateChanged() {
+		return dateChanged;
+	}
+	
+	public void setDateChanged(Date dateChanged) {
+		this.dateChanged = dateChanged;
+	}
+	
+	@Override
+	public Integer getId() {
+		return getSubmissionOutboxItemId();
+	}
+	
+	@Override
+	public void setId(Integer id) {
+		setSubmissionOutboxItemId(id);
+	}
+	
+	/**
+	 * @see Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "Outbox item for " + caseReport + " (" + status + ", attempts: " + attempts + ")";
+	}
+}
@@ -9,14 +9,24 @@
  */
 package org.openmrs.module.casereport.api;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
+import org.openmrs.Concept;
+import org.openmrs.DrugOrder;
+import org.openmrs.Obs;
 import org.openmrs.Patient;
 import org.openmrs.annotation.Authorized;
 import org.openmrs.api.OpenmrsService;
 import org.openmrs.module.casereport.CaseReport;
 import org.openmrs.module.casereport.CaseReportConstants;
+import org.openmrs.module.casereport.CaseReportQueueEntry;
+import org.openmrs.module.casereport.SubmissionOutboxItem;
 import org.openmrs.module.casereport.Trigger;
+import org.openmrs.module.casereport.UuidAndValue;
+import org.openmrs.util.PrivilegeConstants;
 
 /**
  * Contains methods for processing CRUD operations related to case reports
@@ -53,6 +63,20 @@ public interface CaseReportService extends OpenmrsService {
 	@Authorized(CaseReportConstants.PRIV_GET_CASE_REPORTS)
 	CaseReport getCaseReportByPatient(Patient patient);
 	
+	/**
+	 * Gets the non voided case reports for the patients with the specified patient ids, this is
+	 * the batch equivalent of {@link #getCaseReportByPatient(Patient)} and fetches the queue items
+	 * for all the patients with a single query.
+	 *
+	 * @param patientIds the patient ids to match against
+	 * @return a map of patient ids and their case reports, patients with no case report are excluded
+	 * <strong>Should</strong> get the case reports for the patients with the specified ids
+	 * <strong>Should</strong> return an empty map if no patient ids are specified
+	 * <strong>Should</strong> fail if a patient has multiple case reports
+	 */
+	@Authorized(CaseReportConstants.PRIV_GET_CASE_REPORTS)
+	Map<Integer, CaseReport> getCaseReportsByPatientIds(Collection<Integer> patientIds);
+	
 	/**
 	 * Gets all non voided case reports from the database that are not yet submitted nor dismissed
 	 * ordered by date created. Basically it fetches the case report queue with the earliest coming
@@ -79,16 +103,222 @@ public interface CaseReportService extends OpenmrsService {
 	List<CaseReport> getCaseReports(Patient patient, boolean includeVoided, String orderBy, Boolean asc,
 	                                CaseReport.Status... statuses);
 	
+	/**
+	 * Gets a page of the case reports from the database that match the specified arguments, the
+	 * sorting and paging are done by the database. The results are also ordered by id so that the
+	 * pages don't overlap. If fetchTriggersAndPatient is set to true, the triggers, the patient and
+	 * the patient's names and identifiers are loaded along with the reports in a single join instead
+	 * of a query per report when they are first accessed.
+	 *
+	 * @param patient the patient to match against
+	 * @param includeVoided specifies whether voided reports should be included
+	 * @param orderBy The property to use for sorting the results
+	 * @param asc The ordering to use, true implies ascending otherwise descending
+	 * @param startIndex the index of the first report to return, if null starts from the first
+	 * @param limit the maximum number of reports to return, if null all are returned
+	 * @param fetchTriggersAndPatient specifies whether to fetch the triggers and patient details
+	 * @param statuses specifies the statuses of the reports to match against
+	 * @return the case reports in the page
+	 * <strong>Should</strong> return the specified page of case reports
+	 * <strong>Should</strong> sort the case reports by the specified property
+	 * <strong>Should</strong> fetch the triggers and the patient details if specified
+	 */
+	@Authorized(CaseReportConstants.PRIV_GET_CASE_REPORTS)
+	List<CaseReport> getCaseReports(Patient patient, boolean includeVoided, String orderBy, Boolean asc,
+	                                Integer startIndex, Integer limit, boolean fetchTriggersAndPatient,
+	                                CaseReport.Status... statuses);
+	
+	/**
+	 * Gets the number of case reports in the database that match the specified arguments
+	 *
+	 * @param patient the patient to match against
+	 * @param includeVoided specifies whether voided reports should be included
+	 * @param statuses specifies the statuses of the reports to match against
+	 * @return the number of matching case reports
+	 * <strong>Should</strong> return the number of matching case reports
+	 */
+	@Authorized(CaseReportConstants.PRIV_GET_CASE_REPORTS)
+	long getCaseReportCount(Patient patient, boolean includeVoided, CaseReport.Status... statuses);
+	
+	/**
+	 * Gets a page of the queue entries that match the specified arguments, the filtering, sorting and
+	 * paging are done by the database against the denormalized queue entries so that the patients'
+	 * names and identifiers and the triggers aren't joined. The results are also ordered by the case
+	 * report id so that the pages don't overlap.
+	 *
+	 * @param query the text to match at the start of the patient's full name, family name or
+	 *            identifier ignoring case
+	 * @param triggerName the name of a trigger of the case reports to match ignoring case
+	 * @param includeVoided specifies whether entries of voided reports should be included
+	 * @param orderBy the queue entry property to use for sorting the results
+	 * @param asc The ordering to use, true implies ascending otherwise descending
+	 * @param startIndex the index of the first entry to return, if null starts from the first
+	 * @param limit the maximum number of entries to return, if null all are returned
+	 * @param statuses specifies the statuses of the reports to match against
+	 * @return the queue entries in the page
+	 * <strong>Should</strong> return the queue entries matching the patient name or identifier
+	 * <strong>Should</strong> return the queue entries matching the trigger name
+	 * <strong>Should</strong> not match part of a trigger name
+	 * <strong>Should</strong> match the trigger name ignoring case
+	 * <strong>Should</strong> sort and page the queue entries
+	 */
+	@Authorized(CaseReportConstants.PRIV_GET_CASE_REPORTS)
+	List<CaseReportQueueEntry> getQueueEntries(String query, String triggerName, boolean includeVoided, String orderBy,
+	                                           Boolean asc, Integer startIndex, Integer limit,
+	                                           CaseReport.Status... statuses);
+	
+	/**
+	 * Gets the number of queue entries that match the specified arguments
+	 *
+	 * @param query the text to match at the start of the patient's full name, family name or
+	 *            identifier ignoring case
+	 * @param triggerName the name of a trigger of the case reports to match ignoring case
+	 * @param includeVoided specifies whether entries of voided reports should be included
+	 * @param statuses specifies the statuses of the reports to match against
+	 * @return the number of matching queue entries
+	 * <strong>Should</strong> return the number of matching queue entries
+	 */
+	@Authorized(CaseReportConstants.PRIV_GET_CASE_REPORTS)
+	long getQueueEntryCount(String query, String triggerName, boolean includeVoided, CaseReport.Status... statuses);
+	
+	/**
+	 * Adds the queue entries for the case reports that don't have one, i.e. those that were saved
+	 * before the queue entries were introduced. The queue entries of other case reports are kept up
+	 * to date whenever they are saved.
+	 *
+	 * @return the number of added queue entries
+	 * <strong>Should</strong> add the queue entries for the case reports that have none
+	 */
+	@Authorized(CaseReportConstants.PRIV_MANAGE_CASE_REPORTS)
+	int addMissingQueueEntries();
+	
+	/**
+	 * Copies the current name and identifier of the specified patient to the queue entries of the
+	 * patient's case reports
+	 *
+	 * @param patient the patient whose queue entries to update
+	 * @return the number of updated queue entries
+	 * <strong>Should</strong> update the patient details of the queue entries of the patient
+	 * <strong>Should</strong> abbreviate a patient name that is longer than the name column
+	 */
+	@Authorized(CaseReportConstants.PRIV_MANAGE_CASE_REPORTS)
+	int updateQueueEntries(Patient patient);
+	
+	/**
+	 * Gets the patients with the specified patient ids with a single query, ids that match no
+	 * patient are ignored.
+	 *
+	 * @param patientIds the patient ids to match against
+	 * @return a map of the patient ids and the matching patients
+	 * <strong>Should</strong> return the patients with the specified ids
+	 */
+	@Authorized(PrivilegeConstants.VIEW_PATIENTS)
+	Map<Integer, Patient> getPatients(Collection<Integer> patientIds);
+	
+	/**
+	 * Gets the most recent non voided observations for the specified concepts for all the patients
+	 * with the specified ids without a query per patient, up to the specified number of observations
+	 * are returned for each patient and concept.
+	 *
+	 * @param patientIds the patient ids to match against
+	 * @param concepts the concepts to match against
+	 * @param limit the maximum number of observations to return for each patient and concept
+	 * @return a list of observations ordered such that the most recent comes first
+	 * <strong>Should</strong> return the most recent obs for each patient and concept
+	 * <strong>Should</strong> return an empty list if no patient ids are specified
+	 * <strong>Should</strong> return at most the specified number of obs for each patient and concept
+	 */
+	@Authorized(PrivilegeConstants.VIEW_OBS)
+	List<Obs> getMostRecentObs(Collection<Integer> patientIds, Collection<Concept> concepts, int limit);
+	
+	/**
+	 * Gets the active drug orders for all the patients with the specified ids with a single query,
+	 * if a concept set is specified only the orders for the members of the set are returned and the
+	 * filtering is done by the database.
+	 *
+	 * @param patientIds the patient ids to match against
+	 * @param conceptSet the concept set the ordered concepts should be members of, can be null
+	 * @param asOfDate the reference date, defaults to the current date if null
+	 * @return a list of the active drug orders
+	 * <strong>Should</strong> return the active drug orders for the patients
+	 * <strong>Should</strong> return only the orders for members of the specified concept set
+	 */
+	@Authorized(PrivilegeConstants.VIEW_ORDERS)
+	List<DrugOrder> getActiveDrugOrders(Collection<Integer> patientIds, Concept conceptSet, Date asOfDate);
+	
+	/**
+	 * Gets the uuid and start date of the last non voided visit of the specified patient, only the
+	 * two values are selected so that the patient's visits aren't loaded
+	 *
+	 * @param patient the patient to match against
+	 * @return the uuid and start date of the last visit or null if the patient has no visit
+	 * <strong>Should</strong> return the uuid and start date of the last visit of the patient
+	 * <strong>Should</strong> return null if the patient has no visit
+	 */
+	@Authorized(PrivilegeConstants.VIEW_VISITS)
+	UuidAndValue getLastVisitStartDate(Patient patient);
+	
+	/**
+	 * Gets the uuid and start date of the last non voided visit of each of the patients with the
+	 * specified ids with a single query
+	 *
+	 * @param patientIds the patient ids to match against
+	 * @return a map of the patient ids and the uuids and start dates of their last visits, patients
+	 *         with no visit are excluded
+	 * <strong>Should</strong> return the uuid and start date of the last visit of each patient
+	 */
+	@Authorized(PrivilegeConstants.VIEW_VISITS)
+	Map<Integer, UuidAndValue> getLastVisitStartDates(Collection<Integer> patientIds);
+	
+	/**
+	 * Runs the specified sql query through a forward only cursor and passes the patient ids it
+	 * returns to the specified handler in chunks as they are read, the hibernate session is flushed
+	 * and cleared after each chunk so that memory use doesn't grow with the size of the result. The
+	 * query should return the patient ids in its first column.
+	 *
+	 * @param sqlQuery the sql query to run
+	 * @param parameters the values of the named parameters in the query
+	 * @param fetchSize the number of rows to fetch from the database at a time
+	 * @param chunkSize the maximum number of patient ids to pass to the handler at a time
+	 * @param handler the handler to process the patient ids
+	 * <strong>Should</strong> pass the patient ids to the handler in chunks
+	 * <strong>Should</strong> set the parameter values in the query
+	 * <strong>Should</strong> not strip comment markers inside string literals
+	 * <strong>Should</strong> expand collection and cohort parameter values
+	 */
+	@Authorized(CaseReportConstants.PRIV_MANAGE_CASE_REPORTS)
+	void streamPatientIds(String sqlQuery, Map<String, Object> parameters, int fetchSize, int chunkSize,
+	                      PatientIdChunkHandler handler);
+	
 	/**
 	 * Saves a case report to the database.
 	 * 
 	 * @param caseReport the case report to save
 	 * @return the saved case report
 	 * <strong>Should</strong> return the saved case report
+	 * <strong>Should</strong> update the queue entry of the case report
+	 * <strong>Should</strong> update the existing encoded report form in place
+	 * <strong>Should</strong> encode a report form stored in the legacy column
 	 */
 	@Authorized(CaseReportConstants.PRIV_MANAGE_CASE_REPORTS)
 	CaseReport saveCaseReport(CaseReport caseReport);
 	
+	/**
+	 * Saves the specified case reports to the database, the session is flushed and cleared after
+	 * saving every batch of the specified size so that it doesn't grow with the number of reports
+	 * being saved, this implies the saved reports are detached from the session when the method
+	 * returns if their count exceeds the batch size.
+	 *
+	 * @param caseReports the case reports to save
+	 * @param batchSize the number of case reports after which the session is flushed and cleared
+	 * @return the saved case reports
+	 * <strong>Should</strong> save the specified case reports
+	 * <strong>Should</strong> save the queue entries of reports whose patients were loaded before the
+	 *         session was cleared
+	 */
+	@Authorized(CaseReportConstants.PRIV_MANAGE_CASE_REPORTS)
+	List<CaseReport> saveCaseReports(Collection<CaseReport> caseReports, int batchSize);
+	
 	/**
 	 * Marks the specified case report as submitted in the database. If the submitter details are
 	 * not set in the report form, they will default to the logged in user
@@ -164,4 +394,37 @@ public interface CaseReportService extends OpenmrsService {
 	 */
 	@Authorized(CaseReportConstants.PRIV_GET_TRIGGERS)
 	List<Trigger> getTriggers();
+	
+	/**
+	 * Saves the specified submission outbox item to the database, a new item is due for delivery
+	 * immediately unless its next attempt date is set.
+	 *
+	 * @param item the outbox item to save
+	 * @return the saved outbox item
+	 * <strong>Should</strong> save a new outbox item that is due immediately
+	 * <strong>Should</strong> update an existing outbox item
+	 */
+	@Authorized(CaseReportConstants.PRIV_MANAGE_CASE_REPORTS)
+	SubmissionOutboxItem saveSubmissionOutboxItem(SubmissionOutboxItem item);
+	
+	/**
+	 * Gets the pending submission outbox items whose next attempt date has passed ordered by the
+	 * next attempt date with the earliest first.
+	 *
+	 * @param limit the maximum number of items to return
+	 * @return a list of the due outbox items
+	 * <strong>Should</strong> return the pending outbox items that are due
+	 */
+	@Authorized(CaseReportConstants.PRIV_GET_CASE_REPORTS)
+	List<SubmissionOutboxItem> getDueSubmissionOutboxItems(int limit);
+	
+	/**
+	 * Gets all the submission outbox items for the specified case report
+	 *
+	 * @param caseReport the case report to match against
+	 * @return a list of the outbox items for the case report
+	 * <strong>Should</strong> return the outbox items for the case report
+	 */
+	@Authorized(CaseReportConstants.PRIV_GET_CASE_REPORTS)
+	List<SubmissionOutboxItem> getSubmissionOutboxItems(CaseReport caseReport);
 }
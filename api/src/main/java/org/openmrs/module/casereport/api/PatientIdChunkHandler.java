@@ -0,0 +1,27 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.casereport.api;
+
+import java.util.List;
+
+/**
+ * Implementations process the patient ids returned by a query that is streamed through
+ * {@link CaseReportService#streamPatientIds(String, java.util.Map, int, int, PatientIdChunkHandler)}
+ * one chunk at a time
+ */
+public interface PatientIdChunkHandler {
+	
+	/**
+	 * Processes the specified chunk of patient ids
+	 *
+	 * @param patientIds the patient ids in the chunk, the same id never appears twice in a chunk
+	 */
+	void handle(List<Integer> patientIds);
+}
@@ -9,11 +9,20 @@
  */
 package org.openmrs.module.casereport.api.db;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
+import org.openmrs.Concept;
+import org.openmrs.DrugOrder;
+import org.openmrs.Obs;
 import org.openmrs.Patient;
 import org.openmrs.module.casereport.CaseReport;
+import org.openmrs.module.casereport.CaseReportQueueEntry;
+import org.openmrs.module.casereport.SubmissionOutboxItem;
 import org.openmrs.module.casereport.api.CaseReportService;
+import org.openmrs.module.casereport.api.PatientIdChunkHandler;
 
 /**
  * Database access methods for {@link CaseReportService}.
@@ -27,5 +36,45 @@ public interface CaseReportDAO {
 	List<CaseReport> getCaseReports(Patient patient, boolean includeVoided, String orderBy, Boolean asc,
 	                                CaseReport.Status... statuses);
 	
+	List<CaseReport> getCaseReports(Patient patient, boolean includeVoided, String orderBy, Boolean asc,
+	                                Integer firstResult, Integer maxResults, boolean fetchTriggersAndPatient,
+	                                CaseReport.Status... statuses);
+	
+	long getCaseReportCount(Patient patient, boolean includeVoided, CaseReport.Status... statuses);
+	
+	List<CaseReport> getCaseReportsByPatientIds(Collection<Integer> patientIds, boolean includeVoided,
+	                                            CaseReport.Status... statuses);
+	
+	List<Patient> getPatients(Collection<Integer> patientIds);
+	
+	List<Obs> getMostRecentObs(Collection<Integer> patientIds, Collection<Concept> concepts, int limit);
+	
+	List<DrugOrder> getActiveDrugOrders(Collection<Integer> patientIds, Concept conceptSet, Date asOfDate);
+	
+	Object[] getLastVisitUuidAndStartDate(Patient patient);
+	
+	List<Object[]> getLastVisitUuidsAndStartDates(Collection<Integer> patientIds);
+	
+	void streamPatientIds(String sqlQuery, Map<String, Object> parameters, int fetchSize, int chunkSize,
+	                      PatientIdChunkHandler handler);
+	
 	CaseReport saveCaseReport(CaseReport caseReport);
+	
+	List<CaseReport> saveCaseReports(Collection<CaseReport> caseReports, int batchSize);
+	
+	SubmissionOutboxItem saveSubmissionOutboxItem(SubmissionOutboxItem item);
+	
+	List<SubmissionOutboxItem> getDueSubmissionOutboxItems(Date asOfDate, int limit);
+	
+	List<SubmissionOutboxItem> getSubmissionOutboxItems(CaseReport caseReport);
+	
+	List<CaseReportQueueEntry> getQueueEntries(String query, String triggerName, boolean includeVoided, String orderBy,
+	                                           Boolean asc, Integer firstResult, Integer maxResults,
+	                                           CaseReport.Status... statuses);
+	
+	long getQueueEntryCount(String query, String triggerName, boolean includeVoided, CaseReport.Status... statuses);
+	
+	int addMissingQueueEntries(int batchSize);
+	
+	int updateQueueEntries(Patient patient);
 }
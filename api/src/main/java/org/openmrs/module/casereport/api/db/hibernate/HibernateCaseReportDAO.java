@@ -11,19 +11,50 @@ package org.openmrs.module.casereport.api.db.hibernate;
 
 import static org.openmrs.module.casereport.CaseReport.Status;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.Criteria;
+import org.hibernate.FetchMode;
+import org.hibernate.Query;
+import org.hibernate.SQLQuery;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.criterion.DetachedCriteria;
+import org.hibernate.criterion.MatchMode;
 import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.criterion.Subqueries;
+import org.hibernate.dialect.MySQLDialect;
+import org.hibernate.engine.SessionFactoryImplementor;
+import org.openmrs.Cohort;
+import org.openmrs.Concept;
+import org.openmrs.ConceptSet;
+import org.openmrs.DrugOrder;
+import org.openmrs.Obs;
+import org.openmrs.OpenmrsObject;
 import org.openmrs.Patient;
+import org.openmrs.api.db.DAOException;
 import org.openmrs.module.casereport.CaseReport;
+import org.openmrs.module.casereport.CaseReportQueueEntry;
+import org.openmrs.module.casereport.CaseReportTrigger;
+import org.openmrs.module.casereport.SubmissionOutboxItem;
+import org.openmrs.module.casereport.api.PatientIdChunkHandler;
 import org.openmrs.module.casereport.api.db.CaseReportDAO;
 
 /**
@@ -76,7 +107,101 @@ public class HibernateCaseReportDAO implements CaseReportDAO {
 	@Override
 	public List<CaseReport> getCaseReports(Patient patient, boolean includeVoided, String orderBy, Boolean asc,
 	                                       Status... statuses) {
+		return getCaseReports(patient, includeVoided, orderBy, asc, null, null, false, statuses);
+	}
+	
+	/**
+	 * @see CaseReportDAO#getCaseReports(Patient, boolean, String, Boolean, Integer, Integer,
+	 *      boolean, Status...)
+	 */
+	@Override
+	public List<CaseReport> getCaseReports(Patient patient, boolean includeVoided, String orderBy, Boolean asc,
+	                                       Integer firstResult, Integer maxResults, boolean fetchTriggersAndPatient,
+	                                       Status... statuses) {
+		
+		Criteria criteria = createCaseReportCriteria(patient, includeVoided, statuses);
+		if (StringUtils.isNotBlank(orderBy) && asc != null) {
+			Order order = asc ? Order.asc(orderBy) : Order.desc(orderBy);
+			criteria.addOrder(order);
+		}
+		
+		if (firstResult != null || maxResults != null) {
+			//Break ties so that no report is skipped or repeated across pages
+			criteria.addOrder(Order.asc("caseReportId"));
+			if (firstResult != null) {
+				criteria.setFirstResult(firstResult);
+			}
+			if (maxResults != null) {
+				criteria.setMaxResults(maxResults);
+			}
+		}
+		
+		if (!fetchTriggersAndPatient) {
+			return criteria.list();
+		}
+		
+		//Joining the collections would make the database page the joined rows instead of the reports,
+		//so the ids of the reports in the page are fetched first
+		criteria.setProjection(Projections.id());
+		List<Integer> caseReportIds = criteria.list();
+		
+		return getCaseReportsWithTriggersAndPatient(caseReportIds);
+	}
+	
+	/**
+	 * Gets the case reports with the specified ids along with their triggers, patients and the
+	 * patients' names and identifiers
+	 *
+	 * @param caseReportIds the ids of the case reports
+	 * @return the case reports in the same order as the ids
+	 */
+	private List<CaseReport> getCaseReportsWithTriggersAndPatient(List<Integer> caseReportIds) {
+		if (caseReportIds.isEmpty()) {
+			return new ArrayList<>();
+		}
+		
+		Session session = getCurrentSession();
+		Criteria fetchCriteria = session.createCriteria(CaseReport.class);
+		fetchCriteria.add(Restrictions.in("caseReportId", caseReportIds));
+		fetchCriteria.setFetchMode("reportTriggers", FetchMode.JOIN);
+		fetchCriteria.setFetchMode("patient", FetchMode.JOIN);
+		fetchCriteria.setResultTransformer(Criteria.DISTINCT_ROOT_ENTITY);
+		Map<Integer, CaseReport> idAndCaseReportMap = new HashMap<>();
+		Set<Integer> patientIds = new HashSet<>();
+		for (Object caseReport : fetchCriteria.list()) {
+			idAndCaseReportMap.put(((CaseReport) caseReport).getId(), (CaseReport) caseReport);
+			patientIds.add(((CaseReport) caseReport).getPatient().getPatientId());
+		}
 		
+		//Only one collection is join fetched per query to avoid a cartesian product of the triggers,
+		//names and identifiers, the names and identifiers of all the patients are fetched in a query each
+		for (String collection : new String[] { "names", "identifiers" }) {
+			Query query = session.createQuery("select distinct p from Patient p left join fetch p." + collection
+			        + " where p.patientId in (:patientIds)");
+			query.setParameterList("patientIds", patientIds);
+			query.list();
+		}
+		
+		List<CaseReport> caseReports = new ArrayList<>(caseReportIds.size());
+		for (Integer caseReportId : caseReportIds) {
+			caseReports.add(idAndCaseReportMap.get(caseReportId));
+		}
+		
+		return caseReports;
+	}
+	
+	/**
+	 * @see CaseReportDAO#getCaseReportCount(Patient, boolean, Status...)
+	 */
+	@Override
+	public long getCaseReportCount(Patient patient, boolean includeVoided, Status... statuses) {
+		Criteria criteria = createCaseReportCriteria(patient, includeVoided, statuses);
+		criteria.setProjection(Projections.rowCount());
+		
+		return ((Number) criteria.uniqueResult()).longValue();
+	}
+	
+	private Criteria createCaseReportCriteria(Patient patient, boolean includeVoided, Status... statuses) {
 		Criteria criteria = getCurrentSession().createCriteria(CaseReport.class);
 		if (patient != null) {
 			criteria.add(Restrictions.eq("patient", patient));
@@ -90,20 +215,501 @@ public class HibernateCaseReportDAO implements CaseReportDAO {
 			criteria.add(Restrictions.eq("voided", false));
 		}
 		
-		if (StringUtils.isNotBlank(orderBy) && asc != null) {
-			Order order = asc ? Order.asc(orderBy) : Order.desc(orderBy);
-			criteria.addOrder(order);
+		return criteria;
+	}
+	
+	/**
+	 * @see CaseReportDAO#getCaseReportsByPatientIds(Collection, boolean, Status...)
+	 */
+	@Override
+	public List<CaseReport> getCaseReportsByPatientIds(Collection<Integer> patientIds, boolean includeVoided,
+	                                                   Status... statuses) {
+		if (CollectionUtils.isEmpty(patientIds)) {
+			return new ArrayList<>();
+		}
+		
+		Criteria criteria = getCurrentSession().createCriteria(CaseReport.class);
+		criteria.createAlias("patient", "p");
+		criteria.add(Restrictions.in("p.patientId", patientIds));
+		if (ArrayUtils.isNotEmpty(statuses)) {
+			criteria.add(Restrictions.in("status", statuses));
+		}
+		
+		if (!includeVoided) {
+			criteria.add(Restrictions.eq("voided", false));
 		}
 		
 		return criteria.list();
 	}
 	
+	/**
+	 * @see CaseReportDAO#getPatients(Collection)
+	 */
+	@Override
+	public List<Patient> getPatients(Collection<Integer> patientIds) {
+		if (CollectionUtils.isEmpty(patientIds)) {
+			return new ArrayList<>();
+		}
+		
+		return getCurrentSession().createCriteria(Patient.class).add(Restrictions.in("patientId", patientIds)).list();
+	}
+	
+	/**
+	 * @see CaseReportDAO#getMostRecentObs(Collection, Collection, int)
+	 */
+	@Override
+	public List<Obs> getMostRecentObs(Collection<Integer> patientIds, Collection<Concept> concepts, int limit) {
+		if (CollectionUtils.isEmpty(patientIds) || CollectionUtils.isEmpty(concepts)) {
+			return new ArrayList<>();
+		}
+		
+		//There is no portable way to limit the rows per group, so we read just the ids of the matching obs
+		//ordered by date, apply the limit per patient and concept and then load the selected obs
+		Query idQuery = getCurrentSession().createQuery(
+		    "select o.obsId, o.person.personId, o.concept.conceptId from Obs o where o.person.personId in "
+		            + "(:patientIds) and o.concept in (:concepts) and o.voided = false "
+		            + "order by o.obsDatetime desc, o.obsId desc");
+		idQuery.setParameterList("patientIds", patientIds);
+		idQuery.setParameterList("concepts", concepts);
+		List<Object[]> rows = idQuery.list();
+		Map<String, Integer> patientAndConceptCountMap = new HashMap<>();
+		List<Integer> obsIds = new ArrayList<>();
+		for (Object[] row : rows) {
+			String key = row[1] + "-" + row[2];
+			Integer count = patientAndConceptCountMap.get(key);
+			count = count == null ? 1 : count + 1;
+			patientAndConceptCountMap.put(key, count);
+			if (count <= limit) {
+				obsIds.add((Integer) row[0]);
+			}
+		}
+		if (obsIds.isEmpty()) {
+			return new ArrayList<>();
+		}
+		
+		Query query = getCurrentSession().createQuery(
+		    "select o from Obs o where o.obsId in (:obsIds) order by o.obsDatetime desc, o.obsId desc");
+		query.setParameterList("obsIds", obsIds);
+		
+		return query.list();
+	}
+	
+	/**
+	 * @see CaseReportDAO#getActiveDrugOrders(Collection, Concept, Date)
+	 */
+	@Override
+	public List<DrugOrder> getActiveDrugOrders(Collection<Integer> patientIds, Concept conceptSet, Date asOfDate) {
+		if (CollectionUtils.isEmpty(patientIds)) {
+			return new ArrayList<>();
+		}
+		
+		Criteria criteria = getCurrentSession().createCriteria(DrugOrder.class);
+		criteria.createAlias("patient", "p");
+		criteria.add(Restrictions.in("p.patientId", patientIds));
+		criteria.add(Restrictions.eq("voided", false));
+		criteria.add(Restrictions.ne("action", org.openmrs.Order.Action.DISCONTINUE));
+		criteria.add(Restrictions.le("dateActivated", asOfDate));
+		criteria.add(Restrictions.or(Restrictions.isNull("dateStopped"), Restrictions.gt("dateStopped", asOfDate)));
+		criteria.add(Restrictions.or(Restrictions.isNull("autoExpireDate"), Restrictions.gt("autoExpireDate", asOfDate)));
+		if (conceptSet != null) {
+			DetachedCriteria setMembers = DetachedCriteria.forClass(ConceptSet.class);
+			setMembers.add(Restrictions.eq("conceptSet", conceptSet));
+			setMembers.setProjection(Projections.property("concept"));
+			criteria.add(Subqueries.propertyIn("concept", setMembers));
+		}
+		
+		return criteria.list();
+	}
+	
+	/**
+	 * @see CaseReportDAO#getLastVisitUuidAndStartDate(Patient)
+	 */
+	@Override
+	public Object[] getLastVisitUuidAndStartDate(Patient patient) {
+		Query query = getCurrentSession().createQuery(
+		    "select v.uuid, v.startDatetime from Visit v where v.patient = :patient and v.voided = false "
+		            + "order by v.startDatetime desc, v.visitId desc");
+		query.setParameter("patient", patient);
+		query.setMaxResults(1);
+		
+		return (Object[]) query.uniqueResult();
+	}
+	
+	/**
+	 * @see CaseReportDAO#getLastVisitUuidsAndStartDates(Collection)
+	 */
+	@Override
+	public List<Object[]> getLastVisitUuidsAndStartDates(Collection<Integer> patientIds) {
+		if (CollectionUtils.isEmpty(patientIds)) {
+			return new ArrayList<>();
+		}
+		
+		Query query = getCurrentSession().createQuery(
+		    "select v.patient.patientId, v.uuid, v.startDatetime from Visit v where v.patient.patientId in "
+		            + "(:patientIds) and v.voided = false and v.startDatetime = (select max(v2.startDatetime) "
+		            + "from Visit v2 where v2.patient = v.patient and v2.voided = false) order by v.visitId desc");
+		query.setParameterList("patientIds", patientIds);
+		
+		return query.list();
+	}
+	
+	/**
+	 * @see CaseReportDAO#streamPatientIds(String, Map, int, int, PatientIdChunkHandler)
+	 */
+	@Override
+	public void streamPatientIds(String sqlQuery, Map<String, Object> parameters, int fetchSize, int chunkSize,
+	                             PatientIdChunkHandler handler) {
+		//The cursor is read through a separate session so that it stays open while the current
+		//session is flushed and cleared and the transactions of the handler are committed
+		Session cursorSession = getSessionFactory().openSession();
+		ScrollableResults results = null;
+		try {
+			SQLQuery query = cursorSession.createSQLQuery(removeComments(sqlQuery));
+			for (String name : query.getNamedParameters()) {
+				if (parameters == null || !parameters.containsKey(name)) {
+					throw new DAOException("No value specified for the query parameter: " + name);
+				}
+				setParameter(query, name, parameters.get(name));
+			}
+			query.setReadOnly(true);
+			query.setFetchSize(fetchSize);
+			results = query.scroll(ScrollMode.FORWARD_ONLY);
+			Set<Integer> chunk = new LinkedHashSet<>();
+			while (results.next()) {
+				chunk.add(((Number) results.get(0)).intValue());
+				if (chunk.size() == chunkSize) {
+					handleChunk(chunk, handler);
+				}
+			}
+			if (!chunk.isEmpty()) {
+				handleChunk(chunk, handler);
+			}
+		}
+		finally {
+			if (results != null) {
+				results.close();
+			}
+			cursorSession.close();
+		}
+	}
+	
+	private void handleChunk(Set<Integer> chunk, PatientIdChunkHandler handler) {
+		handler.handle(new ArrayList<>(chunk));
+		chunk.clear();
+		Session session = getCurrentSession();
+		session.flush();
+		session.clear();
+	}
+	
+	/**
+	 * Sets the value of the specified named parameter in the query, the value is converted the same
+	 * way the reporting module's sql cohort evaluator does it i.e. a cohort is replaced by its member
+	 * ids, an OpenmrsObject by its id and a collection is expanded into a parameter list.
+	 *
+	 * @param query the query
+	 * @param name the parameter name
+	 * @param value the parameter value
+	 */
+	private static void setParameter(SQLQuery query, String name, Object value) {
+		if (value instanceof Cohort) {
+			value = ((Cohort) value).getMemberIds();
+		}
+		if (value instanceof Collection) {
+			List<Object> values = new ArrayList<>();
+			for (Object element : (Collection<?>) value) {
+				values.add(element instanceof OpenmrsObject ? ((OpenmrsObject) element).getId() : element);
+			}
+			query.setParameterList(name, values);
+		} else if (value instanceof OpenmrsObject) {
+			query.setParameter(name, ((OpenmrsObject) value).getId());
+		} else {
+			query.setParameter(name, value);
+		}
+	}
+	
+	/**
+	 * Removes the comments and the trailing semi colon from the specified sql query since colons in
+	 * comments would otherwise be mistaken for named parameters, comment markers inside quoted
+	 * literals and identifiers are left intact.
+	 *
+	 * @param sqlQuery the sql query
+	 * @return the cleaned up sql query
+	 */
+	private static String removeComments(String sqlQuery) {
+		StringBuilder cleanQuery = new StringBuilder(sqlQuery.length());
+		int length = sqlQuery.length();
+		int i = 0;
+		while (i < length) {
+			char c = sqlQuery.charAt(i);
+			char next = i + 1 < length ? sqlQuery.charAt(i + 1) : 0;
+			if (c == '\'' || c == '"' || c == '`') {
+				//Copy the quoted literal or identifier as is, a doubled quote or an escaped character
+				//doesn't end it
+				int end = i + 1;
+				while (end < length) {
+					char current = sqlQuery.charAt(end);
+					if (current == '\\' && c != '`') {
+						end += 2;
+					} else if (current == c) {
+						if (end + 1 < length && sqlQuery.charAt(end + 1) == c) {
+							end += 2;
+						} else {
+							break;
+						}
+					} else {
+						end++;
+					}
+				}
+				end = Math.min(end + 1, length);
+				cleanQuery.append(sqlQuery, i, end);
+				i = end;
+			} else if (c == '-' && next == '-') {
+				int end = i + 2;
+				while (end < length && sqlQuery.charAt(end) != '\n' && sqlQuery.charAt(end) != '\r') {
+					end++;
+				}
+				cleanQuery.append(' ');
+				i = end;
+			} else if (c == '/' && next == '*') {
+				int end = sqlQuery.indexOf("*/", i + 2);
+				cleanQuery.append(' ');
+				i = end < 0 ? length : end + 2;
+			} else {
+				cleanQuery.append(c);
+				i++;
+			}
+		}
+		
+		String trimmedQuery = cleanQuery.toString().trim();
+		if (trimmedQuery.endsWith(";")) {
+			trimmedQuery = trimmedQuery.substring(0, trimmedQuery.length() - 1);
+		}
+		return trimmedQuery;
+	}
+	
 	/**
 	 * @see CaseReportDAO#saveCaseReport(CaseReport)
 	 */
 	@Override
 	public CaseReport saveCaseReport(CaseReport caseReport) {
-		getCurrentSession().saveOrUpdate(caseReport);
+		Session session = getCurrentSession();
+		boolean isNew = caseReport.getCaseReportId() == null;
+		CaseReportQueueEntry entry = new CaseReportQueueEntry();
+		entry.updatePatient(caseReport.getPatient());
+		session.saveOrUpdate(caseReport);
+		saveQueueEntry(session, caseReport, entry, isNew);
 		return caseReport;
 	}
+	
+	/**
+	 * @see CaseReportDAO#saveCaseReports(Collection, int)
+	 */
+	@Override
+	public List<CaseReport> saveCaseReports(Collection<CaseReport> caseReports, int batchSize) {
+		Session session = getCurrentSession();
+		//The patient details of the queue entries are copied before the session is cleared for the
+		//first time, after that the patients are detached and their names and identifiers can't be loaded
+		List<CaseReportQueueEntry> entries = new ArrayList<>(caseReports.size());
+		for (CaseReport caseReport : caseReports) {
+			CaseReportQueueEntry entry = new CaseReportQueueEntry();
+			entry.updatePatient(caseReport.getPatient());
+			entries.add(entry);
+		}
+		
+		List<CaseReport> savedCaseReports = new ArrayList<>(caseReports.size());
+		for (CaseReport caseReport : caseReports) {
+			boolean isNew = caseReport.getCaseReportId() == null;
+			session.saveOrUpdate(caseReport);
+			saveQueueEntry(session, caseReport, entries.get(savedCaseReports.size()), isNew);
+			savedCaseReports.add(caseReport);
+			if (savedCaseReports.size() % batchSize == 0) {
+				session.flush();
+				session.clear();
+			}
+		}
+		session.flush();
+		
+		return savedCaseReports;
+	}
+	
+	/**
+	 * Creates or updates the queue entry of the specified case report, this is done here rather than
+	 * in the service since saveCaseReports clears the session after each batch
+	 *
+	 * @param session the current session
+	 * @param caseReport the saved case report
+	 * @param entry the queue entry with the patient details already copied to it
+	 * @param isNew specifies if the case report was just inserted in which case it has no entry
+	 */
+	private void saveQueueEntry(Session session, CaseReport caseReport, CaseReportQueueEntry entry, boolean isNew) {
+		entry.updateCaseReport(caseReport);
+		if (isNew) {
+			session.save(entry);
+		} else {
+			//Copies the entry to the persistent one or inserts it if the case report has none yet
+			session.merge(entry);
+		}
+	}
+	
+	/**
+	 * @see CaseReportDAO#saveSubmissionOutboxItem(SubmissionOutboxItem)
+	 */
+	@Override
+	public SubmissionOutboxItem saveSubmissionOutboxItem(SubmissionOutboxItem item) {
+		getCurrentSession().saveOrUpdate(item);
+		return item;
+	}
+	
+	/**
+	 * @see CaseReportDAO#getDueSubmissionOutboxItems(Date, int)
+	 */
+	@Override
+	public List<SubmissionOutboxItem> getDueSubmissionOutboxItems(Date asOfDate, int limit) {
+		Criteria criteria = getCurrentSession().createCriteria(SubmissionOutboxItem.class);
+		criteria.add(Restrictions.eq("status", SubmissionOutboxItem.Status.PENDING));
+		criteria.add(Restrictions.le("nextAttemptDate", asOfDate));
+		criteria.addOrder(Order.asc("nextAttemptDate"));
+		criteria.addOrder(Order.asc("submissionOutboxItemId"));
+		criteria.setMaxResults(limit);
+		
+		return criteria.list();
+	}
+	
+	/**
+	 * @see CaseReportDAO#getSubmissionOutboxItems(CaseReport)
+	 */
+	@Override
+	public List<SubmissionOutboxItem> getSubmissionOutboxItems(CaseReport caseReport) {
+		Criteria criteria = getCurrentSession().createCriteria(SubmissionOutboxItem.class);
+		criteria.add(Restrictions.eq("caseReport", caseReport));
+		criteria.addOrder(Order.asc("submissionOutboxItemId"));
+		
+		return criteria.list();
+	}
+	
+	/**
+	 * @see CaseReportDAO#getQueueEntries(String, String, boolean, String, Boolean, Integer, Integer,
+	 *      Status...)
+	 */
+	@Override
+	public List<CaseReportQueueEntry> getQueueEntries(String query, String triggerName, boolean includeVoided,
+	                                                  String orderBy, Boolean asc, Integer firstResult,
+	                                                  Integer maxResults, Status... statuses) {
+		Criteria criteria = createQueueEntryCriteria(query, triggerName, includeVoided, statuses);
+		if (StringUtils.isNotBlank(orderBy) && asc != null) {
+			criteria.addOrder(asc ? Order.asc(orderBy) : Order.desc(orderBy));
+		}
+		//Break ties so that no entry is skipped or repeated across pages
+		criteria.addOrder(Order.asc("caseReportId"));
+		if (firstResult != null) {
+			criteria.setFirstResult(firstResult);
+		}
+		if (maxResults != null) {
+			criteria.setMaxResults(maxResults);
+		}
+		
+		return criteria.list();
+	}
+	
+	/**
+	 * @see CaseReportDAO#getQueueEntryCount(String, String, boolean, Status...)
+	 */
+	@Override
+	public long getQueueEntryCount(String query, String triggerName, boolean includeVoided, Status... statuses) {
+		Criteria criteria = createQueueEntryCriteria(query, triggerName, includeVoided, statuses);
+		criteria.setProjection(Projections.rowCount());
+		
+		return ((Number) criteria.uniqueResult()).longValue();
+	}
+	
+	private Criteria createQueueEntryCriteria(String query, String triggerName, boolean includeVoided,
+	                                          Status... statuses) {
+		Criteria criteria = getCurrentSession().createCriteria(CaseReportQueueEntry.class);
+		if (StringUtils.isNotBlank(query)) {
+			//The search columns are lower cased when the entries are saved, a prefix match on them
+			//can use their indexes unlike ilike which lower cases the column values
+			String prefix = query.trim().toLowerCase();
+			criteria.add(Restrictions.or(Restrictions.or(Restrictions.like("searchName", prefix, MatchMode.START),
+			    Restrictions.like("searchFamilyName", prefix, MatchMode.START)), Restrictions.like("searchIdentifier",
+			    prefix, MatchMode.START)));
+		}
+		
+		if (StringUtils.isNotBlank(triggerName)) {
+			//The trigger names in the queue entry are only for display, the exact name is matched
+			//against the triggers table which is indexed on the name and case report id. The default
+			//MySQL collations compare case insensitively and use the plain index, other databases
+			//compare the lower cased names which matches their index on lower(name)
+			DetachedCriteria caseReportIds = DetachedCriteria.forClass(CaseReportTrigger.class);
+			if (isMySQL()) {
+				caseReportIds.add(Restrictions.eq("name", triggerName.trim()));
+			} else {
+				caseReportIds.add(Restrictions.eq("name", triggerName.trim()).ignoreCase());
+			}
+			caseReportIds.setProjection(Projections.property("caseReport.caseReportId"));
+			criteria.add(Subqueries.propertyIn("caseReportId", caseReportIds));
+		}
+		
+		if (ArrayUtils.isNotEmpty(statuses)) {
+			criteria.add(Restrictions.in("status", statuses));
+		}
+		
+		if (!includeVoided) {
+			criteria.add(Restrictions.eq("voided", false));
+		}
+		
+		return criteria;
+	}
+	
+	private boolean isMySQL() {
+		return ((SessionFactoryImplementor) getSessionFactory()).getDialect() instanceof MySQLDialect;
+	}
+	
+	/**
+	 * @see CaseReportDAO#updateQueueEntries(Patient)
+	 */
+	@Override
+	public int updateQueueEntries(Patient patient) {
+		Criteria criteria = getCurrentSession().createCriteria(CaseReportQueueEntry.class);
+		criteria.add(Restrictions.eq("patientId", patient.getPatientId()));
+		List<CaseReportQueueEntry> entries = criteria.list();
+		for (CaseReportQueueEntry entry : entries) {
+			entry.updatePatient(patient);
+		}
+		
+		return entries.size();
+	}
+	
+	/**
+	 * @see CaseReportDAO#addMissingQueueEntries(int)
+	 */
+	@Override
+	public int addMissingQueueEntries(int batchSize) {
+		Session session = getCurrentSession();
+		DetachedCriteria indexedIds = DetachedCriteria.forClass(CaseReportQueueEntry.class);
+		indexedIds.setProjection(Projections.property("caseReportId"));
+		int count = 0;
+		Integer lastCaseReportId = 0;
+		while (true) {
+			Criteria criteria = session.createCriteria(CaseReport.class);
+			criteria.add(Restrictions.gt("caseReportId", lastCaseReportId));
+			criteria.add(Subqueries.propertyNotIn("caseReportId", indexedIds));
+			criteria.addOrder(Order.asc("caseReportId"));
+			criteria.setMaxResults(batchSize);
+			criteria.setProjection(Projections.id());
+			List<Integer> caseReportIds = criteria.list();
+			if (caseReportIds.isEmpty()) {
+				break;
+			}
+			
+			for (CaseReport caseReport : getCaseReportsWithTriggersAndPatient(caseReportIds)) {
+				session.save(new CaseReportQueueEntry(caseReport));
+			}
+			count += caseReportIds.size();
+			lastCaseReportId = caseReportIds.get(caseReportIds.size() - 1);
+			session.flush();
+			session.clear();
+		}
+		
+		return count;
+	}
 }
@@ -16,13 +16,16 @@ import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.codehaus.jackson.map.ObjectMapper;
 import org.openmrs.Concept;
+import org.openmrs.DrugOrder;
+import org.openmrs.Obs;
 import org.openmrs.Patient;
 import org.openmrs.Provider;
 import org.openmrs.User;
@@ -32,17 +35,22 @@ import org.openmrs.api.impl.BaseOpenmrsService;
 import org.openmrs.module.casereport.CaseReport;
 import org.openmrs.module.casereport.CaseReportConstants;
 import org.openmrs.module.casereport.CaseReportForm;
+import org.openmrs.module.casereport.CaseReportQueueEntry;
 import org.openmrs.module.casereport.CaseReportTask;
 import org.openmrs.module.casereport.CaseReportTrigger;
 import org.openmrs.module.casereport.CaseReportUtil;
+import org.openmrs.module.casereport.JsonCodec;
+import org.openmrs.module.casereport.SubmissionOutboxItem;
 import org.openmrs.module.casereport.Trigger;
 import org.openmrs.module.casereport.UuidAndValue;
 import org.openmrs.module.casereport.api.CaseReportService;
 import org.openmrs.module.casereport.api.CaseReportSubmittedEvent;
+import org.openmrs.module.casereport.api.PatientIdChunkHandler;
 import org.openmrs.module.casereport.api.db.CaseReportDAO;
 import org.openmrs.scheduler.TaskDefinition;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 /**
@@ -53,9 +61,10 @@ public class CaseReportServiceImpl extends BaseOpenmrsService implements CaseRep
 	
 	protected final Log log = LogFactory.getLog(this.getClass());
 	
-	private CaseReportDAO dao;
+	//The number of case reports for which the missing queue entries are added at a time
+	private static final int QUEUE_ENTRY_BATCH_SIZE = 100;
 	
-	private ObjectMapper mapper = null;
+	private CaseReportDAO dao;
 	
 	private List<Trigger> triggers = null;
 	
@@ -69,13 +78,6 @@ public class CaseReportServiceImpl extends BaseOpenmrsService implements CaseRep
 		this.dao = dao;
 	}
 	
-	private ObjectMapper getObjectMapper() {
-		if (mapper == null) {
-			mapper = new ObjectMapper();
-		}
-		return mapper;
-	}
-	
 	private void setProperty(CaseReport caseReport, String propertyName, Object value) {
 		
 		Boolean isAccessible = null;
@@ -132,6 +134,24 @@ public class CaseReportServiceImpl extends BaseOpenmrsService implements CaseRep
 		return caseReports.get(0);
 	}
 	
+	/**
+	 * @see CaseReportService#getCaseReportsByPatientIds(Collection)
+	 */
+	@Override
+	public Map<Integer, CaseReport> getCaseReportsByPatientIds(Collection<Integer> patientIds) throws APIException {
+		Map<Integer, CaseReport> patientIdAndReportMap = new HashMap<>();
+		List<CaseReport> caseReports = dao.getCaseReportsByPatientIds(patientIds, false, getQueueStatuses());
+		for (CaseReport caseReport : caseReports) {
+			Integer patientId = caseReport.getPatient().getPatientId();
+			if (patientIdAndReportMap.containsKey(patientId)) {
+				throw new APIException("Found multiple case reports that match the patient with id:" + patientId);
+			}
+			patientIdAndReportMap.put(patientId, caseReport);
+		}
+		
+		return patientIdAndReportMap;
+	}
+	
 	/**
 	 * @See CaseReportService#getCaseReports()
 	 */
@@ -150,15 +170,162 @@ public class CaseReportServiceImpl extends BaseOpenmrsService implements CaseRep
 		return dao.getCaseReports(patient, includeVoided, orderBy, asc, statuses);
 	}
 	
+	/**
+	 * @see CaseReportService#getCaseReports(Patient, boolean, String, Boolean, Integer, Integer,
+	 *      boolean, Status...)
+	 */
+	@Override
+	public List<CaseReport> getCaseReports(Patient patient, boolean includeVoided, String orderBy, Boolean asc,
+	                                       Integer startIndex, Integer limit, boolean fetchTriggersAndPatient,
+	                                       Status... statuses) throws APIException {
+		return dao.getCaseReports(patient, includeVoided, orderBy, asc, startIndex, limit, fetchTriggersAndPatient,
+		    statuses);
+	}
+	
+	/**
+	 * @see CaseReportService#getCaseReportCount(Patient, boolean, Status...)
+	 */
+	@Override
+	public long getCaseReportCount(Patient patient, boolean includeVoided, Status... statuses) throws APIException {
+		return dao.getCaseReportCount(patient, includeVoided, statuses);
+	}
+	
+	/**
+	 * @see CaseReportService#getQueueEntries(String, String, boolean, String, Boolean, Integer,
+	 *      Integer, Status...)
+	 */
+	@Override
+	public List<CaseReportQueueEntry> getQueueEntries(String query, String triggerName, boolean includeVoided,
+	                                                  String orderBy, Boolean asc, Integer startIndex, Integer limit,
+	                                                  Status... statuses) throws APIException {
+		return dao.getQueueEntries(query, triggerName, includeVoided, orderBy, asc, startIndex, limit, statuses);
+	}
+	
+	/**
+	 * @see CaseReportService#getQueueEntryCount(String, String, boolean, Status...)
+	 */
+	@Override
+	public long getQueueEntryCount(String query, String triggerName, boolean includeVoided, Status... statuses)
+	    throws APIException {
+		return dao.getQueueEntryCount(query, triggerName, includeVoided, statuses);
+	}
+	
+	/**
+	 * @see CaseReportService#addMissingQueueEntries()
+	 */
+	@Override
+	@Transactional
+	public int addMissingQueueEntries() throws APIException {
+		return dao.addMissingQueueEntries(QUEUE_ENTRY_BATCH_SIZE);
+	}
+	
+	/**
+	 * @see CaseReportService#updateQueueEntries(Patient)
+	 */
+	@Override
+	@Transactional
+	public int updateQueueEntries(Patient patient) throws APIException {
+		return dao.updateQueueEntries(patient);
+	}
+	
+	/**
+	 * @see CaseReportService#getPatients(Collection)
+	 */
+	@Override
+	public Map<Integer, Patient> getPatients(Collection<Integer> patientIds) throws APIException {
+		Map<Integer, Patient> patientIdAndPatientMap = new HashMap<>();
+		for (Patient patient : dao.getPatients(patientIds)) {
+			patientIdAndPatientMap.put(patient.getPatientId(), patient);
+		}
+		
+		return patientIdAndPatientMap;
+	}
+	
+	/**
+	 * @see CaseReportService#getMostRecentObs(Collection, Collection, int)
+	 */
+	@Override
+	public List<Obs> getMostRecentObs(Collection<Integer> patientIds, Collection<Concept> concepts, int limit)
+	    throws APIException {
+		return dao.getMostRecentObs(patientIds, concepts, limit);
+	}
+	
+	/**
+	 * @see CaseReportService#getActiveDrugOrders(Collection, Concept, Date)
+	 */
+	@Override
+	public List<DrugOrder> getActiveDrugOrders(Collection<Integer> patientIds, Concept conceptSet, Date asOfDate)
+	    throws APIException {
+		return dao.getActiveDrugOrders(patientIds, conceptSet, asOfDate != null ? asOfDate : new Date());
+	}
+	
+	/**
+	 * @see CaseReportService#getLastVisitStartDate(Patient)
+	 */
+	@Override
+	public UuidAndValue getLastVisitStartDate(Patient patient) throws APIException {
+		Object[] row = dao.getLastVisitUuidAndStartDate(patient);
+		if (row == null) {
+			return null;
+		}
+		
+		return new UuidAndValue((String) row[0], row[1]);
+	}
+	
+	/**
+	 * @see CaseReportService#getLastVisitStartDates(Collection)
+	 */
+	@Override
+	public Map<Integer, UuidAndValue> getLastVisitStartDates(Collection<Integer> patientIds) throws APIException {
+		Map<Integer, UuidAndValue> patientIdAndVisitMap = new HashMap<>();
+		for (Object[] row : dao.getLastVisitUuidsAndStartDates(patientIds)) {
+			//In case of visits with the same start date, keep the first
+			Integer patientId = (Integer) row[0];
+			if (!patientIdAndVisitMap.containsKey(patientId)) {
+				patientIdAndVisitMap.put(patientId, new UuidAndValue((String) row[1], row[2]));
+			}
+		}
+		
+		return patientIdAndVisitMap;
+	}
+	
+	/**
+	 * @see CaseReportService#streamPatientIds(String, Map, int, int, PatientIdChunkHandler)
+	 */
+	@Override
+	@Transactional(propagation = Propagation.SUPPORTS)
+	public void streamPatientIds(String sqlQuery, Map<String, Object> parameters, int fetchSize, int chunkSize,
+	                             PatientIdChunkHandler handler) throws APIException {
+		//The chunks aren't processed in a single transaction so that the saved case reports are
+		//committed as they are processed and are visible to other triggers running in parallel
+		dao.streamPatientIds(sqlQuery, parameters, fetchSize, chunkSize, handler);
+	}
+	
 	/**
 	 * @See CaseReportService#saveCaseReport(CaseReport)
 	 */
 	@Override
 	@Transactional
 	public CaseReport saveCaseReport(CaseReport caseReport) throws APIException {
+		caseReport.encodeLegacyReportForm();
 		return dao.saveCaseReport(caseReport);
 	}
 	
+	/**
+	 * @see CaseReportService#saveCaseReports(Collection, int)
+	 */
+	@Override
+	@Transactional
+	public List<CaseReport> saveCaseReports(Collection<CaseReport> caseReports, int batchSize) throws APIException {
+		if (batchSize < 1) {
+			throw new APIException("The batch size should be greater than zero");
+		}
+		for (CaseReport caseReport : caseReports) {
+			caseReport.encodeLegacyReportForm();
+		}
+		return dao.saveCaseReports(caseReports, batchSize);
+	}
+	
 	/**
 	 * @See CaseReportService#submitCaseReport(CaseReport,List, User)
 	 */
@@ -203,7 +370,7 @@ public class CaseReportServiceImpl extends BaseOpenmrsService implements CaseRep
 		
 		CaseReportForm form;
 		try {
-			form = getObjectMapper().readValue(caseReport.getReportForm(), CaseReportForm.class);
+			form = JsonCodec.readForm(caseReport.getReportForm());
 			form.setReportUuid(caseReport.getUuid());
 			form.setReportDate(caseReport.getDateCreated());
 		}
@@ -247,7 +414,7 @@ public class CaseReportServiceImpl extends BaseOpenmrsService implements CaseRep
 		setProperty(caseReport, "resolutionDate", new Date());
 		
 		try {
-			caseReport.setReportForm(getObjectMapper().writeValueAsString(form));
+			caseReport.setReportForm(JsonCodec.writeForm(form));
 		}
 		catch (IOException e) {
 			throw new APIException("Failed to serialize case report form data", e);
@@ -322,6 +489,41 @@ public class CaseReportServiceImpl extends BaseOpenmrsService implements CaseRep
 		return triggers;
 	}
 	
+	/**
+	 * @see CaseReportService#saveSubmissionOutboxItem(SubmissionOutboxItem)
+	 */
+	@Override
+	@Transactional
+	public SubmissionOutboxItem saveSubmissionOutboxItem(SubmissionOutboxItem item) throws APIException {
+		Date now = new Date();
+		if (item.getDateCreated() == null) {
+			item.setDateCreated(now);
+		} else {
+			item.setDateChanged(now);
+		}
+		if (item.getNextAttemptDate() == null) {
+			item.setNextAttemptDate(now);
+		}
+		
+		return dao.saveSubmissionOutboxItem(item);
+	}
+	
+	/**
+	 * @see CaseReportService#getDueSubmissionOutboxItems(int)
+	 */
+	@Override
+	public List<SubmissionOutboxItem> getDueSubmissionOutboxItems(int limit) throws APIException {
+		return dao.getDueSubmissionOutboxItems(new Date(), limit);
+	}
+	
+	/**
+	 * @see CaseReportService#getSubmissionOutboxItems(CaseReport)
+	 */
+	@Override
+	public List<SubmissionOutboxItem> getSubmissionOutboxItems(CaseReport caseReport) throws APIException {
+		return dao.getSubmissionOutboxItems(caseReport);
+	}
+	
 	private List<TaskDefinition> getCaseReportTaskDefinitions() {
 		List<TaskDefinition> taskDefinitions = new ArrayList<TaskDefinition>();
 		Collection<TaskDefinition> taskDefs = Context.getSchedulerService().getRegisteredTasks();
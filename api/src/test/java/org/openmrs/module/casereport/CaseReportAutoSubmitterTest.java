@@ -0,0 +1,162 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.casereport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.module.casereport.api.CaseReportService;
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+import org.springframework.beans.factory.annotation.Autowired;
+
+public class CaseReportAutoSubmitterTest extends BaseModuleContextSensitiveTest {
+	
+	private static final String XML_DATASET = "moduleTestData-initial.xml";
+	
+	@Autowired
+	private CaseReportService service;
+	
+	@Before
+	public void setup() throws Exception {
+		executeDataSet(XML_DATASET);
+	}
+	
+	/**
+	 * @see CaseReportAutoSubmitter#submit(List)
+	 */
+	@Test
+	public void submit_shouldNotSubmitMoreReportsInParallelThanThePoolSize() throws Exception {
+		final int poolSize = 3;
+		final AtomicInteger active = new AtomicInteger();
+		final AtomicInteger maxActive = new AtomicInteger();
+		final AtomicInteger submittedCount = new AtomicInteger();
+		final Set<Thread> workers = Collections.synchronizedSet(new HashSet<Thread>());
+		final CountDownLatch allBusy = new CountDownLatch(poolSize);
+		List<String> uuids = new ArrayList<>();
+		//Several chunks per worker
+		for (int i = 0; i < 50 * poolSize * 4; i++) {
+			uuids.add("uuid-" + i);
+		}
+		
+		CaseReportAutoSubmitter submitter = new CaseReportAutoSubmitter(poolSize, 1) {
+			
+			@Override
+			void submitChunk(List<String> chunk, Result result) {
+				int current = active.incrementAndGet();
+				synchronized (maxActive) {
+					maxActive.set(Math.max(maxActive.get(), current));
+				}
+				workers.add(Thread.currentThread());
+				try {
+					//The first chunks wait for each other to ensure all the workers are busy at the same time
+					allBusy.countDown();
+					allBusy.await(10, TimeUnit.SECONDS);
+				}
+				catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+				finally {
+					submittedCount.addAndGet(chunk.size());
+					active.decrementAndGet();
+				}
+			}
+		};
+		
+		submitter.submit(uuids);
+		
+		assertEquals(poolSize, maxActive.get());
+		assertEquals(poolSize, workers.size());
+		assertFalse(workers.contains(Thread.currentThread()));
+		assertEquals(uuids.size(), submittedCount.get());
+	}
+	
+	/**
+	 * @see CaseReportAutoSubmitter#add(List)
+	 */
+	@Test
+	public void add_shouldSubmitTheReportsOfEveryCallWithTheSameWorkers() throws Exception {
+		final int poolSize = 2;
+		final AtomicInteger submittedCount = new AtomicInteger();
+		final Set<Thread> workers = Collections.synchronizedSet(new HashSet<Thread>());
+		CaseReportAutoSubmitter submitter = new CaseReportAutoSubmitter(poolSize, 1) {
+			
+			@Override
+			void submitChunk(List<String> chunk, Result result) {
+				workers.add(Thread.currentThread());
+				submittedCount.addAndGet(chunk.size());
+			}
+		};
+		final int batchCount = 5;
+		for (int batch = 0; batch < batchCount; batch++) {
+			List<String> uuids = new ArrayList<>();
+			for (int i = 0; i < 120; i++) {
+				uuids.add("uuid-" + batch + "-" + i);
+			}
+			submitter.add(uuids);
+		}
+		
+		CaseReportAutoSubmitter.Result result = submitter.finish();
+		
+		assertEquals(batchCount * 120, submittedCount.get());
+		assertTrue(workers.size() <= poolSize);
+		assertFalse(workers.contains(Thread.currentThread()));
+		assertSame(result, submitter.finish());
+	}
+	
+	/**
+	 * @see CaseReportAutoSubmitter#submit(List)
+	 */
+	@Test
+	public void submit_shouldSubmitTheOtherReportsIfSomeFailAndSummarizeTheResult() throws Exception {
+		final String submittableUuid = "6f7d57f0-9077-11e1-aaa4-00248140a5ef";
+		final String voidedUuid = "4f7d57f0-9077-11e1-aaa4-00248140a5ec";
+		final String dismissedUuid = "6y7d57f0-9077-11e1-aaa4-00248140a5ec";
+		final String unknownUuid = "some-unknown-uuid";
+		
+		CaseReportAutoSubmitter.Result result = new CaseReportAutoSubmitter(1, 0).submit(Arrays.asList(voidedUuid,
+		    unknownUuid, submittableUuid, dismissedUuid));
+		
+		assertEquals(1, result.getSuccessCount());
+		assertTrue(service.getCaseReportByUuid(submittableUuid).isSubmitted());
+		Map<String, String> failures = result.getFailures();
+		assertEquals(3, failures.size());
+		assertEquals("Cannot submit a voided case report", failures.get(voidedUuid));
+		assertEquals("Cannot submit a dismissed case report", failures.get(dismissedUuid));
+		assertEquals("No case report found with uuid: " + unknownUuid, failures.get(unknownUuid));
+		assertTrue(result.toString().startsWith("Succeeded: 1, Failed: 3 {"));
+	}
+	
+	/**
+	 * @see CaseReportAutoSubmitter#submit(List)
+	 */
+	@Test
+	public void submit_shouldReturnAnEmptySummaryIfThereAreNoReports() throws Exception {
+		CaseReportAutoSubmitter.Result result = new CaseReportAutoSubmitter(2, 2).submit(new ArrayList<String>());
+		
+		assertEquals(0, result.getSuccessCount());
+		assertTrue(result.getFailures().isEmpty());
+		assertEquals("Succeeded: 0, Failed: 0", result.toString());
+	}
+}
@@ -0,0 +1,66 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.casereport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.junit.Test;
+import org.openmrs.Patient;
+import org.openmrs.Visit;
+import org.openmrs.api.PatientService;
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+import org.springframework.beans.factory.annotation.Autowired;
+
+public class CaseReportFormDataLoaderTest extends BaseModuleContextSensitiveTest {
+	
+	@Autowired
+	private PatientService patientService;
+	
+	/**
+	 * @see CaseReportFormDataLoader#load(java.util.Collection)
+	 * @verifies load the form data for the patients with the specified ids
+	 */
+	@Test
+	public void load_shouldLoadTheFormDataForThePatientsWithTheSpecifiedIds() throws Exception {
+		executeDataSet("moduleTestData-initial.xml");
+		executeDataSet("moduleTestData-other.xml");
+		Map<Integer, CaseReportFormDataLoader.FormData> patientIdAndFormDataMap = CaseReportFormDataLoader.load(Arrays
+		        .asList(2, 7));
+		assertEquals(2, patientIdAndFormDataMap.size());
+		CaseReportFormDataLoader.FormData formData = patientIdAndFormDataMap.get(2);
+		assertEquals(3, formData.getMostRecentViralLoads().size());
+		assertEquals(3, formData.getMostRecentCd4Counts().size());
+		assertEquals(3, formData.getMostRecentHivTests().size());
+		assertEquals(2, formData.getActiveArvDrugOrders().size());
+		for (Integer patientId : patientIdAndFormDataMap.keySet()) {
+			Patient patient = patientService.getPatient(patientId);
+			formData = patientIdAndFormDataMap.get(patientId);
+			assertEquals(CaseReportUtil.getMostRecentViralLoads(patient), formData.getMostRecentViralLoads());
+			assertEquals(CaseReportUtil.getMostRecentCD4counts(patient), formData.getMostRecentCd4Counts());
+			assertEquals(CaseReportUtil.getMostRecentHIVTests(patient), formData.getMostRecentHivTests());
+			assertEquals(CaseReportUtil.getMostRecentWHOStage(patient), formData.getMostRecentWhoStage());
+			assertEquals(CaseReportUtil.getMostRecentReasonARVsStopped(patient), formData.getMostRecentArvStopReason());
+			Visit visit = CaseReportUtil.getLastVisit(patient);
+			if (visit == null) {
+				assertNull(formData.getLastVisitStartDate());
+			} else {
+				assertEquals(visit.getUuid(), formData.getLastVisitStartDate().getUuid());
+				assertEquals(visit.getStartDatetime(), formData.getLastVisitStartDate().getValue());
+			}
+			assertEquals(new HashSet<>(CaseReportUtil.getActiveArvDrugOrders(patient, null)), new HashSet<>(formData
+			        .getActiveArvDrugOrders()));
+		}
+	}
+}
@@ -9,14 +9,20 @@
  */
 package org.openmrs.module.casereport;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 
 import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.openmrs.Patient;
 import org.openmrs.api.APIException;
 import org.openmrs.api.PatientService;
 import org.openmrs.api.context.Context;
@@ -24,6 +30,7 @@ import org.openmrs.module.casereport.api.CaseReportService;
 import org.openmrs.module.reporting.cohort.definition.SqlCohortDefinition;
 import org.openmrs.module.reporting.definition.DefinitionContext;
 import org.openmrs.scheduler.SchedulerService;
+import org.openmrs.scheduler.TaskDefinition;
 import org.openmrs.test.BaseModuleContextSensitiveTest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.annotation.NotTransactional;
@@ -85,4 +92,75 @@ public class CaseReportUtilBehaviorTest extends BaseModuleContextSensitiveTest {
 		Assert.assertEquals(++originalCount, service.getCaseReports().size());
 	}
 	
+	@Test
+	@NotTransactional
+	public void executeTask_shouldNotCreateMultipleCaseReportsWhenDifferentTriggersRunConcurrently() throws Exception {
+		//The bundled queries are written for MySQL, so we replace them with a query that every
+		//trigger evaluates to the same patients to ensure all the triggers compete for them
+		final List<Integer> patientIds = new ArrayList<>();
+		Collections.addAll(patientIds, 2, 6, 7, 8);
+		String query = "select patient_id from patient where patient_id in (2, 6, 7, 8)";
+		List<SqlCohortQuery> queries = new DefaultSqlCohortQueryLoader().load();
+		assertEquals(11, queries.size());
+		final List<TaskDefinition> tasks = new ArrayList<>();
+		for (SqlCohortQuery q : queries) {
+			CaseReportUtilTest.createTestSqlCohortDefinition(q.getName(), query, false);
+			TaskDefinition task = new TaskDefinition();
+			task.setName(q.getName() + " Task");
+			task.setProperty(CaseReportConstants.TRIGGER_NAME_TASK_PROPERTY, q.getName());
+			tasks.add(task);
+		}
+		
+		try {
+			for (Integer patientId : patientIds) {
+				assertNull(service.getCaseReportByPatient(patientService.getPatient(patientId)));
+			}
+			
+			final CountDownLatch startSignal = new CountDownLatch(1);
+			final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+			List<Thread> threads = new ArrayList<>();
+			for (final TaskDefinition task : tasks) {
+				threads.add(new Thread(new Runnable() {
+					
+					@Override
+					public void run() {
+						try {
+							Context.openSession();
+							Context.authenticate("admin", "test");
+							startSignal.await();
+							CaseReportUtil.executeTask(task);
+						}
+						catch (Throwable t) {
+							errors.add(t);
+						}
+						finally {
+							Context.closeSession();
+						}
+					}
+				
+				}));
+			}
+			for (Thread thread : threads) {
+				thread.start();
+			}
+			startSignal.countDown();
+			for (Thread thread : threads) {
+				thread.join();
+			}
+			
+			assertTrue("Errors occurred while running the triggers: " + errors, errors.isEmpty());
+			for (Integer patientId : patientIds) {
+				Patient patient = patientService.getPatient(patientId);
+				//Fails if the patient has multiple queue items
+				CaseReport caseReport = service.getCaseReportByPatient(patient);
+				assertNotNull(caseReport);
+				assertEquals(tasks.size(), caseReport.getReportTriggers().size());
+			}
+			assertEquals(patientIds.size(), service.getCaseReports().size());
+		}
+		finally {
+			deleteAllData();
+		}
+	}
+
 }
@@ -346,6 +346,35 @@ public class CaseReportUtilTest extends BaseModuleContextSensitiveTest {
 		assertEquals(name, caseReport2.getReportTriggers().iterator().next().getName());
 	}
 	
+	/**
+	 * @see CaseReportUtil#executeTask(TaskDefinition)
+	 * @verifies create case reports for the matched patients when streaming cohorts
+	 */
+	@Test
+	public void executeTask_shouldCreateCaseReportsForTheMatchedPatientsWhenStreamingCohorts() throws Exception {
+		executeDataSet(XML_DATASET);
+		Context.getAdministrationService().saveGlobalProperty(
+		    new GlobalProperty(CaseReportConstants.GP_STREAM_COHORTS, "true"));
+		Context.getAdministrationService().saveGlobalProperty(
+		    new GlobalProperty(CaseReportConstants.GP_TASK_BATCH_SIZE, "1"));
+		final String name = "New HIV Case";
+		Integer[] patientIds = { 7, 8 };
+		SqlCohortDefinition def = CaseReportUtil.getSqlCohortDefinition(name);
+		def.setQuery("select patient_id from patient where patient_id in (" + patientIds[0] + "," + patientIds[1] + ")");
+		DefinitionContext.saveDefinition(def);
+		int originalCount = service.getCaseReports().size();
+		assertNull(service.getCaseReportByPatient(patientService.getPatient(patientIds[0])));
+		assertNull(service.getCaseReportByPatient(patientService.getPatient(patientIds[1])));
+		CaseReportUtil.executeTask(schedulerService.getTaskByName(name));
+		assertEquals(originalCount + 2, service.getCaseReports().size());
+		for (Integer patientId : patientIds) {
+			CaseReport caseReport = service.getCaseReportByPatient(patientService.getPatient(patientId));
+			assertNotNull(caseReport);
+			assertEquals(1, caseReport.getReportTriggers().size());
+			assertEquals(name, caseReport.getReportTriggers().iterator().next().getName());
+		}
+	}
+	
 	/**
 	 * @see CaseReportUtil#executeTask(TaskDefinition)
 	 * @verifies set the last execution time in the evaluation context
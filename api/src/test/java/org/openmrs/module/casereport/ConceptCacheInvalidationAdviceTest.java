@@ -0,0 +1,54 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.casereport;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.Concept;
+import org.openmrs.api.ConceptService;
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+
+public class ConceptCacheInvalidationAdviceTest extends BaseModuleContextSensitiveTest {
+	
+	private ConceptCacheInvalidationAdvice advice = new ConceptCacheInvalidationAdvice();
+	
+	@Before
+	public void setup() throws Exception {
+		executeDataSet("moduleTestData-initial.xml");
+		executeDataSet("moduleTestData-other.xml");
+		ConceptCache.clear();
+		ConceptCache.getConceptByMapping(CaseReportConstants.CIEL_CODE_VIRAL_LOAD, CaseReportConstants.SOURCE_CIEL_HL7_CODE);
+		assertEquals(1, ConceptCache.size());
+	}
+	
+	/**
+	 * @see ConceptCacheInvalidationAdvice#afterReturning(Object, java.lang.reflect.Method, Object[],
+	 *      Object)
+	 * @verifies clear the cache when a concept is saved
+	 */
+	@Test
+	public void afterReturning_shouldClearTheCacheWhenAConceptIsSaved() throws Exception {
+		advice.afterReturning(null, ConceptService.class.getMethod("saveConcept", Concept.class), null, null);
+		assertEquals(0, ConceptCache.size());
+	}
+	
+	/**
+	 * @see ConceptCacheInvalidationAdvice#afterReturning(Object, java.lang.reflect.Method, Object[],
+	 *      Object)
+	 * @verifies not clear the cache for other methods
+	 */
+	@Test
+	public void afterReturning_shouldNotClearTheCacheForOtherMethods() throws Exception {
+		advice.afterReturning(null, ConceptService.class.getMethod("getConcept", Integer.class), null, null);
+		assertEquals(1, ConceptCache.size());
+	}
+}
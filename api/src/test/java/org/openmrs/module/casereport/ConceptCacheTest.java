@@ -0,0 +1,144 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.casereport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.Concept;
+import org.openmrs.api.APIException;
+import org.openmrs.api.context.Context;
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+
+public class ConceptCacheTest extends BaseModuleContextSensitiveTest {
+	
+	@Before
+	public void setup() throws Exception {
+		executeDataSet("moduleTestData-initial.xml");
+		executeDataSet("moduleTestData-other.xml");
+		ConceptCache.clear();
+	}
+	
+	/**
+	 * @see ConceptCache#getConceptByMapping(String, String)
+	 * @verifies return the concept with the specified mapping
+	 */
+	@Test
+	public void getConceptByMapping_shouldReturnTheConceptWithTheSpecifiedMapping() throws Exception {
+		String source = CaseReportConstants.SOURCE_CIEL_HL7_CODE;
+		Concept expected = Context.getConceptService().getConceptByMapping(CaseReportConstants.CIEL_CODE_VIRAL_LOAD,
+		    source);
+		assertNotNull(expected);
+		assertEquals(expected, ConceptCache.getConceptByMapping(CaseReportConstants.CIEL_CODE_VIRAL_LOAD, source));
+		assertEquals(expected, ConceptCache.getConceptByMapping(CaseReportConstants.CIEL_CODE_VIRAL_LOAD, source));
+	}
+	
+	/**
+	 * @see ConceptCache#getConceptByMapping(String, String)
+	 * @verifies look up the concept in the database only once
+	 */
+	@Test
+	public void getConceptByMapping_shouldLookUpTheConceptInTheDatabaseOnlyOnce() throws Exception {
+		String source = CaseReportConstants.SOURCE_CIEL_HL7_CODE;
+		long hitCount = ConceptCache.getHitCount();
+		long missCount = ConceptCache.getMissCount();
+		ConceptCache.getConceptByMapping(CaseReportConstants.CIEL_CODE_CD4_COUNT, source);
+		assertEquals(hitCount, ConceptCache.getHitCount());
+		assertEquals(missCount + 1, ConceptCache.getMissCount());
+		ConceptCache.getConceptByMapping(CaseReportConstants.CIEL_CODE_CD4_COUNT, source);
+		ConceptCache.getConceptByMapping(CaseReportConstants.CIEL_CODE_CD4_COUNT, source.toLowerCase());
+		assertEquals(hitCount + 2, ConceptCache.getHitCount());
+		assertEquals(missCount + 1, ConceptCache.getMissCount());
+		assertEquals(1, ConceptCache.size());
+	}
+	
+	/**
+	 * @see ConceptCache#getConceptByMapping(String, String)
+	 * @verifies return null if no concept is found
+	 */
+	@Test
+	public void getConceptByMapping_shouldReturnNullIfNoConceptIsFound() throws Exception {
+		assertNull(ConceptCache.getConceptByMapping("some-code", CaseReportConstants.SOURCE_CIEL_HL7_CODE));
+		assertEquals(0, ConceptCache.size());
+	}
+	
+	/**
+	 * @see ConceptCache#getStatistics()
+	 * @verifies return the size and the hit and miss counts
+	 */
+	@Test
+	public void getStatistics_shouldReturnTheSizeAndTheHitAndMissCounts() throws Exception {
+		String source = CaseReportConstants.SOURCE_CIEL_HL7_CODE;
+		long hitCount = ConceptCache.getHitCount();
+		long missCount = ConceptCache.getMissCount();
+		ConceptCache.getConceptByMapping(CaseReportConstants.CIEL_CODE_CD4_COUNT, source);
+		ConceptCache.getConceptByMapping(CaseReportConstants.CIEL_CODE_CD4_COUNT, source);
+		
+		Map<String, Object> stats = ConceptCache.getStatistics();
+		
+		assertEquals(1, stats.get("size"));
+		assertEquals(hitCount + 1, stats.get("hits"));
+		assertEquals(missCount + 1, stats.get("misses"));
+	}
+	
+	/**
+	 * @see ConceptCache#isSetMember(Integer, String, String)
+	 * @verifies return true for a member of the concept set
+	 */
+	@Test
+	public void isSetMember_shouldReturnTrueForAMemberOfTheConceptSet() throws Exception {
+		String source = CaseReportConstants.SOURCE_CIEL_HL7_CODE;
+		Concept arvMedset = ConceptCache.getConceptByMapping(CaseReportConstants.CIEL_CODE_ARV_MED_SET, source);
+		assertFalse(arvMedset.getSetMembers().isEmpty());
+		for (Concept member : arvMedset.getSetMembers()) {
+			assertTrue(ConceptCache.isSetMember(member.getConceptId(), CaseReportConstants.CIEL_CODE_ARV_MED_SET, source));
+		}
+	}
+	
+	/**
+	 * @see ConceptCache#isSetMember(Integer, String, String)
+	 * @verifies return false for a concept that is not a member of the concept set
+	 */
+	@Test
+	public void isSetMember_shouldReturnFalseForAConceptThatIsNotAMemberOfTheConceptSet() throws Exception {
+		String source = CaseReportConstants.SOURCE_CIEL_HL7_CODE;
+		Concept cd4Count = ConceptCache.getConceptByMapping(CaseReportConstants.CIEL_CODE_CD4_COUNT, source);
+		assertFalse(ConceptCache.isSetMember(cd4Count.getConceptId(), CaseReportConstants.CIEL_CODE_ARV_MED_SET, source));
+		assertFalse(ConceptCache.isSetMember(null, CaseReportConstants.CIEL_CODE_ARV_MED_SET, source));
+	}
+	
+	/**
+	 * @see ConceptCache#isSetMember(Integer, String, String)
+	 * @verifies fail if no concept set is found
+	 */
+	@Test(expected = APIException.class)
+	public void isSetMember_shouldFailIfNoConceptSetIsFound() throws Exception {
+		ConceptCache.isSetMember(1, "some-code", CaseReportConstants.SOURCE_CIEL_HL7_CODE);
+	}
+	
+	/**
+	 * @see ConceptCache#clear()
+	 * @verifies remove all the entries from the cache
+	 */
+	@Test
+	public void clear_shouldRemoveAllTheEntriesFromTheCache() throws Exception {
+		ConceptCache.getConceptByMapping(CaseReportConstants.CIEL_CODE_VIRAL_LOAD, CaseReportConstants.SOURCE_CIEL_HL7_CODE);
+		assertEquals(1, ConceptCache.size());
+		ConceptCache.clear();
+		assertEquals(0, ConceptCache.size());
+	}
+}
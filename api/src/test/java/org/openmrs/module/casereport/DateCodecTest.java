@@ -0,0 +1,67 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.casereport;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class DateCodecTest {
+	
+	private static final int THREAD_COUNT = 8;
+	
+	private static final int ITERATIONS = 2000;
+	
+	/**
+	 * @see DateCodec#format(Date)
+	 * @verifies format and parse dates correctly when used by multiple threads
+	 */
+	@Test
+	public void format_shouldFormatAndParseDatesCorrectlyWhenUsedByMultipleThreads() throws Exception {
+		final DateCodec codec = CaseReportConstants.DATE_FORMATTER;
+		ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+		List<Future<Integer>> futures = new ArrayList<>();
+		try {
+			for (int i = 0; i < THREAD_COUNT; i++) {
+				//Each thread uses dates far apart from those of the other threads
+				final long offset = i * 365L * 24 * 60 * 60 * 1000;
+				futures.add(executor.submit(new Callable<Integer>() {
+					
+					@Override
+					public Integer call() throws Exception {
+						int mismatches = 0;
+						for (int j = 0; j < ITERATIONS; j++) {
+							Date date = new Date(offset + j * 60 * 60 * 1000L + j);
+							if (!date.equals(codec.parse(codec.format(date)))) {
+								mismatches++;
+							}
+						}
+						return mismatches;
+					}
+				}));
+			}
+			
+			for (Future<Integer> future : futures) {
+				assertEquals(Integer.valueOf(0), future.get());
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,44 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.casereport;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.openmrs.module.casereport.api.CaseReportService;
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+import org.springframework.beans.factory.annotation.Autowired;
+
+public class JsonCodecTest extends BaseModuleContextSensitiveTest {
+	
+	@Autowired
+	private CaseReportService service;
+	
+	/**
+	 * @see JsonCodec#readForm(String)
+	 * @verifies read a form that was written by the codec
+	 */
+	@Test
+	public void readForm_shouldReadAFormThatWasWrittenByTheCodec() throws Exception {
+		executeDataSet("moduleTestData-initial.xml");
+		executeDataSet("moduleTestData-other.xml");
+		CaseReportForm form = new CaseReportForm(service.getCaseReport(1));
+		
+		CaseReportForm copy = JsonCodec.readForm(JsonCodec.writeForm(form));
+		
+		assertEquals(form.getFullName(), copy.getFullName());
+		assertEquals(form.getPatientIdentifier().getUuid(), copy.getPatientIdentifier().getUuid());
+		assertEquals(form.getBirthdate(), copy.getBirthdate());
+		assertEquals(form.getTriggers().size(), copy.getTriggers().size());
+		assertEquals(form.getMostRecentViralLoads().size(), copy.getMostRecentViralLoads().size());
+		assertEquals(form.getCurrentHivMedications().size(), copy.getCurrentHivMedications().size());
+		assertEquals(JsonCodec.writeForm(form), JsonCodec.writeForm(copy));
+	}
+}
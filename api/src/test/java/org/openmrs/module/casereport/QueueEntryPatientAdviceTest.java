@@ -0,0 +1,58 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.casereport;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.Patient;
+import org.openmrs.api.PatientService;
+import org.openmrs.module.casereport.api.CaseReportService;
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+import org.springframework.beans.factory.annotation.Autowired;
+
+public class QueueEntryPatientAdviceTest extends BaseModuleContextSensitiveTest {
+	
+	private QueueEntryPatientAdvice advice = new QueueEntryPatientAdvice();
+	
+	@Autowired
+	private CaseReportService service;
+	
+	private Patient patient;
+	
+	@Before
+	public void setup() throws Exception {
+		executeDataSet("moduleTestData-initial.xml");
+		service.addMissingQueueEntries();
+		patient = service.getCaseReport(1).getPatient();
+		patient.getPersonName().setFamilyName("Zzyzx");
+	}
+	
+	/**
+	 * @see QueueEntryPatientAdvice#afterReturning(Object, java.lang.reflect.Method, Object[], Object)
+	 * @verifies update the queue entries when a patient is saved
+	 */
+	@Test
+	public void afterReturning_shouldUpdateTheQueueEntriesWhenAPatientIsSaved() throws Exception {
+		advice.afterReturning(patient, PatientService.class.getMethod("savePatient", Patient.class), null, null);
+		assertEquals(service.getCaseReportCount(patient, true), service.getQueueEntryCount("zzyzx", null, true));
+	}
+	
+	/**
+	 * @see QueueEntryPatientAdvice#afterReturning(Object, java.lang.reflect.Method, Object[], Object)
+	 * @verifies not update the queue entries for other methods
+	 */
+	@Test
+	public void afterReturning_shouldNotUpdateTheQueueEntriesForOtherMethods() throws Exception {
+		advice.afterReturning(patient, PatientService.class.getMethod("getPatient", Integer.class), null, null);
+		assertEquals(0, service.getQueueEntryCount("zzyzx", null, true));
+	}
+}
@@ -0,0 +1,66 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.casereport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.commons.lang.StringUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.openmrs.api.APIException;
+
+public class ReportFormCodecTest {
+	
+	@Rule
+	public ExpectedException expectedException = ExpectedException.none();
+	
+	/**
+	 * @see ReportFormCodec#encode(String)
+	 * @verifies compress large report forms
+	 */
+	@Test
+	public void encode_shouldCompressLargeReportForms() throws Exception {
+		String reportForm = "{\"triggers\":[" + StringUtils.repeat("{\"value\":\"New HIV Case\"},", 50) + "{}]}";
+		
+		byte[] encoded = ReportFormCodec.encode(reportForm);
+		
+		assertEquals(ReportFormCodec.VERSION_GZIP, encoded[0]);
+		assertTrue(encoded.length < reportForm.length() / 4);
+		assertEquals(reportForm, ReportFormCodec.decode(encoded));
+	}
+	
+	/**
+	 * @see ReportFormCodec#encode(String)
+	 * @verifies not compress small report forms
+	 */
+	@Test
+	public void encode_shouldNotCompressSmallReportForms() throws Exception {
+		String reportForm = "{\"fullName\":\"Horatio Hornblower\"}";
+		
+		byte[] encoded = ReportFormCodec.encode(reportForm);
+		
+		assertEquals(ReportFormCodec.VERSION_PLAIN, encoded[0]);
+		assertEquals(reportForm.length() + 1, encoded.length);
+		assertEquals(reportForm, ReportFormCodec.decode(encoded));
+	}
+	
+	/**
+	 * @see ReportFormCodec#decode(byte[])
+	 * @verifies fail for an unknown version
+	 */
+	@Test
+	public void decode_shouldFailForAnUnknownVersion() throws Exception {
+		expectedException.expect(APIException.class);
+		expectedException.expectMessage("Unsupported report form encoding version: 9");
+		ReportFormCodec.decode(new byte[] { 9, 1, 2 });
+	}
+}
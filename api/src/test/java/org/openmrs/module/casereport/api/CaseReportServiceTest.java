@@ -17,27 +17,49 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.openmrs.module.casereport.CaseReport.Status;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.time.DateUtils;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.hamcrest.CoreMatchers;
+import org.hibernate.Hibernate;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.openmrs.Cohort;
+import org.openmrs.Concept;
+import org.openmrs.DrugOrder;
 import org.openmrs.GlobalProperty;
+import org.openmrs.Obs;
+import org.openmrs.Order;
+import org.openmrs.OrderType;
 import org.openmrs.Patient;
+import org.openmrs.PersonName;
 import org.openmrs.Provider;
+import org.openmrs.Visit;
 import org.openmrs.api.APIException;
 import org.openmrs.api.PatientService;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.casereport.CaseReport;
 import org.openmrs.module.casereport.CaseReportConstants;
 import org.openmrs.module.casereport.CaseReportForm;
+import org.openmrs.module.casereport.CaseReportQueueEntry;
 import org.openmrs.module.casereport.CaseReportTrigger;
+import org.openmrs.module.casereport.CaseReportUtil;
 import org.openmrs.module.casereport.DemoListener;
+import org.openmrs.module.casereport.SubmissionOutboxItem;
+import org.openmrs.module.casereport.UuidAndValue;
 import org.openmrs.scheduler.SchedulerService;
 import org.openmrs.scheduler.TaskDefinition;
 import org.openmrs.test.BaseModuleContextSensitiveTest;
@@ -152,6 +174,76 @@ public class CaseReportServiceTest extends BaseModuleContextSensitiveTest {
 		assertTrue(TestUtil.containsId(reports, 9));
 	}
 	
+	/**
+	 * @see CaseReportService#getCaseReports(Patient, boolean, String, Boolean, Integer, Integer,
+	 *      boolean, Status...)
+	 * @verifies return the specified page of case reports
+	 */
+	@Test
+	public void getCaseReports_shouldReturnTheSpecifiedPageOfCaseReports() throws Exception {
+		List<CaseReport> reports = service.getCaseReports(null, false, "dateCreated", true, 1, 1, false, Status.NEW,
+		    Status.DRAFT);
+		assertEquals(1, reports.size());
+		assertEquals(4, reports.get(0).getId().intValue());
+		
+		reports = service.getCaseReports(null, false, "dateCreated", true, 1, 5, false, Status.NEW, Status.DRAFT);
+		assertEquals(2, reports.size());
+		assertEquals(4, reports.get(0).getId().intValue());
+		assertEquals(2, reports.get(1).getId().intValue());
+	}
+	
+	/**
+	 * @see CaseReportService#getCaseReports(Patient, boolean, String, Boolean, Integer, Integer,
+	 *      boolean, Status...)
+	 * @verifies sort the case reports by the specified property
+	 */
+	@Test
+	public void getCaseReports_shouldSortTheCaseReportsByTheSpecifiedProperty() throws Exception {
+		List<CaseReport> reports = service.getCaseReports(null, false, "dateCreated", false, 0, 3, false, Status.NEW,
+		    Status.DRAFT);
+		assertEquals(3, reports.size());
+		assertEquals(2, reports.get(0).getId().intValue());
+		assertEquals(4, reports.get(1).getId().intValue());
+		assertEquals(1, reports.get(2).getId().intValue());
+	}
+	
+	/**
+	 * @see CaseReportService#getCaseReports(Patient, boolean, String, Boolean, Integer, Integer,
+	 *      boolean, Status...)
+	 * @verifies fetch the triggers and the patient details if specified
+	 */
+	@Test
+	public void getCaseReports_shouldFetchTheTriggersAndThePatientDetailsIfSpecified() throws Exception {
+		Context.clearSession();
+		List<CaseReport> reports = service.getCaseReports(null, false, "dateCreated", true, 0, 2, true, Status.NEW,
+		    Status.DRAFT);
+		assertEquals(2, reports.size());
+		assertEquals(1, reports.get(0).getId().intValue());
+		assertEquals(4, reports.get(1).getId().intValue());
+		for (CaseReport report : reports) {
+			assertTrue(Hibernate.isInitialized(report.getReportTriggers()));
+			assertTrue(Hibernate.isInitialized(report.getPatient()));
+			assertTrue(Hibernate.isInitialized(report.getPatient().getNames()));
+			assertTrue(Hibernate.isInitialized(report.getPatient().getIdentifiers()));
+		}
+		
+		Context.clearSession();
+		reports = service.getCaseReports(null, false, "dateCreated", true, 0, 2, false, Status.NEW, Status.DRAFT);
+		assertFalse(Hibernate.isInitialized(reports.get(0).getReportTriggers()));
+	}
+	
+	/**
+	 * @see CaseReportService#getCaseReportCount(Patient, boolean, Status...)
+	 * @verifies return the number of matching case reports
+	 */
+	@Test
+	public void getCaseReportCount_shouldReturnTheNumberOfMatchingCaseReports() throws Exception {
+		assertEquals(3, service.getCaseReportCount(null, false, Status.NEW, Status.DRAFT));
+		assertEquals(9, service.getCaseReportCount(null, true, Status.values()));
+		Patient patient = Context.getPatientService().getPatient(7);
+		assertEquals(3, service.getCaseReportCount(patient, true, Status.values()));
+	}
+	
 	/**
 	 * @see CaseReportService#getCaseReports(Patient, boolean, String, Boolean, Status...)
 	 */
@@ -228,6 +320,294 @@ public class CaseReportServiceTest extends BaseModuleContextSensitiveTest {
 		assertEquals(++originalCount, service.getCaseReports().size());
 	}
 	
+	/**
+	 * @see CaseReportService#saveCaseReport(CaseReport)
+	 * @verifies update the existing encoded report form in place
+	 */
+	@Test
+	public void saveCaseReport_shouldUpdateTheExistingEncodedReportFormInPlace() throws Exception {
+		final String query = "select report_form_id from casereport_case_report where case_report_id = 2";
+		final String countQuery = "select count(*) from casereport_report_form";
+		List<List<Object>> rows = Context.getAdministrationService().executeSQL(query, true);
+		Object reportFormId = rows.get(0).get(0);
+		assertNotNull(reportFormId);
+		Object formCount = Context.getAdministrationService().executeSQL(countQuery, true).get(0).get(0);
+		CaseReport cr = service.getCaseReport(2);
+		final String reportForm = "{\"fullName\":\"Mr. Horatio Hornblower\"}";
+		cr.setReportForm(reportForm);
+		
+		service.saveCaseReport(cr);
+		Context.flushSession();
+		
+		rows = Context.getAdministrationService().executeSQL(query, true);
+		assertEquals(reportFormId, rows.get(0).get(0));
+		assertEquals(formCount, Context.getAdministrationService().executeSQL(countQuery, true).get(0).get(0));
+		Context.evictFromSession(cr);
+		assertEquals(reportForm, service.getCaseReport(2).getReportForm());
+	}
+	
+	/**
+	 * @see CaseReportService#saveCaseReport(CaseReport)
+	 * @verifies encode a report form stored in the legacy column
+	 */
+	@Test
+	public void saveCaseReport_shouldEncodeAReportFormStoredInTheLegacyColumn() throws Exception {
+		final String reportForm = "{\"fullName\":\"Horatio Hornblower\"}";
+		final String query = "select report_form, report_form_id from casereport_case_report where case_report_id = 4";
+		Context.getAdministrationService().executeSQL(
+		    "update casereport_case_report set report_form = '" + reportForm + "' where case_report_id = 4", false);
+		CaseReport cr = service.getCaseReport(4);
+		assertEquals(reportForm, cr.getReportForm());
+		
+		service.saveCaseReport(cr);
+		Context.flushSession();
+		
+		List<List<Object>> rows = Context.getAdministrationService().executeSQL(query, true);
+		assertNull(rows.get(0).get(0));
+		assertNotNull(rows.get(0).get(1));
+		Context.evictFromSession(cr);
+		assertEquals(reportForm, service.getCaseReport(4).getReportForm());
+	}
+	
+	/**
+	 * @see CaseReportService#saveCaseReport(CaseReport)
+	 * @verifies update the queue entry of the case report
+	 */
+	@Test
+	public void saveCaseReport_shouldUpdateTheQueueEntryOfTheCaseReport() throws Exception {
+		Patient patient = patientService.getPatient(7);
+		CaseReport cr = service.saveCaseReport(new CaseReport(patient, "HIV Switched To Second Line"));
+		List<CaseReportQueueEntry> entries = service.getQueueEntries(null, null, false, null, null, null, null);
+		assertEquals(1, entries.size());
+		CaseReportQueueEntry entry = entries.get(0);
+		assertEquals(cr.getId(), entry.getCaseReportId());
+		assertEquals(cr.getUuid(), entry.getUuid());
+		assertEquals(patient.getUuid(), entry.getPatientUuid());
+		assertEquals(patient.getPersonName().getFullName(), entry.getPatientName());
+		assertEquals(patient.getPatientIdentifier().getIdentifier(), entry.getPatientIdentifier());
+		assertEquals("HIV Switched To Second Line", entry.getTriggerNames());
+		assertEquals(Status.NEW, entry.getStatus());
+		
+		service.dismissCaseReport(cr);
+		
+		assertEquals(0, service.getQueueEntryCount(null, null, false, Status.NEW, Status.DRAFT));
+		entries = service.getQueueEntries(null, null, false, null, null, null, null, Status.DISMISSED);
+		assertEquals(1, entries.size());
+		assertEquals(cr.getId(), entries.get(0).getCaseReportId());
+		assertNotNull(entries.get(0).getResolutionDate());
+	}
+	
+	/**
+	 * @see CaseReportService#addMissingQueueEntries()
+	 * @verifies add the queue entries for the case reports that have none
+	 */
+	@Test
+	public void addMissingQueueEntries_shouldAddTheQueueEntriesForTheCaseReportsThatHaveNone() throws Exception {
+		assertEquals(0, service.getQueueEntryCount(null, null, true));
+		service.saveCaseReport(service.getCaseReport(1));
+		
+		assertEquals(8, service.addMissingQueueEntries());
+		
+		assertEquals(9, service.getQueueEntryCount(null, null, true));
+		assertEquals(0, service.addMissingQueueEntries());
+	}
+	
+	/**
+	 * @see CaseReportService#getQueueEntries(String, String, boolean, String, Boolean, Integer,
+	 *      Integer, Status...)
+	 * @verifies return the queue entries matching the patient name or identifier
+	 */
+	@Test
+	public void getQueueEntries_shouldReturnTheQueueEntriesMatchingThePatientNameOrIdentifier() throws Exception {
+		service.addMissingQueueEntries();
+		String familyName = service.getCaseReport(4).getPatient().getPersonName().getFamilyName();
+		
+		List<CaseReportQueueEntry> entries = service.getQueueEntries(familyName.toUpperCase(), null, false, null, null,
+		    null, null, Status.NEW, Status.DRAFT);
+		
+		Set<Integer> caseReportIds = new HashSet<>();
+		for (CaseReportQueueEntry entry : entries) {
+			String nameAndIdentifier = entry.getPatientName() + " " + entry.getPatientIdentifier();
+			assertTrue(nameAndIdentifier.toLowerCase().contains(familyName.toLowerCase()));
+			caseReportIds.add(entry.getCaseReportId());
+		}
+		assertTrue(caseReportIds.contains(4));
+		assertFalse(caseReportIds.contains(7));
+		
+		String identifier = service.getCaseReport(1).getPatient().getPatientIdentifier().getIdentifier();
+		caseReportIds.clear();
+		for (CaseReportQueueEntry entry : service.getQueueEntries(identifier, null, false, null, null, null, null)) {
+			caseReportIds.add(entry.getCaseReportId());
+		}
+		assertTrue(caseReportIds.contains(1));
+		assertFalse(caseReportIds.contains(3));
+	}
+	
+	/**
+	 * @see CaseReportService#getQueueEntries(String, String, boolean, String, Boolean, Integer,
+	 *      Integer, Status...)
+	 * @verifies return the queue entries matching the trigger name
+	 */
+	@Test
+	public void getQueueEntries_shouldReturnTheQueueEntriesMatchingTheTriggerName() throws Exception {
+		service.addMissingQueueEntries();
+		
+		List<CaseReportQueueEntry> entries = service.getQueueEntries(null, "HIV Switched To Second Line", false,
+		    "dateCreated", true, null, null);
+		
+		assertEquals(3, entries.size());
+		assertEquals(1, entries.get(0).getCaseReportId().intValue());
+		assertEquals(5, entries.get(1).getCaseReportId().intValue());
+		assertEquals(8, entries.get(2).getCaseReportId().intValue());
+		entries = service.getQueueEntries(null, "HIV Switched To Second Line", false, null, null, null, null,
+		    Status.NEW, Status.DRAFT);
+		assertEquals(1, entries.size());
+		assertEquals(1, entries.get(0).getCaseReportId().intValue());
+	}
+	
+	/**
+	 * @see CaseReportService#getQueueEntries(String, String, boolean, String, Boolean, Integer,
+	 *      Integer, Status...)
+	 * @verifies not match part of a trigger name
+	 */
+	@Test
+	public void getQueueEntries_shouldNotMatchPartOfATriggerName() throws Exception {
+		service.addMissingQueueEntries();
+		
+		assertEquals(0, service.getQueueEntries(null, "Second Line", false, null, null, null, null).size());
+		assertEquals(0, service.getQueueEntryCount(null, "HIV", false));
+	}
+	
+	/**
+	 * @see CaseReportService#getQueueEntries(String, String, boolean, String, Boolean, Integer,
+	 *      Integer, Status...)
+	 * @verifies match the trigger name ignoring case
+	 */
+	@Test
+	public void getQueueEntries_shouldMatchTheTriggerNameIgnoringCase() throws Exception {
+		service.addMissingQueueEntries();
+		
+		assertEquals(3, service.getQueueEntries(null, "hiv switched to second line", false, null, null, null, null)
+		        .size());
+	}
+	
+	/**
+	 * @see CaseReportService#updateQueueEntries(Patient)
+	 * @verifies update the patient details of the queue entries of the patient
+	 */
+	@Test
+	public void updateQueueEntries_shouldUpdateThePatientDetailsOfTheQueueEntriesOfThePatient() throws Exception {
+		service.addMissingQueueEntries();
+		Patient patient = service.getCaseReport(1).getPatient();
+		patient.getPersonName().setFamilyName("Zzyzx");
+		
+		assertEquals(0, service.getQueueEntryCount("zzyzx", null, true));
+		int count = service.updateQueueEntries(patient);
+		
+		assertTrue(count > 0);
+		assertEquals(count, service.getQueueEntryCount("ZZY", null, true));
+		for (CaseReportQueueEntry entry : service.getQueueEntries("zzy", null, true, null, null, null, null)) {
+			assertEquals(patient.getPersonName().getFullName(), entry.getPatientName());
+		}
+	}
+	
+	/**
+	 * @see CaseReportService#updateQueueEntries(Patient)
+	 * @verifies abbreviate a patient name that is longer than the name column
+	 */
+	@Test
+	public void updateQueueEntries_shouldAbbreviateAPatientNameThatIsLongerThanTheNameColumn() throws Exception {
+		service.addMissingQueueEntries();
+		//A detached copy of the patient is used since the name doesn't fit in the person_name table
+		Patient patient = new Patient(service.getCaseReport(1).getPatient().getPatientId());
+		patient.addName(new PersonName(StringUtils.repeat("Zzyzx", 60), null, "Test"));
+		
+		service.updateQueueEntries(patient);
+		
+		List<CaseReportQueueEntry> entries = service.getQueueEntries("zzyzx", null, true, null, null, null, null);
+		assertFalse(entries.isEmpty());
+		for (CaseReportQueueEntry entry : entries) {
+			assertEquals(255, entry.getPatientName().length());
+			assertTrue(entry.getPatientName().endsWith("..."));
+		}
+	}
+	
+	/**
+	 * @see CaseReportService#getQueueEntries(String, String, boolean, String, Boolean, Integer,
+	 *      Integer, Status...)
+	 * @verifies sort and page the queue entries
+	 */
+	@Test
+	public void getQueueEntries_shouldSortAndPageTheQueueEntries() throws Exception {
+		service.addMissingQueueEntries();
+		
+		List<CaseReportQueueEntry> entries = service.getQueueEntries(null, null, false, "dateCreated", false, 0, 2,
+		    Status.NEW, Status.DRAFT);
+		
+		assertEquals(2, entries.size());
+		assertEquals(2, entries.get(0).getCaseReportId().intValue());
+		assertEquals(4, entries.get(1).getCaseReportId().intValue());
+		entries = service.getQueueEntries(null, null, false, "dateCreated", false, 2, 2, Status.NEW, Status.DRAFT);
+		assertEquals(1, entries.size());
+		assertEquals(1, entries.get(0).getCaseReportId().intValue());
+	}
+	
+	/**
+	 * @see CaseReportService#getQueueEntryCount(String, String, boolean, Status...)
+	 * @verifies return the number of matching queue entries
+	 */
+	@Test
+	public void getQueueEntryCount_shouldReturnTheNumberOfMatchingQueueEntries() throws Exception {
+		service.addMissingQueueEntries();
+		
+		assertEquals(3, service.getQueueEntryCount(null, null, false, Status.NEW, Status.DRAFT));
+		assertEquals(9, service.getQueueEntryCount(null, null, true));
+		assertEquals(2, service.getQueueEntryCount(null, "hiv patient died", true));
+	}
+	
+	/**
+	 * @see CaseReportService#saveCaseReports(java.util.Collection, int)
+	 * @verifies save the specified case reports
+	 */
+	@Test
+	public void saveCaseReports_shouldSaveTheSpecifiedCaseReports() throws Exception {
+		int originalCount = service.getCaseReports().size();
+		CaseReport cr1 = new CaseReport(patientService.getPatient(7), "HIV Switched To Second Line");
+		CaseReport cr2 = new CaseReport(patientService.getPatient(8), "HIV Switched To Second Line");
+		List<CaseReport> savedReports = service.saveCaseReports(Arrays.asList(cr1, cr2), 1);
+		assertEquals(2, savedReports.size());
+		assertNotNull(cr1.getId());
+		assertNotNull(cr2.getId());
+		assertEquals(originalCount + 2, service.getCaseReports().size());
+		assertNotNull(service.getCaseReportByPatient(patientService.getPatient(7)));
+		assertNotNull(service.getCaseReportByPatient(patientService.getPatient(8)));
+	}
+	
+	/**
+	 * @see CaseReportService#saveCaseReports(java.util.Collection, int)
+	 * @verifies save the queue entries of reports whose patients were loaded before the session was
+	 *           cleared
+	 */
+	@Test
+	public void saveCaseReports_shouldSaveTheQueueEntriesOfReportsWhosePatientsWereLoadedBeforeTheSessionWasCleared()
+	    throws Exception {
+		Context.clearSession();
+		Map<Integer, Patient> patients = service.getPatients(Arrays.asList(7, 8));
+		CaseReport cr1 = new CaseReport(patients.get(7), "HIV Switched To Second Line");
+		CaseReport cr2 = new CaseReport(patients.get(8), "HIV Switched To Second Line");
+		assertFalse(Hibernate.isInitialized(patients.get(8).getNames()));
+		
+		service.saveCaseReports(Arrays.asList(cr1, cr2), 1);
+		
+		Context.clearSession();
+		Map<String, String> uuidAndPatientNames = new HashMap<>();
+		for (CaseReportQueueEntry entry : service.getQueueEntries(null, null, true, null, null, null, null)) {
+			uuidAndPatientNames.put(entry.getUuid(), entry.getPatientName());
+		}
+		assertEquals(patientService.getPatient(7).getPersonName().getFullName(), uuidAndPatientNames.get(cr1.getUuid()));
+		assertEquals(patientService.getPatient(8).getPersonName().getFullName(), uuidAndPatientNames.get(cr2.getUuid()));
+	}
+	
 	/**
 	 * @see CaseReportService#submitCaseReport(CaseReport)
 	 * @verifies fail if the case report is null
@@ -564,4 +944,351 @@ public class CaseReportServiceTest extends BaseModuleContextSensitiveTest {
 	public void getTriggers_shouldReturnAllTheTriggers() throws Exception {
 		assertEquals(4, service.getTriggers().size());
 	}
+	
+	/**
+	 * @see CaseReportService#getCaseReportsByPatientIds(java.util.Collection)
+	 * @verifies get the case reports for the patients with the specified ids
+	 */
+	@Test
+	public void getCaseReportsByPatientIds_shouldGetTheCaseReportsForThePatientsWithTheSpecifiedIds() throws Exception {
+		Map<Integer, CaseReport> patientIdAndReportMap = service.getCaseReportsByPatientIds(Arrays.asList(2, 6, 7));
+		assertEquals(2, patientIdAndReportMap.size());
+		assertEquals(1, patientIdAndReportMap.get(2).getId().intValue());
+		assertEquals(4, patientIdAndReportMap.get(6).getId().intValue());
+		assertNull(patientIdAndReportMap.get(7));
+	}
+	
+	/**
+	 * @see CaseReportService#getCaseReportsByPatientIds(java.util.Collection)
+	 * @verifies return an empty map if no patient ids are specified
+	 */
+	@Test
+	public void getCaseReportsByPatientIds_shouldReturnAnEmptyMapIfNoPatientIdsAreSpecified() throws Exception {
+		assertTrue(service.getCaseReportsByPatientIds(Collections.<Integer> emptyList()).isEmpty());
+	}
+	
+	/**
+	 * @see CaseReportService#getCaseReportsByPatientIds(java.util.Collection)
+	 * @verifies fail if a patient has multiple case reports
+	 */
+	@Test
+	public void getCaseReportsByPatientIds_shouldFailIfAPatientHasMultipleCaseReports() throws Exception {
+		CaseReport cr = new CaseReport(patientService.getPatient(6), "HIV Patient Died");
+		cr.setAutoSubmitted(true);
+		service.saveCaseReport(cr);
+		expectedException.expect(APIException.class);
+		expectedException.expectMessage(equalTo("Found multiple case reports that match the patient with id:6"));
+		service.getCaseReportsByPatientIds(Arrays.asList(2, 6));
+	}
+	
+	/**
+	 * @see CaseReportService#getPatients(java.util.Collection)
+	 * @verifies return the patients with the specified ids
+	 */
+	@Test
+	public void getPatients_shouldReturnThePatientsWithTheSpecifiedIds() throws Exception {
+		Map<Integer, Patient> patientIdAndPatientMap = service.getPatients(Arrays.asList(2, 7, 8, 99999));
+		assertEquals(3, patientIdAndPatientMap.size());
+		assertEquals(patientService.getPatient(2), patientIdAndPatientMap.get(2));
+		assertEquals(patientService.getPatient(7), patientIdAndPatientMap.get(7));
+		assertEquals(patientService.getPatient(8), patientIdAndPatientMap.get(8));
+	}
+	
+	/**
+	 * @see CaseReportService#getMostRecentObs(java.util.Collection, java.util.Collection, int)
+	 * @verifies return the most recent obs for each patient and concept
+	 */
+	@Test
+	public void getMostRecentObs_shouldReturnTheMostRecentObsForEachPatientAndConcept() throws Exception {
+		executeDataSet(XML_OTHER_DATASET);
+		Patient patient = patientService.getPatient(2);
+		Concept viralLoad = CaseReportUtil.getConceptByMapping(CaseReportConstants.CIEL_CODE_VIRAL_LOAD,
+		    CaseReportConstants.SOURCE_CIEL_HL7_CODE);
+		Concept whoStage = CaseReportUtil.getConceptByMapping(CaseReportConstants.CIEL_CODE_WHO_STAGE,
+		    CaseReportConstants.SOURCE_CIEL_HL7_CODE);
+		List<Obs> obsList = service.getMostRecentObs(Arrays.asList(2, 7), Arrays.asList(viralLoad, whoStage), 3);
+		List<Obs> viralLoads = new ArrayList<>();
+		for (Obs obs : obsList) {
+			if (obs.getConcept().equals(viralLoad)) {
+				viralLoads.add(obs);
+			}
+		}
+		assertEquals(CaseReportUtil.getMostRecentViralLoads(patient), viralLoads);
+		assertTrue(obsList.contains(CaseReportUtil.getMostRecentWHOStage(patient)));
+	}
+	
+	/**
+	 * @see CaseReportService#getMostRecentObs(java.util.Collection, java.util.Collection, int)
+	 * @verifies return an empty list if no patient ids are specified
+	 */
+	@Test
+	public void getMostRecentObs_shouldReturnAnEmptyListIfNoPatientIdsAreSpecified() throws Exception {
+		executeDataSet(XML_OTHER_DATASET);
+		Concept viralLoad = CaseReportUtil.getConceptByMapping(CaseReportConstants.CIEL_CODE_VIRAL_LOAD,
+		    CaseReportConstants.SOURCE_CIEL_HL7_CODE);
+		assertTrue(service.getMostRecentObs(Collections.<Integer> emptyList(), Arrays.asList(viralLoad), 3).isEmpty());
+	}
+	
+	/**
+	 * @see CaseReportService#getMostRecentObs(java.util.Collection, java.util.Collection, int)
+	 * @verifies return at most the specified number of obs for each patient and concept
+	 */
+	@Test
+	public void getMostRecentObs_shouldReturnAtMostTheSpecifiedNumberOfObsForEachPatientAndConcept() throws Exception {
+		executeDataSet(XML_OTHER_DATASET);
+		Patient patient = patientService.getPatient(2);
+		Concept viralLoad = CaseReportUtil.getConceptByMapping(CaseReportConstants.CIEL_CODE_VIRAL_LOAD,
+		    CaseReportConstants.SOURCE_CIEL_HL7_CODE);
+		List<Obs> viralLoads = CaseReportUtil.getMostRecentViralLoads(patient);
+		assertTrue(viralLoads.size() > 1);
+		
+		List<Obs> obsList = service.getMostRecentObs(Arrays.asList(2), Arrays.asList(viralLoad), 1);
+		
+		assertEquals(1, obsList.size());
+		assertEquals(viralLoads.get(0), obsList.get(0));
+	}
+	
+	/**
+	 * @see CaseReportService#getActiveDrugOrders(java.util.Collection, Concept, java.util.Date)
+	 * @verifies return the active drug orders for the patients
+	 */
+	@Test
+	public void getActiveDrugOrders_shouldReturnTheActiveDrugOrdersForThePatients() throws Exception {
+		executeDataSet(XML_OTHER_DATASET);
+		Set<Order> expected = new HashSet<>();
+		for (Integer patientId : Arrays.asList(2, 7)) {
+			expected.addAll(Context.getOrderService().getActiveOrders(patientService.getPatient(patientId),
+			    Context.getOrderService().getOrderTypeByUuid(OrderType.DRUG_ORDER_TYPE_UUID), null, null));
+		}
+		assertEquals(expected, new HashSet<Order>(service.getActiveDrugOrders(Arrays.asList(2, 7), null, null)));
+	}
+	
+	/**
+	 * @see CaseReportService#getActiveDrugOrders(java.util.Collection, Concept, java.util.Date)
+	 * @verifies return only the orders for members of the specified concept set
+	 */
+	@Test
+	public void getActiveDrugOrders_shouldReturnOnlyTheOrdersForMembersOfTheSpecifiedConceptSet() throws Exception {
+		executeDataSet(XML_OTHER_DATASET);
+		Concept arvMedset = CaseReportUtil.getConceptByMapping(CaseReportConstants.CIEL_CODE_ARV_MED_SET,
+		    CaseReportConstants.SOURCE_CIEL_HL7_CODE);
+		Set<DrugOrder> expected = new HashSet<>();
+		for (Integer patientId : Arrays.asList(2, 7)) {
+			expected.addAll(CaseReportUtil.getActiveArvDrugOrders(patientService.getPatient(patientId), null));
+		}
+		assertEquals(expected, new HashSet<>(service.getActiveDrugOrders(Arrays.asList(2, 7), arvMedset, null)));
+	}
+	
+	/**
+	 * @see CaseReportService#getLastVisitStartDate(Patient)
+	 * @verifies return the uuid and start date of the last visit of the patient
+	 */
+	@Test
+	public void getLastVisitStartDate_shouldReturnTheUuidAndStartDateOfTheLastVisitOfThePatient() throws Exception {
+		executeDataSet(XML_OTHER_DATASET);
+		Visit visit = Context.getVisitService().getVisit(101);
+		UuidAndValue lastVisit = service.getLastVisitStartDate(visit.getPatient());
+		assertEquals(visit.getUuid(), lastVisit.getUuid());
+		assertEquals(visit.getStartDatetime(), lastVisit.getValue());
+	}
+	
+	/**
+	 * @see CaseReportService#getLastVisitStartDate(Patient)
+	 * @verifies return null if the patient has no visit
+	 */
+	@Test
+	public void getLastVisitStartDate_shouldReturnNullIfThePatientHasNoVisit() throws Exception {
+		executeDataSet(XML_OTHER_DATASET);
+		Patient patient = patientService.getPatient(2);
+		assertNotNull(service.getLastVisitStartDate(patient));
+		for (Visit visit : Context.getVisitService().getVisitsByPatient(patient, true, false)) {
+			Context.getVisitService().voidVisit(visit, "testing");
+		}
+		assertNull(service.getLastVisitStartDate(patient));
+	}
+	
+	/**
+	 * @see CaseReportService#getLastVisitStartDates(java.util.Collection)
+	 * @verifies return the uuid and start date of the last visit of each patient
+	 */
+	@Test
+	public void getLastVisitStartDates_shouldReturnTheUuidAndStartDateOfTheLastVisitOfEachPatient() throws Exception {
+		executeDataSet(XML_OTHER_DATASET);
+		Map<Integer, UuidAndValue> patientIdAndVisitMap = service.getLastVisitStartDates(Arrays.asList(2, 7));
+		for (Integer patientId : Arrays.asList(2, 7)) {
+			Visit visit = CaseReportUtil.getLastVisit(patientService.getPatient(patientId));
+			UuidAndValue lastVisit = patientIdAndVisitMap.get(patientId);
+			if (visit == null) {
+				assertNull(lastVisit);
+			} else {
+				assertEquals(visit.getUuid(), lastVisit.getUuid());
+				assertEquals(visit.getStartDatetime(), lastVisit.getValue());
+			}
+		}
+		assertNotNull(patientIdAndVisitMap.get(2));
+	}
+	
+	/**
+	 * @see CaseReportService#streamPatientIds(String, Map, int, int, PatientIdChunkHandler)
+	 * @verifies pass the patient ids to the handler in chunks
+	 */
+	@Test
+	public void streamPatientIds_shouldPassThePatientIdsToTheHandlerInChunks() throws Exception {
+		final List<List<Integer>> chunks = new ArrayList<>();
+		String query = "select patient_id from patient where patient_id in (2, 6, 7, 8) order by patient_id";
+		service.streamPatientIds(query, null, 10, 3, new PatientIdChunkHandler() {
+			
+			@Override
+			public void handle(List<Integer> patientIds) {
+				chunks.add(patientIds);
+			}
+		});
+		assertEquals(2, chunks.size());
+		assertEquals(Arrays.asList(2, 6, 7), chunks.get(0));
+		assertEquals(Arrays.asList(8), chunks.get(1));
+	}
+	
+	/**
+	 * @see CaseReportService#streamPatientIds(String, Map, int, int, PatientIdChunkHandler)
+	 * @verifies set the parameter values in the query
+	 */
+	@Test
+	public void streamPatientIds_shouldSetTheParameterValuesInTheQuery() throws Exception {
+		final List<Integer> ids = new ArrayList<>();
+		String query = "/* Description: patients with ids greater than the minimum */ select patient_id from patient "
+		        + "where patient_id in (2, 6, 7, 8) and patient_id > :minPatientId order by patient_id;";
+		Map<String, Object> parameters = new HashMap<>();
+		parameters.put("minPatientId", 6);
+		service.streamPatientIds(query, parameters, 10, 10, new PatientIdChunkHandler() {
+			
+			@Override
+			public void handle(List<Integer> patientIds) {
+				ids.addAll(patientIds);
+			}
+		});
+		assertEquals(Arrays.asList(7, 8), ids);
+	}
+	
+	/**
+	 * @see CaseReportService#streamPatientIds(String, Map, int, int, PatientIdChunkHandler)
+	 * @verifies not strip comment markers inside string literals
+	 */
+	@Test
+	public void streamPatientIds_shouldNotStripCommentMarkersInsideStringLiterals() throws Exception {
+		final List<Integer> ids = new ArrayList<>();
+		String query = "select patient_id from patient where patient_id in (2, 6, 7, 8) -- :ignored\n"
+		        + "and '--/*' <> '*/--:x' and patient_id > :minPatientId order by patient_id";
+		Map<String, Object> parameters = new HashMap<>();
+		parameters.put("minPatientId", 6);
+		service.streamPatientIds(query, parameters, 10, 10, new PatientIdChunkHandler() {
+			
+			@Override
+			public void handle(List<Integer> patientIds) {
+				ids.addAll(patientIds);
+			}
+		});
+		assertEquals(Arrays.asList(7, 8), ids);
+	}
+	
+	/**
+	 * @see CaseReportService#streamPatientIds(String, Map, int, int, PatientIdChunkHandler)
+	 * @verifies expand collection and cohort parameter values
+	 */
+	@Test
+	public void streamPatientIds_shouldExpandCollectionAndCohortParameterValues() throws Exception {
+		final List<Integer> ids = new ArrayList<>();
+		String query = "select patient_id from patient where patient_id in (:patientIds) and patient_id not in "
+		        + "(:excluded) order by patient_id";
+		Map<String, Object> parameters = new HashMap<>();
+		parameters.put("patientIds", Arrays.asList(patientService.getPatient(2), patientService.getPatient(7), 8));
+		parameters.put("excluded", new Cohort(Arrays.asList(7)));
+		service.streamPatientIds(query, parameters, 10, 10, new PatientIdChunkHandler() {
+			
+			@Override
+			public void handle(List<Integer> patientIds) {
+				ids.addAll(patientIds);
+			}
+		});
+		assertEquals(Arrays.asList(2, 8), ids);
+	}
+	
+	/**
+	 * @see CaseReportService#saveSubmissionOutboxItem(SubmissionOutboxItem)
+	 * @verifies save a new outbox item that is due immediately
+	 */
+	@Test
+	public void saveSubmissionOutboxItem_shouldSaveANewOutboxItemThatIsDueImmediately() throws Exception {
+		CaseReport caseReport = service.getCaseReport(1);
+		assertTrue(service.getSubmissionOutboxItems(caseReport).isEmpty());
+		
+		SubmissionOutboxItem item = service.saveSubmissionOutboxItem(new SubmissionOutboxItem(caseReport));
+		
+		assertNotNull(item.getId());
+		assertNotNull(item.getDateCreated());
+		assertEquals(SubmissionOutboxItem.Status.PENDING, item.getStatus());
+		assertEquals(0, item.getAttempts().intValue());
+		assertFalse(item.getNextAttemptDate().after(new Date()));
+		assertEquals(1, service.getSubmissionOutboxItems(caseReport).size());
+	}
+	
+	/**
+	 * @see CaseReportService#saveSubmissionOutboxItem(SubmissionOutboxItem)
+	 * @verifies update an existing outbox item
+	 */
+	@Test
+	public void saveSubmissionOutboxItem_shouldUpdateAnExistingOutboxItem() throws Exception {
+		SubmissionOutboxItem item = service.saveSubmissionOutboxItem(new SubmissionOutboxItem(service.getCaseReport(1)));
+		item.setStatus(SubmissionOutboxItem.Status.DEAD);
+		item.setAttempts(3);
+		
+		service.saveSubmissionOutboxItem(item);
+		
+		assertNotNull(item.getDateChanged());
+		List<SubmissionOutboxItem> items = service.getSubmissionOutboxItems(item.getCaseReport());
+		assertEquals(1, items.size());
+		assertEquals(SubmissionOutboxItem.Status.DEAD, items.get(0).getStatus());
+		assertEquals(3, items.get(0).getAttempts().intValue());
+	}
+	
+	/**
+	 * @see CaseReportService#getDueSubmissionOutboxItems(int)
+	 * @verifies return the pending outbox items that are due
+	 */
+	@Test
+	public void getDueSubmissionOutboxItems_shouldReturnThePendingOutboxItemsThatAreDue() throws Exception {
+		CaseReport caseReport = service.getCaseReport(1);
+		SubmissionOutboxItem due = service.saveSubmissionOutboxItem(new SubmissionOutboxItem(caseReport));
+		SubmissionOutboxItem notDue = new SubmissionOutboxItem(caseReport);
+		notDue.setNextAttemptDate(DateUtils.addHours(new Date(), 1));
+		service.saveSubmissionOutboxItem(notDue);
+		SubmissionOutboxItem delivered = new SubmissionOutboxItem(caseReport);
+		delivered.setStatus(SubmissionOutboxItem.Status.DELIVERED);
+		service.saveSubmissionOutboxItem(delivered);
+		SubmissionOutboxItem dead = new SubmissionOutboxItem(caseReport);
+		dead.setStatus(SubmissionOutboxItem.Status.DEAD);
+		service.saveSubmissionOutboxItem(dead);
+		
+		List<SubmissionOutboxItem> items = service.getDueSubmissionOutboxItems(10);
+		
+		assertEquals(1, items.size());
+		assertEquals(due, items.get(0));
+	}
+	
+	/**
+	 * @see CaseReportService#getSubmissionOutboxItems(CaseReport)
+	 * @verifies return the outbox items for the case report
+	 */
+	@Test
+	public void getSubmissionOutboxItems_shouldReturnTheOutboxItemsForTheCaseReport() throws Exception {
+		CaseReport caseReport = service.getCaseReport(1);
+		SubmissionOutboxItem first = service.saveSubmissionOutboxItem(new SubmissionOutboxItem(caseReport));
+		SubmissionOutboxItem second = service.saveSubmissionOutboxItem(new SubmissionOutboxItem(caseReport));
+		service.saveSubmissionOutboxItem(new SubmissionOutboxItem(service.getCaseReport(2)));
+		
+		List<SubmissionOutboxItem> items = service.getSubmissionOutboxItems(caseReport);
+		
+		assertEquals(2, items.size());
+		assertEquals(first, items.get(0));
+		assertEquals(second, items.get(1));
+	}
 }
@@ -15,15 +15,13 @@ import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.openmrs.api.AdministrationService;
-import org.openmrs.api.context.Context;
 import org.springframework.ws.client.WebServiceClientException;
 import org.springframework.ws.client.WebServiceIOException;
 import org.springframework.ws.client.support.interceptor.ClientInterceptorAdapter;
 import org.springframework.ws.context.MessageContext;
+import org.springframework.ws.transport.HeadersAwareSenderWebServiceConnection;
 import org.springframework.ws.transport.context.TransportContext;
 import org.springframework.ws.transport.context.TransportContextHolder;
-import org.springframework.ws.transport.http.HttpUrlConnection;
 
 /**
  * An Interceptor that adds authentication credentials to the request using Basic Authentication
@@ -41,10 +39,10 @@ public class AuthenticatingInterceptor extends ClientInterceptorAdapter {
 	public boolean handleRequest(MessageContext messageContext) throws WebServiceClientException {
 		
 		TransportContext context = TransportContextHolder.getTransportContext();
-		HttpUrlConnection connection = (HttpUrlConnection) context.getConnection();
-		AdministrationService as = Context.getAdministrationService();
-		String username = as.getGlobalProperty(DocumentConstants.GP_OPENHIM_CLIENT_ID);
-		String password = as.getGlobalProperty(DocumentConstants.GP_OPENHIM_CLIENT_PASSWORD);
+		HeadersAwareSenderWebServiceConnection connection = (HeadersAwareSenderWebServiceConnection) context.getConnection();
+		CaseReportConfig config = CaseReportConfig.get();
+		String username = config.getGlobalProperty(DocumentConstants.GP_OPENHIM_CLIENT_ID);
+		String password = config.getGlobalProperty(DocumentConstants.GP_OPENHIM_CLIENT_PASSWORD);
 		
 		if (StringUtils.isNotBlank(username) && StringUtils.isNotBlank(password)) {
 			try {
@@ -0,0 +1,208 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.casereport;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.APIException;
+import org.openmrs.api.context.Context;
+import org.openmrs.util.PrivilegeConstants;
+
+/**
+ * An immutable snapshot of the values of the module's global properties that are used to generate
+ * and send the documents, it is loaded on first use and discarded by
+ * {@link CaseReportConfigListener} whenever any of the global properties is changed or deleted so
+ * that the next call to {@link #get()} loads a new one. The identifier type mappings are parsed
+ * once when the snapshot is loaded.
+ */
+public final class CaseReportConfig {
+	
+	private static final Log log = LogFactory.getLog(CaseReportConfig.class);
+	
+	private static final Object LOCK = new Object();
+	
+	private static volatile CaseReportConfig instance;
+	
+	private final Map<String, String> globalProperties;
+	
+	private final Map<String, String> idTypeUuidAndHieIdMap;
+	
+	private CaseReportConfig(Map<String, String> globalProperties) {
+		this.globalProperties = Collections.unmodifiableMap(globalProperties);
+		this.idTypeUuidAndHieIdMap = parseIdentifierTypeMappings(globalProperties.get(DocumentConstants.GP_ID_MAPPINGS));
+	}
+	
+	/**
+	 * Gets the current snapshot, loading it from the database if necessary
+	 * 
+	 * @return the CaseReportConfig object
+	 * <strong>Should</strong> return the same snapshot until it is cleared
+	 * <strong>Should</strong> load a new snapshot after it is cleared
+	 */
+	public static CaseReportConfig get() {
+		CaseReportConfig config = instance;
+		if (config == null) {
+			synchronized (LOCK) {
+				if (instance == null) {
+					instance = load();
+				}
+				config = instance;
+			}
+		}
+		
+		return config;
+	}
+	
+	/**
+	 * Discards the current snapshot
+	 */
+	public static void clear() {
+		synchronized (LOCK) {
+			instance = null;
+		}
+	}
+	
+	private static CaseReportConfig load() {
+		if (log.isDebugEnabled()) {
+			log.debug("Loading case report global properties");
+		}
+		
+		Map<String, String> globalProperties = new HashMap<>();
+		try {
+			Context.addProxyPrivilege(PrivilegeConstants.VIEW_GLOBAL_PROPERTIES);
+			for (GlobalProperty gp : Context.getAdministrationService().getGlobalPropertiesByPrefix(
+			    DocumentConstants.GP_PREFIX)) {
+				globalProperties.put(gp.getProperty(), gp.getPropertyValue());
+			}
+		}
+		finally {
+			Context.removeProxyPrivilege(PrivilegeConstants.VIEW_GLOBAL_PROPERTIES);
+		}
+		
+		return new CaseReportConfig(globalProperties);
+	}
+	
+	private static Map<String, String> parseIdentifierTypeMappings(String mappingsStr) {
+		if (StringUtils.isBlank(mappingsStr)) {
+			return null;
+		}
+		
+		Map<String, String> idTypeUuidAndHieIdMap = new HashMap<>();
+		for (String mapping : StringUtils.split(mappingsStr, CaseReportConstants.CHAR_COMMA)) {
+			String[] localIdAndHieId = StringUtils.split(mapping, CaseReportConstants.CHAR_COLON);
+			if (localIdAndHieId.length != 2) {
+				log.warn("Ignoring invalid identifier type mapping: " + mapping);
+				continue;
+			}
+			idTypeUuidAndHieIdMap.put(localIdAndHieId[0].trim().toLowerCase(), localIdAndHieId[1].trim());
+		}
+		
+		return Collections.unmodifiableMap(idTypeUuidAndHieIdMap);
+	}
+	
+	/**
+	 * Gets the value of the global property with the specified name
+	 * 
+	 * @param propertyName the global property name
+	 * @return the global property value
+	 */
+	public String getGlobalProperty(String propertyName) {
+		return globalProperties.get(propertyName);
+	}
+	
+	/**
+	 * @return the organisation's OID
+	 */
+	public String getOrganisationOID() {
+		return getGlobalProperty(DocumentConstants.GP_ORG_ID);
+	}
+	
+	/**
+	 * @return the organisation's extension
+	 */
+	public String getOrganisationExtension() {
+		return getGlobalProperty(DocumentConstants.GP_ORG_EXT);
+	}
+	
+	/**
+	 * @return the organisation's name
+	 */
+	public String getOrganisationName() {
+		return getGlobalProperty(DocumentConstants.GP_ORG_NAME);
+	}
+	
+	/**
+	 * @return the confidentiality code
+	 */
+	public String getConfidentialityCode() {
+		return getGlobalProperty(DocumentConstants.GP_CONFIDENTIALITY_CODE);
+	}
+	
+	/**
+	 * @return the patient id format
+	 */
+	public String getPatientIdFormat() {
+		return getGlobalProperty(DocumentConstants.GP_PATIENT_ID_FORMAT);
+	}
+	
+	/**
+	 * @return the url of the OpenHIM
+	 */
+	public String getOpenHIMUrl() {
+		return getGlobalProperty(DocumentConstants.GP_OPENHIM_URL);
+	}
+	
+	/**
+	 * Creates and returns a reference term representation of the value of the specified global
+	 * property name
+	 * 
+	 * @param globalPropertyName the name of the global property to match
+	 * @return a ReferenceTerm object
+	 */
+	public ReferenceTerm getReferenceTerm(String globalPropertyName) {
+		String mapping = getGlobalProperty(globalPropertyName);
+		if (StringUtils.isBlank(mapping)) {
+			throw new APIException(globalPropertyName + " global property value is required");
+		}
+		
+		String[] fields = StringUtils.split(mapping, ":");
+		if (fields.length != 4) {
+			throw new APIException("Invalid value for the " + globalPropertyName + " global property");
+		}
+		
+		return new ReferenceTerm(fields[0], fields[1], fields[2], fields[3]);
+	}
+	
+	/**
+	 * Gets the HIE identifier mapped to the patient identifier type with the specified uuid
+	 * 
+	 * @param idTypeUuid the uuid of the patient identifier type
+	 * @return the OID of mapped HIE identifier
+	 * <strong>Should</strong> return the mapped HIE identifier ignoring the case of the uuid
+	 */
+	public String getMappedHieIdentifier(String idTypeUuid) {
+		if (idTypeUuidAndHieIdMap == null) {
+			throw new APIException(DocumentConstants.GP_ID_MAPPINGS + " global property value needs to be set");
+		}
+		
+		String hieId = idTypeUuidAndHieIdMap.get(idTypeUuid.toLowerCase());
+		if (hieId == null) {
+			throw new APIException("No HIE identifier mapped to identifier type with uuid: " + idTypeUuid);
+		}
+		
+		return hieId;
+	}
+}
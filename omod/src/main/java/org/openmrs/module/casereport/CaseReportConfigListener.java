@@ -0,0 +1,87 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.casereport;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.GlobalPropertyListener;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Listens for changes to the module's global properties so that it can discard the current
+ * {@link CaseReportConfig} snapshot, it is registered with the AdministrationService by
+ * {@link CaseReportActivator} when the module's application context is refreshed. Since the
+ * listener is notified before the transaction that saves the global property commits, the snapshot
+ * is discarded again after the transaction completes so that one loaded in the meantime by another
+ * thread with the old values doesn't stay around.
+ */
+@Component(CaseReportConstants.CONFIG_LISTENER_BEAN_NAME)
+public class CaseReportConfigListener implements GlobalPropertyListener, DisposableBean {
+	
+	protected final Log log = LogFactory.getLog(this.getClass());
+	
+	/**
+	 * @see DisposableBean#destroy()
+	 */
+	@Override
+	public void destroy() {
+		CaseReportConfig.clear();
+	}
+	
+	/**
+	 * @see GlobalPropertyListener#supportsPropertyName(String)
+	 */
+	@Override
+	public boolean supportsPropertyName(String propertyName) {
+		return propertyName != null && propertyName.startsWith(DocumentConstants.GP_PREFIX);
+	}
+	
+	/**
+	 * @see GlobalPropertyListener#globalPropertyChanged(GlobalProperty)
+	 * <strong>Should</strong> clear the config when a module global property is changed
+	 * <strong>Should</strong> clear the config again after the transaction completes
+	 */
+	@Override
+	public void globalPropertyChanged(GlobalProperty newValue) {
+		if (log.isDebugEnabled()) {
+			log.debug("Clearing case report config after a change to " + newValue.getProperty());
+		}
+		clearConfig();
+	}
+	
+	/**
+	 * @see GlobalPropertyListener#globalPropertyDeleted(String)
+	 */
+	@Override
+	public void globalPropertyDeleted(String propertyName) {
+		clearConfig();
+	}
+	
+	/**
+	 * Discards the config snapshot immediately and again after the current transaction if any
+	 * completes
+	 */
+	private void clearConfig() {
+		CaseReportConfig.clear();
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				
+				@Override
+				public void afterCompletion(int status) {
+					CaseReportConfig.clear();
+				}
+			});
+		}
+	}
+}
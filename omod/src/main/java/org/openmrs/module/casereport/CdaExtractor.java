@@ -0,0 +1,105 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.casereport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.xml.bind.DatatypeConverter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Extracts the embedded CDA document from an archived XDS.b ProvideAndRegisterDocumentSetRequest by
+ * scanning it with a StAX parser, the base64 content of the first Document element is decoded in
+ * chunks as it is read so only a chunk of the encoded text is held in memory regardless of the size
+ * of the document or the registry metadata.
+ */
+public final class CdaExtractor {
+	
+	private static final String XDS_NAMESPACE = "urn:ihe:iti:xds-b:2007";
+	
+	private static final String DOCUMENT_ELEMENT = "Document";
+	
+	//Has to be a multiple of 4 so that each chunk is valid base64
+	private static final int CHUNK_SIZE = 8192;
+	
+	private static final XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+	
+	static {
+		inputFactory.setProperty(XMLInputFactory.IS_COALESCING, false);
+		inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+	}
+	
+	private CdaExtractor() {
+	}
+	
+	/**
+	 * Writes the decoded CDA document in the specified XDS envelope to the specified stream
+	 * 
+	 * @param envelope the stream to read the XDS envelope from
+	 * @param out the stream to write the CDA document to
+	 * @return true if a document was found otherwise false
+	 * @throws XMLStreamException
+	 * @throws IOException
+	 * <strong>Should</strong> write the decoded CDA document to the stream
+	 * <strong>Should</strong> return false if the envelope has no document
+	 */
+	public static boolean extract(InputStream envelope, OutputStream out) throws XMLStreamException, IOException {
+		XMLStreamReader reader = inputFactory.createXMLStreamReader(envelope);
+		try {
+			while (reader.hasNext()) {
+				if (reader.next() == XMLStreamConstants.START_ELEMENT && DOCUMENT_ELEMENT.equals(reader.getLocalName())
+				        && XDS_NAMESPACE.equals(reader.getNamespaceURI())) {
+					decode(reader, out);
+					return true;
+				}
+			}
+			
+			return false;
+		}
+		finally {
+			reader.close();
+		}
+	}
+	
+	private static void decode(XMLStreamReader reader, OutputStream out) throws XMLStreamException, IOException {
+		char[] chunk = new char[CHUNK_SIZE];
+		int chunkLength = 0;
+		int event;
+		while ((event = reader.next()) != XMLStreamConstants.END_ELEMENT) {
+			if (event != XMLStreamConstants.CHARACTERS && event != XMLStreamConstants.CDATA
+			        && event != XMLStreamConstants.SPACE) {
+				continue;
+			}
+			
+			char[] text = reader.getTextCharacters();
+			int end = reader.getTextStart() + reader.getTextLength();
+			for (int i = reader.getTextStart(); i < end; i++) {
+				if (Character.isWhitespace(text[i])) {
+					continue;
+				}
+				chunk[chunkLength++] = text[i];
+				if (chunkLength == CHUNK_SIZE) {
+					out.write(DatatypeConverter.parseBase64Binary(new String(chunk, 0, chunkLength)));
+					chunkLength = 0;
+				}
+			}
+		}
+		
+		if (chunkLength > 0) {
+			out.write(DatatypeConverter.parseBase64Binary(new String(chunk, 0, chunkLength)));
+		}
+	}
+}
@@ -0,0 +1,102 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.casereport;
+
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Paths;
+
+import org.apache.commons.lang.StringUtils;
+import org.openmrs.api.APIException;
+import org.openmrs.util.OpenmrsUtil;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+/**
+ * The {@link SubmittedDocumentStore} used by the module, it delegates to the store specified by the
+ * {@link DocumentConstants#GP_SUBMITTED_DOCUMENT_STORE} global property which is created the first
+ * time a document is saved or read. The global property is read only once, a change to it takes
+ * effect after a restart since switching stores while documents are being written isn't safe.
+ * Documents that are not found in the segment store are read from the file store so that documents
+ * archived before switching to segments remain accessible.
+ */
+@Component(DocumentConstants.DOCUMENT_STORE_BEAN_NAME)
+public class DelegatingSubmittedDocumentStore implements SubmittedDocumentStore, DisposableBean {
+	
+	private final FileSubmittedDocumentStore fileStore = new FileSubmittedDocumentStore();
+	
+	private volatile SubmittedDocumentStore store;
+	
+	/**
+	 * @see SubmittedDocumentStore#save(CaseReport, DocumentWriter)
+	 */
+	@Override
+	public void save(CaseReport caseReport, DocumentWriter writer) throws IOException {
+		getStore().save(caseReport, writer);
+	}
+	
+	/**
+	 * @see SubmittedDocumentStore#read(CaseReport)
+	 * <strong>Should</strong> read documents not found in the segment store from the file store
+	 */
+	@Override
+	public InputStream read(CaseReport caseReport) throws IOException {
+		SubmittedDocumentStore currentStore = getStore();
+		try {
+			return currentStore.read(caseReport);
+		}
+		catch (FileNotFoundException e) {
+			if (currentStore == fileStore) {
+				throw e;
+			}
+			return fileStore.read(caseReport);
+		}
+	}
+	
+	/**
+	 * @see DisposableBean#destroy()
+	 */
+	@Override
+	public synchronized void destroy() throws IOException {
+		if (store instanceof Closeable) {
+			((Closeable) store).close();
+		}
+		store = null;
+	}
+	
+	private SubmittedDocumentStore getStore() {
+		if (store == null) {
+			synchronized (this) {
+				if (store == null) {
+					store = createStore();
+				}
+			}
+		}
+		
+		return store;
+	}
+	
+	private SubmittedDocumentStore createStore() {
+		String type = CaseReportConfig.get().getGlobalProperty(DocumentConstants.GP_SUBMITTED_DOCUMENT_STORE);
+		if (StringUtils.isBlank(type) || DocumentConstants.DOCUMENT_STORE_FILE.equalsIgnoreCase(type.trim())) {
+			return fileStore;
+		} else if (DocumentConstants.DOCUMENT_STORE_SEGMENT.equalsIgnoreCase(type.trim())) {
+			String appDataDir = OpenmrsUtil.getApplicationDataDirectory();
+			return new SegmentSubmittedDocumentStore(Paths.get(appDataDir, CaseReportConstants.MODULE_ID,
+			    DocumentConstants.SEGMENTS_DIR).toFile(), DocumentConstants.SEGMENT_SIZE);
+		}
+		
+		throw new APIException("Invalid value for the " + DocumentConstants.GP_SUBMITTED_DOCUMENT_STORE
+		        + " global property: " + type);
+	}
+
+}
@@ -17,6 +17,8 @@ public final class DocumentConstants {
 	
 	public static final String DOC_FILE_EXT = ".xml";
 	
+	public static final String DOCUMENT_STORE_BEAN_NAME = MODULE_ID + "-submittedDocumentStore";
+	
 	public static final String GP_PREFIX = MODULE_ID + ".";
 	
 	public static final String GP_OPENHIM_URL = MODULE_ID + ".openHIMUrl";
@@ -27,6 +29,51 @@ public final class DocumentConstants {
 	
 	public static final String GP_ID_MAPPINGS = MODULE_ID + ".identifierTypeMappings";
 	
+	public static final String GP_OUTBOX_CONCURRENCY = MODULE_ID + ".outboxConcurrency";
+	
+	public static final int DEFAULT_OUTBOX_CONCURRENCY = 1;
+	
+	public static final String GP_OUTBOX_MAX_ATTEMPTS = MODULE_ID + ".outboxMaxAttempts";
+	
+	public static final int DEFAULT_OUTBOX_MAX_ATTEMPTS = 10;
+	
+	public static final String GP_OUTBOX_RETRY_DELAY = MODULE_ID + ".outboxRetryDelay";
+	
+	public static final int DEFAULT_OUTBOX_RETRY_DELAY = 60;
+	
+	public static final String GP_OUTBOX_BATCH_SIZE = MODULE_ID + ".outboxBatchSize";
+	
+	public static final int DEFAULT_OUTBOX_BATCH_SIZE = 20;
+	
+	public static final String GP_HIE_MAX_CONNECTIONS = MODULE_ID + ".hieMaxConnections";
+	
+	public static final int DEFAULT_HIE_MAX_CONNECTIONS = 10;
+	
+	public static final String GP_HIE_CONNECT_TIMEOUT = MODULE_ID + ".hieConnectTimeout";
+	
+	public static final int DEFAULT_HIE_CONNECT_TIMEOUT = 30;
+	
+	public static final String GP_HIE_READ_TIMEOUT = MODULE_ID + ".hieReadTimeout";
+	
+	public static final int DEFAULT_HIE_READ_TIMEOUT = 60;
+	
+	public static final String GP_HIE_IDLE_CONNECTION_TIMEOUT = MODULE_ID + ".hieIdleConnectionTimeout";
+	
+	public static final int DEFAULT_HIE_IDLE_CONNECTION_TIMEOUT = 60;
+	
+	public static final String GP_SUBMITTED_DOCUMENT_STORE = MODULE_ID + ".submittedDocumentStore";
+	
+	public static final String DOCUMENT_STORE_FILE = "file";
+	
+	public static final String DOCUMENT_STORE_SEGMENT = "segment";
+	
+	public static final String SEGMENTS_DIR = "segments";
+	
+	public static final long SEGMENT_SIZE = 64L * 1024 * 1024;
+	
+	//The maximum total length in characters of the rendered documents to cache
+	public static final long RENDERED_DOCUMENT_CACHE_LENGTH = 8L * 1024 * 1024;
+	
 	public static final String OID_PREFIX = "2.25.";
 	
 	public static final String CONFIDENTIALITY_N = "N";
@@ -51,13 +98,13 @@ public final class DocumentConstants {
 	
 	public static final String XDS_ASSOCIATION = "Association";
 	
-	public static final String XDS_DOC_ID = "Document1";
+	public static final String XDS_DOC_ID_PREFIX = "Document";
 	
 	public static final String XDS_SUBSET_ID = "SubSet1";
 	
 	public static final String XDS_CLASSIFICATION_ID = "Class1";
 	
-	public static final String XDS_ASSOCIATION_ID = "Assoc1";
+	public static final String XDS_ASSOCIATION_ID_PREFIX = "Assoc";
 	
 	public static final String XDS_SLOT_CODING_SCHEME = "codingScheme";
 	
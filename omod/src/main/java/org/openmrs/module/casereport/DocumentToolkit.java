@@ -0,0 +1,157 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.casereport;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.xml.serializer.OutputPropertiesFactory;
+import org.marc.everest.formatters.xml.datatypes.r1.DatatypeFormatter;
+import org.marc.everest.formatters.xml.datatypes.r1.R1FormatterCompatibilityMode;
+import org.marc.everest.formatters.xml.its1.XmlIts1Formatter;
+import org.marc.everest.rmim.uv.cdar2.pocd_mt000040uv.ClinicalDocument;
+import org.springframework.xml.transform.StringResult;
+import org.w3c.dom.Document;
+
+/**
+ * Holds the expensive to create objects used to generate and render documents so that they are
+ * reused instead of being created for every document. The CDA formatters aren't thread safe so they
+ * are pooled, a thread borrows one for the duration of a single document, the DOM parsers and
+ * transformers are kept per thread. The pool can be pre-warmed by calling {@link #prewarm()} at
+ * startup so that the first submission doesn't pay the cost of initializing the formatter.
+ */
+public final class DocumentToolkit {
+	
+	private static final Log log = LogFactory.getLog(DocumentToolkit.class);
+	
+	private static final int MAX_POOLED_FORMATTERS = 8;
+	
+	//The cda is ~8KB, might as well initialize the byte array to a fairly larger size
+	private static final int CDA_BUFFER_SIZE = 10240;
+	
+	private static final BlockingQueue<XmlIts1Formatter> formatters = new ArrayBlockingQueue<>(MAX_POOLED_FORMATTERS);
+	
+	private static final DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+	
+	private static final TransformerFactory transformerFactory = TransformerFactory.newInstance();
+	
+	private static final ThreadLocal<DocumentBuilder> documentBuilders = new ThreadLocal<>();
+	
+	private static final ThreadLocal<Transformer> prettyPrinters = new ThreadLocal<>();
+	
+	static {
+		documentBuilderFactory.setNamespaceAware(true);
+	}
+	
+	private DocumentToolkit() {
+	}
+	
+	/**
+	 * Creates a CDA formatter and formats an empty document with it to initialize it before adding it
+	 * to the pool, a failure is only logged since the formatters are otherwise created on demand
+	 */
+	public static void prewarm() {
+		try {
+			XmlIts1Formatter formatter = createFormatter();
+			formatter.graph(new ByteArrayOutputStream(CDA_BUFFER_SIZE), new ClinicalDocument());
+			formatters.offer(formatter);
+		}
+		catch (Exception e) {
+			log.warn("Failed to pre-warm the CDA formatter", e);
+		}
+	}
+	
+	/**
+	 * Formats the specified CDA document as XML
+	 *
+	 * @param cdaDocument the CDA document to format
+	 * @return the bytes of the CDA document
+	 */
+	public static byte[] formatCda(ClinicalDocument cdaDocument) {
+		XmlIts1Formatter formatter = formatters.poll();
+		if (formatter == null) {
+			formatter = createFormatter();
+		}
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream(CDA_BUFFER_SIZE);
+		formatter.graph(out, cdaDocument);
+		//The formatter is only returned to the pool after a success since a failure might leave it in
+		//an inconsistent state, it is discarded if the pool is full
+		formatters.offer(formatter);
+		
+		return out.toByteArray();
+	}
+	
+	/**
+	 * Parses and re-indents the specified XML document
+	 *
+	 * @param xml the bytes of the XML document
+	 * @return the indented XML without the declaration
+	 * @throws Exception
+	 * <strong>Should</strong> indent the specified document
+	 */
+	public static String prettyPrint(byte[] xml) throws Exception {
+		Document document = getDocumentBuilder().parse(new ByteArrayInputStream(xml));
+		StringResult result = new StringResult();
+		getPrettyPrinter().transform(new DOMSource(document), result);
+		return result.toString();
+	}
+	
+	static XmlIts1Formatter createFormatter() {
+		XmlIts1Formatter formatter = new XmlIts1Formatter();
+		//This instructs the XML ITS1 Formatter we want to use CDA datatypes
+		formatter.getGraphAides().add(new DatatypeFormatter(R1FormatterCompatibilityMode.ClinicalDocumentArchitecture));
+		return formatter;
+	}
+	
+	private static DocumentBuilder getDocumentBuilder() throws ParserConfigurationException {
+		DocumentBuilder documentBuilder = documentBuilders.get();
+		if (documentBuilder == null) {
+			//The factories aren't thread safe
+			synchronized (documentBuilderFactory) {
+				documentBuilder = documentBuilderFactory.newDocumentBuilder();
+			}
+			documentBuilders.set(documentBuilder);
+		} else {
+			documentBuilder.reset();
+		}
+		
+		return documentBuilder;
+	}
+	
+	private static Transformer getPrettyPrinter() throws TransformerConfigurationException {
+		Transformer transformer = prettyPrinters.get();
+		if (transformer == null) {
+			synchronized (transformerFactory) {
+				transformer = transformerFactory.newTransformer();
+			}
+			transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+			transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+			transformer.setOutputProperty(OutputPropertiesFactory.S_KEY_INDENT_AMOUNT, "2");
+			transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+			prettyPrinters.set(transformer);
+		}
+		
+		return transformer;
+	}
+}
@@ -11,18 +11,17 @@ package org.openmrs.module.casereport;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.nio.file.Paths;
-import java.text.DateFormat;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.UUID;
 
-import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.marc.everest.datatypes.NullFlavor;
 import org.marc.everest.datatypes.TS;
@@ -41,7 +40,7 @@ public class DocumentUtil {
 	private static final BigInteger DECIMAL_REP_COUNT = BigInteger.ONE.shiftLeft(128);
 	
 	//Formatter used to print dates in text sections that are human readable
-	public static final DateFormat DATE_FORMATTER = new SimpleDateFormat("dd-MMM-yyyy h a zzz");
+	public static final DateCodec DATE_FORMATTER = new DateCodec("dd-MMM-yyyy h a zzz");
 	
 	private static final HashMap<String, String> codeLocalizedStringMap = new HashMap();
 	
@@ -51,9 +50,6 @@ public class DocumentUtil {
 		codeLocalizedStringMap.put(DocumentConstants.CONFIDENTIALITY_V, "Very restricted");
 	}
 	
-	//TODO Move all GPs to a Config class with a cache, it should be implemented as GlobalPropertyListener 
-	// so that it can refresh its cache whenever the property values change or are deleted
-	
 	/**
 	 * Gets the code and name mapping for confidentiality levels
 	 * 
@@ -109,7 +105,7 @@ public class DocumentUtil {
 	 * @return the organisation's OID
 	 */
 	public static String getOrganisationOID() {
-		return getGlobalProperty(DocumentConstants.GP_ORG_ID);
+		return CaseReportConfig.get().getOrganisationOID();
 	}
 	
 	/**
@@ -118,7 +114,7 @@ public class DocumentUtil {
 	 * @return the organisation's extension
 	 */
 	public static String getOrganisationExtension() {
-		return getGlobalProperty(DocumentConstants.GP_ORG_EXT);
+		return CaseReportConfig.get().getOrganisationExtension();
 	}
 	
 	/**
@@ -127,7 +123,7 @@ public class DocumentUtil {
 	 * @return the organisation's name
 	 */
 	public static String getOrganisationName() {
-		return getGlobalProperty(DocumentConstants.GP_ORG_NAME);
+		return CaseReportConfig.get().getOrganisationName();
 	}
 	
 	/**
@@ -136,7 +132,7 @@ public class DocumentUtil {
 	 * @return the confidentiality code
 	 */
 	public static String getConfidentialityCode() {
-		return getGlobalProperty(DocumentConstants.GP_CONFIDENTIALITY_CODE);
+		return CaseReportConfig.get().getConfidentialityCode();
 	}
 	
 	/**
@@ -145,17 +141,7 @@ public class DocumentUtil {
 	 * @return the patient id format
 	 */
 	public static String getPatientIdFormat() {
-		return getGlobalProperty(DocumentConstants.GP_PATIENT_ID_FORMAT);
-	}
-	
-	/**
-	 * Convenience method that gets the value of the specified global property name
-	 * 
-	 * @param propertyName the global property name
-	 * @return the global property value
-	 */
-	private static String getGlobalProperty(String propertyName) {
-		return Context.getAdministrationService().getGlobalProperty(propertyName);
+		return CaseReportConfig.get().getPatientIdFormat();
 	}
 	
 	/**
@@ -218,6 +204,24 @@ public class DocumentUtil {
 		return new File(dir, caseReport.getUuid() + DocumentConstants.DOC_FILE_EXT);
 	}
 	
+	/**
+	 * Creates the CaseReportForm from the saved report form of the specified submitted case report
+	 * 
+	 * @param caseReport the submitted case report object
+	 * @return the CaseReportForm object
+	 */
+	public static CaseReportForm getSubmittedCaseReportForm(CaseReport caseReport) {
+		try {
+			CaseReportForm form = JsonCodec.readForm(caseReport.getReportForm());
+			form.setReportUuid(caseReport.getUuid());
+			form.setReportDate(caseReport.getDateCreated());
+			return form;
+		}
+		catch (IOException e) {
+			throw new APIException("Failed to read the report form of " + caseReport, e);
+		}
+	}
+	
 	/**
 	 * Retrieves the contents of the saved document for the specified submitted case report
 	 * 
@@ -229,9 +233,10 @@ public class DocumentUtil {
 			throw new APIException(caseReport + " is not submitted");
 		}
 		
-		File docFile = getSubmittedCaseReportFile(caseReport);
-		try {
-			return FileUtils.readFileToString(docFile, DocumentConstants.ENCODING);
+		SubmittedDocumentStore store = Context.getRegisteredComponent(DocumentConstants.DOCUMENT_STORE_BEAN_NAME,
+		    SubmittedDocumentStore.class);
+		try (InputStream in = store.read(caseReport)) {
+			return IOUtils.toString(in, DocumentConstants.ENCODING);
 		}
 		catch (IOException e) {
 			throw new APIException(e);
@@ -246,17 +251,7 @@ public class DocumentUtil {
 	 * @return a ReferenceTerm object
 	 */
 	public static ReferenceTerm getReferenceTerm(String globalPropertyName) {
-		String mapping = getGlobalProperty(globalPropertyName);
-		if (StringUtils.isBlank(mapping)) {
-			throw new APIException(globalPropertyName + " global property value is required");
-		}
-		
-		String[] fields = StringUtils.split(mapping, ":");
-		if (fields.length != 4) {
-			throw new APIException("Invalid value for the " + globalPropertyName + " global property");
-		}
-		
-		return new ReferenceTerm(fields[0], fields[1], fields[2], fields[3]);
+		return CaseReportConfig.get().getReferenceTerm(globalPropertyName);
 	}
 	
 	/**
@@ -265,20 +260,7 @@ public class DocumentUtil {
 	 * @return the OID of mapped HIE identifier
 	 */
 	public static String getMappedHieIdentifier(String idTypeUuid) {
-		String mappingsStr = Context.getAdministrationService().getGlobalProperty(DocumentConstants.GP_ID_MAPPINGS);
-		if (StringUtils.isBlank(mappingsStr)) {
-			throw new APIException(DocumentConstants.GP_ID_MAPPINGS + " global property value needs to be set");
-		}
-		
-		String[] mappings = StringUtils.split(mappingsStr, CaseReportConstants.CHAR_COMMA);
-		for (String mapping : mappings) {
-			String[] localIdAndHieId = StringUtils.split(mapping, CaseReportConstants.CHAR_COLON);
-			if (idTypeUuid.equalsIgnoreCase(localIdAndHieId[0].trim())) {
-				return localIdAndHieId[1].trim();
-			}
-		}
-		
-		throw new APIException("No HIE identifier mapped to identifier type with uuid: " + idTypeUuid);
+		return CaseReportConfig.get().getMappedHieIdentifier(idTypeUuid);
 	}
-	
+
 }
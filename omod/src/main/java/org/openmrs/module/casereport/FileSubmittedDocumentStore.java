@@ -0,0 +1,87 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.casereport;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A {@link SubmittedDocumentStore} that saves each document in its own uncompressed file in a
+ * directory for the resolution date of the case report. A document is streamed to a temporary file
+ * in the same directory which is then renamed to the document file so that a partially written
+ * document is never visible.
+ * 
+ * @see DocumentUtil#getSubmittedCaseReportFile(CaseReport)
+ */
+public class FileSubmittedDocumentStore implements SubmittedDocumentStore {
+	
+	private static final String TEMP_FILE_EXT = ".tmp";
+	
+	private static final int BUFFER_SIZE = 16 * 1024;
+	
+	/**
+	 * @see SubmittedDocumentStore#save(CaseReport, DocumentWriter)
+	 * <strong>Should</strong> write the document to the file for the case report
+	 * <strong>Should</strong> not leave a file behind if the writer fails
+	 */
+	@Override
+	public void save(CaseReport caseReport, DocumentWriter writer) throws IOException {
+		File docFile = DocumentUtil.getSubmittedCaseReportFile(caseReport);
+		File dir = docFile.getParentFile();
+		if (!dir.exists() && !dir.mkdirs() && !dir.exists()) {
+			throw new IOException("Failed to create the directory " + dir);
+		}
+		
+		File tempFile = File.createTempFile(caseReport.getUuid(), TEMP_FILE_EXT, dir);
+		boolean saved = false;
+		try {
+			try (FileChannel channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.WRITE)) {
+				OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+				writer.write(out);
+				out.flush();
+				channel.force(false);
+			}
+			
+			try {
+				Files.move(tempFile.toPath(), docFile.toPath(), StandardCopyOption.ATOMIC_MOVE,
+				    StandardCopyOption.REPLACE_EXISTING);
+			}
+			catch (AtomicMoveNotSupportedException e) {
+				Files.move(tempFile.toPath(), docFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			saved = true;
+		}
+		finally {
+			if (!saved) {
+				Files.deleteIfExists(tempFile.toPath());
+			}
+		}
+	}
+	
+	/**
+	 * @see SubmittedDocumentStore#read(CaseReport)
+	 */
+	@Override
+	public InputStream read(CaseReport caseReport) throws IOException {
+		return new BufferedInputStream(new FileInputStream(DocumentUtil.getSubmittedCaseReportFile(caseReport)));
+	}
+
+}
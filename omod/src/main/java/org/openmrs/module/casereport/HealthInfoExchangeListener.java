@@ -9,39 +9,35 @@
  */
 package org.openmrs.module.casereport;
 
-import java.io.File;
+
+import java.io.IOException;
+import java.io.OutputStream;
 
 import javax.xml.bind.JAXBElement;
-import javax.xml.transform.Result;
+import javax.xml.transform.stream.StreamResult;
 
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.lang.StringUtils;
-import org.apache.commons.lang3.SystemUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.codehaus.jackson.map.ObjectMapper;
-import org.dcm4chee.xds2.common.XDSConstants;
 import org.dcm4chee.xds2.infoset.ihe.ObjectFactory;
 import org.dcm4chee.xds2.infoset.ihe.ProvideAndRegisterDocumentSetRequestType;
-import org.dcm4chee.xds2.infoset.rim.RegistryError;
-import org.dcm4chee.xds2.infoset.rim.RegistryResponseType;
 import org.openmrs.api.APIException;
 import org.openmrs.api.context.Context;
+import org.openmrs.module.casereport.api.CaseReportService;
 import org.openmrs.module.casereport.api.CaseReportSubmittedEvent;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationEvent;
 import org.springframework.context.ApplicationListener;
 import org.springframework.stereotype.Component;
-import org.springframework.ws.client.core.WebServiceMessageCallback;
 import org.springframework.ws.client.core.WebServiceTemplate;
-import org.springframework.xml.transform.StringResult;
 
 /***
  * An instance of this class listens for event fired when a case report is submitted so that it can
- * generate and submit a CDA message to the HIE
+ * generate a CDA message and add it to the outbox from where it is delivered to the HIE by the
+ * {@link SubmissionDispatcher}
  */
 @Component
-public class HealthInfoExchangeListener implements ApplicationListener<CaseReportSubmittedEvent> {
+public class HealthInfoExchangeListener implements ApplicationListener<CaseReportSubmittedEvent>, InitializingBean {
 	
 	protected final Log log = LogFactory.getLog(this.getClass());
 	
@@ -51,7 +47,16 @@ public class HealthInfoExchangeListener implements ApplicationListener<CaseRepor
 	private WebServiceTemplate webServiceTemplate;
 	
 	@Autowired
-	private WebServiceMessageCallback messageCallback;
+	private SubmittedDocumentStore documentStore;
+	
+	/**
+	 * @see InitializingBean#afterPropertiesSet()
+	 */
+	@Override
+	public void afterPropertiesSet() {
+		//The documents are generated by this listener, so the CDA formatter is initialized upfront
+		DocumentToolkit.prewarm();
+	}
 	
 	/**
 	 * @see ApplicationListener#onApplicationEvent(ApplicationEvent)
@@ -61,51 +66,30 @@ public class HealthInfoExchangeListener implements ApplicationListener<CaseRepor
 		
 		try {
 			CaseReport caseReport = (CaseReport) event.getSource();
-			CaseReportForm form = new ObjectMapper().readValue(caseReport.getReportForm(), CaseReportForm.class);
-			form.setReportUuid(caseReport.getUuid());
-			form.setReportDate(caseReport.getDateCreated());
+			CaseReportForm form = DocumentUtil.getSubmittedCaseReportForm(caseReport);
 			ProvideAndRegisterDocumentSetRequestType docRequest = new ProvideAndRegisterDocGenerator(form).generate();
-			JAXBElement rootElement = objectFactory.createProvideAndRegisterDocumentSetRequest(docRequest);
+			final JAXBElement rootElement = objectFactory.createProvideAndRegisterDocumentSetRequest(docRequest);
 			
 			if (log.isDebugEnabled()) {
-				log.debug("Saving Case report document to the file system.....");
+				log.debug("Archiving Case report document.....");
 			}
 			
-			File docFile = DocumentUtil.getSubmittedCaseReportFile(caseReport);
-			Result out = new StringResult();
-			webServiceTemplate.getMarshaller().marshal(rootElement, out);
-			FileUtils.writeStringToFile(docFile, out.toString(), DocumentConstants.ENCODING);
-			
-			if (log.isDebugEnabled()) {
-				log.debug("Case report document successfully saved to the file system");
-			}
-			
-			if (log.isDebugEnabled()) {
-				log.debug("Sending Case report document.....");
-			}
-			
-			String url = Context.getAdministrationService().getGlobalProperty(DocumentConstants.GP_OPENHIM_URL);
-			Object response = webServiceTemplate.marshalSendAndReceive(url, rootElement, messageCallback);
-			String lf = SystemUtils.LINE_SEPARATOR;
-			RegistryResponseType regResp = ((JAXBElement<RegistryResponseType>) response).getValue();
-			if (!XDSConstants.XDS_B_STATUS_SUCCESS.equals(regResp.getStatus())) {
-				StringBuffer sb = new StringBuffer();
-				if (regResp.getRegistryErrorList() != null && regResp.getRegistryErrorList().getRegistryError() != null) {
-					for (RegistryError re : regResp.getRegistryErrorList().getRegistryError()) {
-						sb.append("Severity: "
-						        + (StringUtils.isNotBlank(re.getSeverity()) ? re.getSeverity().substring(
-						            re.getSeverity().lastIndexOf(":") + 1) : "?") + ", Code: "
-						        + (StringUtils.isNotBlank(re.getErrorCode()) ? re.getErrorCode() : "?") + ", Message: "
-						        + (StringUtils.isNotBlank(re.getCodeContext()) ? re.getCodeContext() : "?") + lf);
-					}
-				}
+			//The document is marshalled straight to the store instead of being built as a string first
+			documentStore.save(caseReport, new SubmittedDocumentStore.DocumentWriter() {
 				
-				throw new APIException(sb.toString());
-			}
+				@Override
+				public void write(OutputStream out) throws IOException {
+					webServiceTemplate.getMarshaller().marshal(rootElement, new StreamResult(out));
+				}
+			});
 			
 			if (log.isDebugEnabled()) {
-				log.debug("Case report document successfully sent");
+				log.debug("Case report document successfully archived");
 			}
+			
+			//The document is delivered asynchronously by the dispatcher, enqueuing it in the same
+			//transaction as the submission ensures that it isn't lost if the HIE is unreachable
+			Context.getService(CaseReportService.class).saveSubmissionOutboxItem(new SubmissionOutboxItem(caseReport));
 		}
 		catch (Exception e) {
 			
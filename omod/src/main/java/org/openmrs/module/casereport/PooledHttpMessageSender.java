@@ -0,0 +1,99 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.casereport;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.springframework.ws.transport.WebServiceConnection;
+import org.springframework.ws.transport.http.HttpComponentsMessageSender;
+
+/**
+ * A message sender that sends the case report documents to the HIE over a pool of persistent
+ * connections so that consecutive submissions don't each pay for a new TCP and TLS handshake. The
+ * pool size, timeouts and the time after which idle connections are evicted are read from global
+ * properties when the first connection is created, changes to them take effect after a restart.
+ */
+public class PooledHttpMessageSender extends HttpComponentsMessageSender {
+	
+	protected final Log log = LogFactory.getLog(this.getClass());
+	
+	private volatile CloseableHttpClient pooledHttpClient;
+	
+	/**
+	 * @see HttpComponentsMessageSender#createConnection(URI)
+	 * <strong>Should</strong> create the http client from the global properties
+	 * <strong>Should</strong> reuse the http client for subsequent connections
+	 */
+	@Override
+	public WebServiceConnection createConnection(URI uri) throws IOException {
+		if (pooledHttpClient == null) {
+			synchronized (this) {
+				if (pooledHttpClient == null) {
+					CloseableHttpClient httpClient = createHttpClient();
+					setHttpClient(httpClient);
+					pooledHttpClient = httpClient;
+				}
+			}
+		}
+		
+		return super.createConnection(uri);
+	}
+	
+	/**
+	 * @see HttpComponentsMessageSender#destroy()
+	 */
+	@Override
+	public void destroy() throws Exception {
+		if (pooledHttpClient != null) {
+			//Also stops the idle connection evictor thread
+			pooledHttpClient.close();
+		} else {
+			super.destroy();
+		}
+	}
+	
+	/**
+	 * Creates a pooling http client configured with the values of the respective global properties
+	 * 
+	 * @return the CloseableHttpClient object
+	 */
+	private CloseableHttpClient createHttpClient() {
+		int maxConnections = CaseReportUtil.getPositiveIntegerGlobalProperty(DocumentConstants.GP_HIE_MAX_CONNECTIONS,
+		    DocumentConstants.DEFAULT_HIE_MAX_CONNECTIONS);
+		int connectTimeout = CaseReportUtil.getPositiveIntegerGlobalProperty(DocumentConstants.GP_HIE_CONNECT_TIMEOUT,
+		    DocumentConstants.DEFAULT_HIE_CONNECT_TIMEOUT);
+		int readTimeout = CaseReportUtil.getPositiveIntegerGlobalProperty(DocumentConstants.GP_HIE_READ_TIMEOUT,
+		    DocumentConstants.DEFAULT_HIE_READ_TIMEOUT);
+		int idleTimeout = CaseReportUtil.getPositiveIntegerGlobalProperty(DocumentConstants.GP_HIE_IDLE_CONNECTION_TIMEOUT,
+		    DocumentConstants.DEFAULT_HIE_IDLE_CONNECTION_TIMEOUT);
+		
+		if (log.isDebugEnabled()) {
+			log.debug("Creating http client with max connections: " + maxConnections + ", connect timeout: "
+			        + connectTimeout + "s, read timeout: " + readTimeout + "s, idle timeout: " + idleTimeout + "s");
+		}
+		
+		RequestConfig requestConfig = RequestConfig.custom().setConnectTimeout(connectTimeout * 1000)
+		        .setConnectionRequestTimeout(connectTimeout * 1000).setSocketTimeout(readTimeout * 1000).build();
+		
+		//The interceptor removes the content length header set by the message which
+		//the client otherwise rejects since it sets it itself
+		return HttpClientBuilder.create().useSystemProperties().setMaxConnPerRoute(maxConnections)
+		        .setMaxConnTotal(maxConnections).setDefaultRequestConfig(requestConfig).evictExpiredConnections()
+		        .evictIdleConnections((long) idleTimeout, TimeUnit.SECONDS)
+		        .addInterceptorFirst(new RemoveSoapHeadersInterceptor()).build();
+	}
+}
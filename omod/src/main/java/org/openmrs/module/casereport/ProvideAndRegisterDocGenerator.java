@@ -11,9 +11,9 @@ package org.openmrs.module.casereport;
 
 import static org.dcm4chee.xds2.infoset.ihe.ProvideAndRegisterDocumentSetRequestType.Document;
 
-import java.io.ByteArrayOutputStream;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
@@ -40,20 +40,15 @@ import org.dcm4chee.xds2.infoset.rim.RegistryPackageType;
 import org.dcm4chee.xds2.infoset.rim.SubmitObjectsRequest;
 import org.dcm4chee.xds2.infoset.util.InfosetUtil;
 import org.marc.everest.datatypes.TS;
-import org.marc.everest.formatters.xml.datatypes.r1.DatatypeFormatter;
-import org.marc.everest.formatters.xml.datatypes.r1.R1FormatterCompatibilityMode;
-import org.marc.everest.formatters.xml.its1.XmlIts1Formatter;
-import org.marc.everest.rmim.uv.cdar2.pocd_mt000040uv.ClinicalDocument;
 import org.marc.everest.rmim.uv.cdar2.vocabulary.AdministrativeGender;
 import org.openmrs.PersonName;
 import org.openmrs.api.APIException;
-import org.openmrs.api.AdministrationService;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.casereport.api.CaseReportService;
 import org.springframework.http.MediaType;
 
 /**
- * Generates an XDS.b ProvideAndRegisterDocumentSetRequestType object from a CaseReportForm
+ * Generates an XDS.b ProvideAndRegisterDocumentSetRequestType object from one or more CaseReportForms
  */
 public final class ProvideAndRegisterDocGenerator {
 	
@@ -61,57 +56,239 @@ public final class ProvideAndRegisterDocGenerator {
 	
 	private int idCounter;
 	
-	private ObjectFactory objectFactory = new ObjectFactory();
+	private static final ObjectFactory objectFactory = new ObjectFactory();
 	
-	private CaseReportForm form;
+	private List<CaseReportForm> forms;
 	
 	/**
 	 * @param form the CaseReportForm from which to generate for a document set request
 	 */
 	ProvideAndRegisterDocGenerator(CaseReportForm form) {
-		this.form = form;
+		this(Collections.singletonList(form));
+	}
+	
+	/**
+	 * Creates a generator for a document set request that packs a document for each of the
+	 * specified forms into a single submission set, since a submission set is for a single patient
+	 * all the forms must be for the same patient.
+	 * 
+	 * @param forms the CaseReportForms from which to generate for a document set request
+	 */
+	ProvideAndRegisterDocGenerator(List<CaseReportForm> forms) {
+		this.forms = forms;
 	}
 	
 	/**
 	 * Generates a ProvideAndRegisterDocumentSetRequestType object from its backing CaseReportForm
-	 * object
+	 * objects, each document and its association to the submission set get unique ids
 	 * 
 	 * @return ProvideAndRegisterDocumentSetRequestType object
 	 * @throws Exception
+	 * <strong>Should</strong> generate a document set request with a document for each form
+	 * <strong>Should</strong> fail if the forms are for different patients
 	 */
 	public ProvideAndRegisterDocumentSetRequestType generate() throws JAXBException, ParseException {
 		if (log.isDebugEnabled()) {
 			CaseReportService crs = Context.getService(CaseReportService.class);
-			CaseReport cr = crs.getCaseReportByUuid(form.getReportUuid());
-			log.debug("Generating ProvideAndRegisterDocumentSetRequest for: " + cr);
+			for (CaseReportForm form : forms) {
+				CaseReport cr = crs.getCaseReportByUuid(form.getReportUuid());
+				log.debug("Generating ProvideAndRegisterDocumentSetRequest for: " + cr);
+			}
 		}
 		
 		//reset in case this method is called multiple times on the same instance
 		idCounter = 0;
 		
-		//Create DocumentEntry/ExtrinsicObject
+		SubmitObjectsRequest registryRequest = new SubmitObjectsRequest();
+		registryRequest.setRegistryObjectList(new RegistryObjectListType());
+		ProvideAndRegisterDocumentSetRequestType docRequest = new ProvideAndRegisterDocumentSetRequestType();
+		docRequest.setSubmitObjectsRequest(registryRequest);
+		CaseReportConfig config = CaseReportConfig.get();
+		String orgOID = config.getOrganisationOID();
+		ReferenceTerm term = config.getReferenceTerm(DocumentConstants.GP_CONCEPT_MAPPING_PUBLIC_HEALTH_CR);
+		List<String> docIds = new ArrayList<>(forms.size());
+		String patientId = null;
+		for (CaseReportForm form : forms) {
+			String docId = DocumentConstants.XDS_DOC_ID_PREFIX + (docIds.size() + 1);
+			String openHieId = config.getMappedHieIdentifier(form.getIdentifierType().getUuid());
+			String docPatientId = String.format(config.getPatientIdFormat(), openHieId, form.getPatientIdentifier()
+			        .getValue().toString());
+			if (patientId == null) {
+				patientId = docPatientId;
+			} else if (!patientId.equals(docPatientId)) {
+				throw new APIException("All the documents in a submission set must be for the same patient");
+			}
+			
+			addObjectToRequest(registryRequest, createDocumentEntry(form, docId, patientId, term, config));
+			
+			Document document = new Document();
+			document.setId(docId);
+			document.setValue(createCdaDocument(form));
+			docRequest.getDocument().add(document);
+			docIds.add(docId);
+		}
+		
+		//Create RegistryPackage/SubmissionSet
+		RegistryPackageType regPackage = new RegistryPackageType();
+		regPackage.setId(DocumentConstants.XDS_SUBSET_ID);
+		regPackage.setObjectType(DocumentConstants.XDS_SYMBOLIC_LINKS_PREFIX + DocumentConstants.XDS_REG_PACKAGE);
+		regPackage.setName(createName(DocumentConstants.TEXT_TITLE));
+		String dateSubmitted = DocumentUtil.createTS(new Date()).getValue();
+		InfosetUtil.addOrOverwriteSlot(regPackage, XDSConstants.SLOT_NAME_SUBMISSION_TIME, dateSubmitted);
+		addClassification(regPackage, term.getCode(), term.getCodeSystem(),
+		    XDSConstants.UUID_XDSSubmissionSet_contentTypeCode, term.getName());
+		
+		addExternalIdentifier(regPackage, patientId, XDSConstants.UUID_XDSSubmissionSet_patientId,
+		    DocumentConstants.TEXT_SUBSET_PATIENT_ID);
+		
+		String subUniqueId = generateOIDFromUuid(UUID.randomUUID());
+		addExternalIdentifier(regPackage, subUniqueId, XDSConstants.UUID_XDSSubmissionSet_uniqueId,
+		    DocumentConstants.TEXT_SUBSET_UNIQUE_ID);
+		
+		addExternalIdentifier(regPackage, orgOID, XDSConstants.UUID_XDSSubmissionSet_sourceId,
+		    DocumentConstants.TEXT_SUBSET_SOURCE_ID);
+		
+		addObjectToRequest(registryRequest, regPackage);
+		
+		//Create the classification of the TX
+		ClassificationType classification = new ClassificationType();
+		classification.setId(DocumentConstants.XDS_CLASSIFICATION_ID);
+		classification.setClassificationNode(XDSConstants.UUID_XDSSubmissionSet);
+		classification.setClassifiedObject(DocumentConstants.XDS_SUBSET_ID);
+		classification.setObjectType(DocumentConstants.XDS_SYMBOLIC_LINKS_PREFIX + DocumentConstants.XDS_CLASSIFICATION);
+		addObjectToRequest(registryRequest, classification);
+		
+		//Create the associations that link the DocumentEntries to the RegistryPackage
+		for (int i = 0; i < docIds.size(); i++) {
+			AssociationType1 assoc = new AssociationType1();
+			assoc.setId(DocumentConstants.XDS_ASSOCIATION_ID_PREFIX + (i + 1));
+			assoc.setAssociationType(XDSConstants.HAS_MEMBER);
+			assoc.setObjectType(DocumentConstants.XDS_SYMBOLIC_LINKS_PREFIX + DocumentConstants.XDS_ASSOCIATION);
+			assoc.setSourceObject(DocumentConstants.XDS_SUBSET_ID);
+			assoc.setTargetObject(docIds.get(i));
+			InfosetUtil.addOrOverwriteSlot(assoc, XDSConstants.SLOT_NAME_SUBMISSIONSET_STATUS,
+			    DocumentConstants.TEXT_ORIGINAL);
+			addObjectToRequest(registryRequest, assoc);
+		}
+		
+		return docRequest;
+	}
+	
+	/**
+	 * Merges the specified single document set requests into one request by adding the document
+	 * entries and the documents of the other requests to the submission set of the first one, this
+	 * way the documents that were archived when the reports were submitted are sent as is instead of
+	 * being regenerated. The document entries and their classifications and external identifiers
+	 * get new ids since the ids are only unique within a request, all the requests must be for the
+	 * same patient.
+	 * 
+	 * @param requests the document set requests to merge, the first one is modified and returned
+	 * @return the merged document set request
+	 * <strong>Should</strong> add the documents of the other requests to the submission set of the first
+	 * <strong>Should</strong> fail if the requests are for different patients
+	 */
+	static ProvideAndRegisterDocumentSetRequestType merge(List<ProvideAndRegisterDocumentSetRequestType> requests) {
+		ProvideAndRegisterDocumentSetRequestType merged = requests.get(0);
+		List<JAXBElement<? extends IdentifiableType>> mergedObjects = merged.getSubmitObjectsRequest()
+		        .getRegistryObjectList().getIdentifiable();
+		int docCount = getDocumentEntries(merged).size();
+		String patientId = getPatientId(getDocumentEntries(merged).get(0));
+		for (ProvideAndRegisterDocumentSetRequestType request : requests.subList(1, requests.size())) {
+			for (ExtrinsicObjectType docEntry : getDocumentEntries(request)) {
+				if (!patientId.equals(getPatientId(docEntry))) {
+					throw new APIException("All the documents in a submission set must be for the same patient");
+				}
+				
+				String oldDocId = docEntry.getId();
+				String docId = DocumentConstants.XDS_DOC_ID_PREFIX + (++docCount);
+				docEntry.setId(docId);
+				for (ClassificationType classification : docEntry.getClassification()) {
+					classification.setId(docId + "_" + classification.getId());
+					classification.setClassifiedObject(docId);
+				}
+				for (ExternalIdentifierType extId : docEntry.getExternalIdentifier()) {
+					extId.setId(docId + "_" + extId.getId());
+					extId.setRegistryObject(docId);
+				}
+				//The document entries go before the submission set like in a generated request
+				mergedObjects.add(docCount - 1, objectFactory.createExtrinsicObject(docEntry));
+				
+				for (Document document : request.getDocument()) {
+					if (oldDocId.equals(document.getId())) {
+						document.setId(docId);
+						merged.getDocument().add(document);
+					}
+				}
+				
+				AssociationType1 assoc = new AssociationType1();
+				assoc.setId(DocumentConstants.XDS_ASSOCIATION_ID_PREFIX + docCount);
+				assoc.setAssociationType(XDSConstants.HAS_MEMBER);
+				assoc.setObjectType(DocumentConstants.XDS_SYMBOLIC_LINKS_PREFIX + DocumentConstants.XDS_ASSOCIATION);
+				assoc.setSourceObject(DocumentConstants.XDS_SUBSET_ID);
+				assoc.setTargetObject(docId);
+				InfosetUtil.addOrOverwriteSlot(assoc, XDSConstants.SLOT_NAME_SUBMISSIONSET_STATUS,
+				    DocumentConstants.TEXT_ORIGINAL);
+				mergedObjects.add(objectFactory.createAssociation(assoc));
+			}
+		}
+		
+		return merged;
+	}
+	
+	private static List<ExtrinsicObjectType> getDocumentEntries(ProvideAndRegisterDocumentSetRequestType request) {
+		List<ExtrinsicObjectType> docEntries = new ArrayList<>();
+		for (JAXBElement<? extends IdentifiableType> element : request.getSubmitObjectsRequest().getRegistryObjectList()
+		        .getIdentifiable()) {
+			if (element.getValue() instanceof ExtrinsicObjectType) {
+				docEntries.add((ExtrinsicObjectType) element.getValue());
+			}
+		}
+		
+		return docEntries;
+	}
+	
+	private static String getPatientId(ExtrinsicObjectType docEntry) {
+		for (ExternalIdentifierType extId : docEntry.getExternalIdentifier()) {
+			if (XDSConstants.UUID_XDSDocumentEntry_patientId.equals(extId.getIdentificationScheme())) {
+				return extId.getValue();
+			}
+		}
+		
+		throw new APIException("No patient id found for the document entry " + docEntry.getId());
+	}
+	
+	/**
+	 * Creates the DocumentEntry/ExtrinsicObject for the specified form
+	 * 
+	 * @param form the CaseReportForm object
+	 * @param docId the id of the document entry
+	 * @param patientId the patient id in the HIE
+	 * @param term the reference term for the class code
+	 * @param config the CaseReportConfig snapshot to read the global property values from
+	 * @return the ExtrinsicObjectType object
+	 * @throws JAXBException
+	 * @throws ParseException
+	 */
+	private ExtrinsicObjectType createDocumentEntry(CaseReportForm form, String docId, String patientId,
+	                                                ReferenceTerm term, CaseReportConfig config) throws JAXBException,
+	    ParseException {
 		ExtrinsicObjectType extrinsicObj = new ExtrinsicObjectType();
-		extrinsicObj.setId(DocumentConstants.XDS_DOC_ID);
+		extrinsicObj.setId(docId);
 		extrinsicObj.setMimeType(MediaType.TEXT_XML.toString());
 		extrinsicObj.setObjectType(XDSConstants.UUID_XDSDocumentEntry);
 		extrinsicObj.setName(createName(DocumentConstants.TEXT_TITLE));
 		String reportDate = DocumentUtil.createTS(form.getReportDate()).getValue();
 		InfosetUtil.addOrOverwriteSlot(extrinsicObj, XDSConstants.SLOT_NAME_CREATION_TIME, reportDate);
 		InfosetUtil.addOrOverwriteSlot(extrinsicObj, XDSConstants.SLOT_NAME_LANGUAGE_CODE, DocumentConstants.LANGUAGE_CODE);
-		AdministrationService as = Context.getAdministrationService();
-		String openHieId = DocumentUtil.getMappedHieIdentifier(form.getIdentifierType().getUuid());
-		String patientId = String.format(DocumentUtil.getPatientIdFormat(), openHieId, form.getPatientIdentifier()
-		        .getValue().toString());
 		InfosetUtil.addOrOverwriteSlot(extrinsicObj, XDSConstants.SLOT_NAME_SOURCE_PATIENT_ID, patientId);
 		
-		String[] sourcePatientInfo = createPatientInfo(patientId);
+		String[] sourcePatientInfo = createPatientInfo(form, patientId);
 		InfosetUtil.addOrOverwriteSlot(extrinsicObj, XDSConstants.SLOT_NAME_SOURCE_PATIENT_INFO, sourcePatientInfo);
 		
-		String orgOID = DocumentUtil.getOrganisationOID();
 		String providerId = form.getSubmitter().getValue().toString();
 		PersonName personName = DocumentUtil.getPersonNameForProvider(providerId);
-		String authorId = String.format(DocumentConstants.PROV_ID_FORMAT, orgOID, personName.getGivenName(),
-		    personName.getFamilyName(), providerId);
+		String authorId = String.format(DocumentConstants.PROV_ID_FORMAT, config.getOrganisationOID(),
+		    personName.getGivenName(), personName.getFamilyName(), providerId);
 		ClassificationType authorClassification = new ClassificationType();
 		authorClassification.setId(DocumentConstants.DOC_ID_PREFIX + idCounter++);
 		authorClassification.setClassifiedObject(extrinsicObj.getId());
@@ -120,18 +297,17 @@ public final class ProvideAndRegisterDocGenerator {
 		InfosetUtil.addOrOverwriteSlot(authorClassification, XDSConstants.SLOT_NAME_AUTHOR_PERSON, authorId);
 		extrinsicObj.getClassification().add(authorClassification);
 		
-		ReferenceTerm term = DocumentUtil.getReferenceTerm(DocumentConstants.GP_CONCEPT_MAPPING_PUBLIC_HEALTH_CR);
 		addClassification(extrinsicObj, term.getCode(), term.getCodeSystem(), XDSConstants.UUID_XDSDocumentEntry_classCode,
 		    term.getName());
 		
-		String confidentiality = DocumentUtil.getConfidentialityCode();
+		String confidentiality = config.getConfidentialityCode();
 		addClassification(extrinsicObj, confidentiality, DocumentConstants.CODE_SYSTEM_CONFIDENTIALITY,
 		    XDSConstants.UUID_XDSDocumentEntry_confidentialityCode,
 		    DocumentUtil.getConfidentialityCodeNameMap().get(confidentiality));
 		
-		String facilityTypeCode = as.getGlobalProperty(DocumentConstants.GP_FACILITY_TYPE_CODE);
-		String facilityTypeCodeScheme = as.getGlobalProperty(DocumentConstants.GP_FACILITY_TYPE_CODING_SCHEME);
-		String facilityTypeName = as.getGlobalProperty(DocumentConstants.GP_FACILITY_TYPE_NAME);
+		String facilityTypeCode = config.getGlobalProperty(DocumentConstants.GP_FACILITY_TYPE_CODE);
+		String facilityTypeCodeScheme = config.getGlobalProperty(DocumentConstants.GP_FACILITY_TYPE_CODING_SCHEME);
+		String facilityTypeName = config.getGlobalProperty(DocumentConstants.GP_FACILITY_TYPE_NAME);
 		addClassification(extrinsicObj, facilityTypeCode, facilityTypeCodeScheme,
 		    XDSConstants.UUID_XDSDocumentEntry_healthCareFacilityTypeCode, facilityTypeName);
 		
@@ -139,9 +315,9 @@ public final class ProvideAndRegisterDocGenerator {
 		    DocumentConstants.CODE_SYSTEM_FORMAT_CODE_SET, XDSConstants.UUID_XDSDocumentEntry_formatCode,
 		    DocumentConstants.TEXT_FORMAT);
 		
-		String practiceCode = as.getGlobalProperty(DocumentConstants.GP_PRACTICE_CODE);
-		String practiceCodingScheme = as.getGlobalProperty(DocumentConstants.GP_PRACTICE_CODING_SCHEME);
-		String practiceName = as.getGlobalProperty(DocumentConstants.GP_PRACTICE_NAME);
+		String practiceCode = config.getGlobalProperty(DocumentConstants.GP_PRACTICE_CODE);
+		String practiceCodingScheme = config.getGlobalProperty(DocumentConstants.GP_PRACTICE_CODING_SCHEME);
+		String practiceName = config.getGlobalProperty(DocumentConstants.GP_PRACTICE_NAME);
 		addClassification(extrinsicObj, practiceCode, practiceCodingScheme,
 		    XDSConstants.UUID_XDSDocumentEntry_practiceSettingCode, practiceName);
 		
@@ -155,79 +331,30 @@ public final class ProvideAndRegisterDocGenerator {
 		addExternalIdentifier(extrinsicObj, docUniqueId, XDSConstants.UUID_XDSDocumentEntry_uniqueId,
 		    DocumentConstants.TEXT_DOC_UNIQUE_ID);
 		
-		SubmitObjectsRequest registryRequest = new SubmitObjectsRequest();
-		registryRequest.setRegistryObjectList(new RegistryObjectListType());
-		addObjectToRequest(registryRequest, extrinsicObj);
-		
-		//Create RegistryPackage/SubmissionSet
-		RegistryPackageType regPackage = new RegistryPackageType();
-		regPackage.setId(DocumentConstants.XDS_SUBSET_ID);
-		regPackage.setObjectType(DocumentConstants.XDS_SYMBOLIC_LINKS_PREFIX + DocumentConstants.XDS_REG_PACKAGE);
-		regPackage.setName(createName(DocumentConstants.TEXT_TITLE));
-		String dateSubmitted = DocumentUtil.createTS(new Date()).getValue();
-		InfosetUtil.addOrOverwriteSlot(regPackage, XDSConstants.SLOT_NAME_SUBMISSION_TIME, dateSubmitted);
-		addClassification(regPackage, term.getCode(), term.getCodeSystem(),
-		    XDSConstants.UUID_XDSSubmissionSet_contentTypeCode, term.getName());
-		
-		addExternalIdentifier(regPackage, patientId, XDSConstants.UUID_XDSSubmissionSet_patientId,
-		    DocumentConstants.TEXT_SUBSET_PATIENT_ID);
-		
-		String subUniqueId = generateOIDFromUuid(UUID.randomUUID());
-		addExternalIdentifier(regPackage, subUniqueId, XDSConstants.UUID_XDSSubmissionSet_uniqueId,
-		    DocumentConstants.TEXT_SUBSET_UNIQUE_ID);
-		
-		addExternalIdentifier(regPackage, orgOID, XDSConstants.UUID_XDSSubmissionSet_sourceId,
-		    DocumentConstants.TEXT_SUBSET_SOURCE_ID);
-		
-		addObjectToRequest(registryRequest, regPackage);
-		
-		//Create the classification of the TX
-		ClassificationType classification = new ClassificationType();
-		classification.setId(DocumentConstants.XDS_CLASSIFICATION_ID);
-		classification.setClassificationNode(XDSConstants.UUID_XDSSubmissionSet);
-		classification.setClassifiedObject(DocumentConstants.XDS_SUBSET_ID);
-		classification.setObjectType(DocumentConstants.XDS_SYMBOLIC_LINKS_PREFIX + DocumentConstants.XDS_CLASSIFICATION);
-		addObjectToRequest(registryRequest, classification);
-		
-		//Create the association that links the DocumentEntry to the RegistryPackage
-		AssociationType1 assoc = new AssociationType1();
-		assoc.setId(DocumentConstants.XDS_ASSOCIATION_ID);
-		assoc.setAssociationType(XDSConstants.HAS_MEMBER);
-		assoc.setObjectType(DocumentConstants.XDS_SYMBOLIC_LINKS_PREFIX + DocumentConstants.XDS_ASSOCIATION);
-		assoc.setSourceObject(DocumentConstants.XDS_SUBSET_ID);
-		assoc.setTargetObject(DocumentConstants.XDS_DOC_ID);
-		InfosetUtil.addOrOverwriteSlot(assoc, XDSConstants.SLOT_NAME_SUBMISSIONSET_STATUS, DocumentConstants.TEXT_ORIGINAL);
-		addObjectToRequest(registryRequest, assoc);
-		
-		ProvideAndRegisterDocumentSetRequestType docRequest = new ProvideAndRegisterDocumentSetRequestType();
-		docRequest.setSubmitObjectsRequest(registryRequest);
-		ClinicalDocument cdaDocument = new ClinicalDocumentGenerator(form).generate();
-		
-		XmlIts1Formatter fmtr = new XmlIts1Formatter();
-		//This instructs the XML ITS1 Formatter we want to use CDA datatypes
-		fmtr.getGraphAides().add(new DatatypeFormatter(R1FormatterCompatibilityMode.ClinicalDocumentArchitecture));
-		//The cda is ~8KB, might as well initialize the
-		//byte array to a fairly larger size
-		ByteArrayOutputStream cdaOutput = new ByteArrayOutputStream(10240);
-		fmtr.graph(cdaOutput, cdaDocument);
-		
-		Document document = new Document();
-		document.setId(DocumentConstants.XDS_DOC_ID);
-		document.setValue(cdaOutput.toByteArray());
-		docRequest.getDocument().add(document);
-		
-		return docRequest;
+		return extrinsicObj;
+	}
+	
+	/**
+	 * Generates the CDA document for the specified form
+	 * 
+	 * @param form the CaseReportForm object
+	 * @return the bytes of the CDA document
+	 * @throws ParseException
+	 */
+	private byte[] createCdaDocument(CaseReportForm form) throws ParseException {
+		return DocumentToolkit.formatCda(new ClinicalDocumentGenerator(form).generate());
 	}
 	
 	/**
 	 * Creates the source patient info that goes in the sourcePatientInfo slot of the provide and
 	 * register request
 	 * 
+	 * @param form the CaseReportForm object
 	 * @param patientId the patient Id
 	 * @return an array of the patient info
 	 * @throws ParseException
 	 */
-	private String[] createPatientInfo(String patientId) throws ParseException {
+	private String[] createPatientInfo(CaseReportForm form, String patientId) throws ParseException {
 		List<String> patientInfoList = new ArrayList<>(4);
 		patientInfoList.add(String.format(DocumentConstants.PID_3_PATTERN, patientId));
 		String gName = "";
@@ -0,0 +1,133 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.casereport;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * A least recently used cache of the rendered CDA documents of submitted case reports keyed by the
+ * case report uuid. The cache is bounded by the total length of the cached documents rather than
+ * their count since their sizes vary, documents larger than the bound are never cached. Each entry
+ * holds the version tag of the document it was rendered from, a lookup with a different tag is a
+ * miss so that a document that gets replaced is rendered again.
+ */
+@Component
+public class RenderedDocumentCache {
+	
+	private final long maxLength;
+	
+	//Access ordered so that iteration starts with the least recently used entry
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	
+	private long length;
+	
+	private long hits;
+	
+	private long misses;
+	
+	private long evictions;
+	
+	public RenderedDocumentCache() {
+		this(DocumentConstants.RENDERED_DOCUMENT_CACHE_LENGTH);
+	}
+	
+	/**
+	 * @param maxLength the maximum total length of the cached documents
+	 */
+	public RenderedDocumentCache(long maxLength) {
+		this.maxLength = maxLength;
+	}
+	
+	/**
+	 * Gets the cached rendered document for the case report with the specified uuid
+	 * 
+	 * @param uuid the case report uuid
+	 * @param tag the version tag of the saved document
+	 * @return the rendered document or null if none is cached for the tag
+	 * <strong>Should</strong> return null if the cached document has a different tag
+	 */
+	public synchronized String get(String uuid, String tag) {
+		Entry entry = entries.get(uuid);
+		if (entry != null && entry.tag.equals(tag)) {
+			hits++;
+			return entry.contents;
+		}
+		
+		misses++;
+		return null;
+	}
+	
+	/**
+	 * Adds the specified rendered document to the cache, replacing any cached one for the case report
+	 * 
+	 * @param uuid the case report uuid
+	 * @param tag the version tag of the saved document
+	 * @param contents the rendered document
+	 * <strong>Should</strong> evict the least recently used documents when the maximum length is exceeded
+	 * <strong>Should</strong> not cache a document longer than the maximum length
+	 */
+	public synchronized void put(String uuid, String tag, String contents) {
+		Entry previous = entries.remove(uuid);
+		if (previous != null) {
+			length -= previous.contents.length();
+		}
+		if (contents.length() > maxLength) {
+			return;
+		}
+		
+		entries.put(uuid, new Entry(tag, contents));
+		length += contents.length();
+		Iterator<Entry> i = entries.values().iterator();
+		while (length > maxLength && i.hasNext()) {
+			length -= i.next().contents.length();
+			i.remove();
+			evictions++;
+		}
+	}
+	
+	/**
+	 * Removes all the cached documents
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		length = 0;
+	}
+	
+	/**
+	 * @return the cache statistics
+	 */
+	public synchronized Map<String, Object> getStatistics() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("size", entries.size());
+		stats.put("length", length);
+		stats.put("maxLength", maxLength);
+		stats.put("hits", hits);
+		stats.put("misses", misses);
+		stats.put("evictions", evictions);
+		
+		return stats;
+	}
+	
+	private static class Entry {
+		
+		private final String tag;
+		
+		private final String contents;
+		
+		Entry(String tag, String contents) {
+			this.tag = tag;
+			this.contents = contents;
+		}
+	}
+}
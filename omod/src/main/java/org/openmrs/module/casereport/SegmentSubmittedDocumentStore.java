@@ -0,0 +1,483 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.casereport;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A {@link SubmittedDocumentStore} that appends the gzipped documents to large segment files
+ * instead of creating a file per document. Each record in a segment consists of a header with the
+ * case report uuid, the length and the checksum of the compressed document followed by the
+ * compressed document. A new segment is started when the current one reaches the maximum size,
+ * records are never modified, saving a document again for a case report appends a new record
+ * which takes precedence over the earlier one.
+ * <p>
+ * The index of the case report uuids and the locations of their documents is kept in memory, it
+ * takes roughly 200 bytes per case report i.e. about 200MB for a million submitted documents. It is
+ * built the first time the store is used, when a segment is full an index file with the locations of
+ * its records is written next to it so that only the record headers of the last segment and of any
+ * full segment whose index file is missing or invalid need to be scanned. A partially written record
+ * at the end of the last segment is discarded. Documents in full segments are read from memory
+ * mapped segments which never change, those in the last segment are read from its file channel
+ * since it is still being appended to.
+ */
+public class SegmentSubmittedDocumentStore implements SubmittedDocumentStore, Closeable {
+	
+	private static final Log log = LogFactory.getLog(SegmentSubmittedDocumentStore.class);
+	
+	private static final int RECORD_MAGIC = 0x43524453;
+	
+	private static final String SEGMENT_PREFIX = "segment-";
+	
+	private static final String SEGMENT_EXT = ".dat";
+	
+	private static final int INDEX_MAGIC = 0x43524449;
+	
+	private static final String INDEX_EXT = ".idx";
+	
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	
+	private final File dir;
+	
+	private final long maxSegmentSize;
+	
+	private final Map<String, Location> index = new ConcurrentHashMap<>();
+	
+	private final Map<Integer, MappedByteBuffer> mappedSegments = new ConcurrentHashMap<>();
+	
+	//The locations of the records in the active segment, written to its index file when it is full
+	private final Map<String, Location> activeIndex = new LinkedHashMap<>();
+	
+	private volatile boolean opened;
+	
+	private volatile int activeSegment;
+	
+	private volatile FileChannel activeChannel;
+	
+	/**
+	 * @param dir the directory where the segment files are stored
+	 * @param maxSegmentSize the size in bytes after which a new segment is started
+	 */
+	public SegmentSubmittedDocumentStore(File dir, long maxSegmentSize) {
+		if (maxSegmentSize > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("The maximum segment size can't be larger than " + Integer.MAX_VALUE);
+		}
+		this.dir = dir;
+		this.maxSegmentSize = maxSegmentSize;
+	}
+	
+	/**
+	 * @see SubmittedDocumentStore#save(CaseReport, DocumentWriter)
+	 * <strong>Should</strong> save and read back documents
+	 * <strong>Should</strong> start a new segment when the current one is full
+	 * <strong>Should</strong> load the index from existing segments
+	 * <strong>Should</strong> discard a partially written record at the end of the last segment
+	 * <strong>Should</strong> write an index file for a full segment and load the index from it
+	 * <strong>Should</strong> scan a full segment whose index file is invalid
+	 */
+	@Override
+	public void save(CaseReport caseReport, DocumentWriter writer) throws IOException {
+		//Only the compressed document is buffered since its length is needed for the header
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream(4096);
+		try (GZIPOutputStream out = new GZIPOutputStream(compressed, 8192)) {
+			writer.write(out);
+		}
+		byte[] data = compressed.toByteArray();
+		CRC32 crc = new CRC32();
+		crc.update(data);
+		byte[] uuid = caseReport.getUuid().getBytes(UTF_8);
+		ByteBuffer header = ByteBuffer.allocate(16 + uuid.length);
+		header.putInt(RECORD_MAGIC).putInt(uuid.length).put(uuid).putInt(data.length).putInt((int) crc.getValue());
+		header.flip();
+		
+		synchronized (this) {
+			ensureOpen();
+			long position = activeChannel.size();
+			if (position > 0 && position + header.remaining() + data.length > maxSegmentSize) {
+				activeChannel.close();
+				writeIndexFile(activeSegment, activeIndex);
+				activeIndex.clear();
+				activeSegment++;
+				activeChannel = openChannel(activeSegment);
+				position = 0;
+			}
+			
+			activeChannel.position(position);
+			ByteBuffer[] buffers = { header, ByteBuffer.wrap(data) };
+			while (buffers[1].hasRemaining()) {
+				activeChannel.write(buffers);
+			}
+			activeChannel.force(false);
+			Location location = new Location(activeSegment, position + header.capacity(), data.length);
+			activeIndex.put(caseReport.getUuid(), location);
+			index.put(caseReport.getUuid(), location);
+		}
+	}
+	
+	/**
+	 * @see SubmittedDocumentStore#read(CaseReport)
+	 */
+	@Override
+	public InputStream read(CaseReport caseReport) throws IOException {
+		ensureOpen();
+		Location location = index.get(caseReport.getUuid());
+		if (location == null) {
+			throw new FileNotFoundException("No document found for " + caseReport);
+		}
+		
+		FileChannel channel = activeChannel;
+		if (location.segment == activeSegment && channel != null) {
+			//The active segment would have to be mapped again after almost every save, the compressed
+			//document is small enough to be read into memory instead
+			ByteBuffer data = ByteBuffer.allocate(location.length);
+			try {
+				readFully(channel, data, location.offset);
+				return new GZIPInputStream(new ByteArrayInputStream(data.array()));
+			}
+			catch (ClosedChannelException e) {
+				//The segment got full and was closed in the meantime, so it can be mapped
+			}
+		}
+		
+		ByteBuffer data = getMappedSegment(location.segment).duplicate();
+		data.position((int) location.offset);
+		data.limit((int) location.offset + location.length);
+		return new GZIPInputStream(new ByteBufferInputStream(data.slice()));
+	}
+	
+	/**
+	 * @see Closeable#close()
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (activeChannel != null) {
+			activeChannel.close();
+			activeChannel = null;
+		}
+		index.clear();
+		activeIndex.clear();
+		mappedSegments.clear();
+		opened = false;
+	}
+	
+	/**
+	 * Builds the index from the existing segments and opens the last segment for appending
+	 */
+	private void ensureOpen() throws IOException {
+		if (opened) {
+			return;
+		}
+		
+		synchronized (this) {
+			if (opened) {
+				return;
+			}
+			
+			if (!dir.exists() && !dir.mkdirs()) {
+				throw new IOException("Failed to create the directory " + dir);
+			}
+			
+			int segment = 0;
+			while (getSegmentFile(segment + 1).exists()) {
+				segment++;
+			}
+			for (int i = 0; i < segment; i++) {
+				index.putAll(loadIndex(i));
+			}
+			
+			activeSegment = segment;
+			activeChannel = openChannel(segment);
+			long validLength = scan(segment, activeChannel, true, activeIndex);
+			index.putAll(activeIndex);
+			if (validLength < activeChannel.size()) {
+				log.warn("Discarding a partially written record at the end of " + getSegmentFile(segment));
+				activeChannel.truncate(validLength);
+			}
+			
+			if (log.isDebugEnabled()) {
+				log.debug("Loaded " + index.size() + " submitted documents from " + (segment + 1) + " segment(s)");
+			}
+			
+			opened = true;
+		}
+	}
+	
+	/**
+	 * Gets the locations of the records in the specified full segment from its index file, the record
+	 * headers are scanned and the index file is written again if it is missing or invalid
+	 *
+	 * @param segment the segment number
+	 * @return the case report uuids mapped to the locations of their documents
+	 */
+	private Map<String, Location> loadIndex(int segment) throws IOException {
+		File indexFile = getIndexFile(segment);
+		if (indexFile.exists()) {
+			try {
+				return readIndexFile(segment);
+			}
+			catch (IOException e) {
+				log.warn("Ignoring the invalid index file " + indexFile + ", the segment will be scanned", e);
+			}
+		}
+		
+		Map<String, Location> segmentIndex = new LinkedHashMap<>();
+		try (RandomAccessFile file = new RandomAccessFile(getSegmentFile(segment), "r")) {
+			long validLength = scan(segment, file.getChannel(), false, segmentIndex);
+			if (validLength < file.length()) {
+				log.warn("Ignoring " + (file.length() - validLength) + " bytes after a corrupt record at position "
+				        + validLength + " in " + getSegmentFile(segment));
+			}
+		}
+		writeIndexFile(segment, segmentIndex);
+		
+		return segmentIndex;
+	}
+	
+	/**
+	 * Writes the locations of the records in the specified segment to its index file, the file is
+	 * written to a temporary file first and then renamed so that it is never partially written
+	 *
+	 * @param segment the segment number
+	 * @param segmentIndex the case report uuids mapped to the locations of their documents
+	 */
+	private void writeIndexFile(int segment, Map<String, Location> segmentIndex) throws IOException {
+		File indexFile = getIndexFile(segment);
+		File tempFile = new File(dir, indexFile.getName() + ".tmp");
+		CRC32 crc = new CRC32();
+		try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(
+		        new FileOutputStream(tempFile)), crc))) {
+			out.writeInt(INDEX_MAGIC);
+			out.writeInt(segmentIndex.size());
+			for (Map.Entry<String, Location> entry : segmentIndex.entrySet()) {
+				out.writeUTF(entry.getKey());
+				out.writeLong(entry.getValue().offset);
+				out.writeInt(entry.getValue().length);
+			}
+			//The checksum of the entries is the last value in the file and isn't part of itself
+			out.writeInt((int) crc.getValue());
+		}
+		
+		if ((indexFile.exists() && !indexFile.delete()) || !tempFile.renameTo(indexFile)) {
+			throw new IOException("Failed to write the index file " + indexFile);
+		}
+	}
+	
+	/**
+	 * Reads the locations of the records in the specified segment from its index file
+	 *
+	 * @param segment the segment number
+	 * @return the case report uuids mapped to the locations of their documents
+	 * @throws IOException if the index file can't be read or is invalid
+	 */
+	private Map<String, Location> readIndexFile(int segment) throws IOException {
+		File indexFile = getIndexFile(segment);
+		long segmentLength = getSegmentFile(segment).length();
+		CRC32 crc = new CRC32();
+		try (DataInputStream in = new DataInputStream(new CheckedInputStream(new BufferedInputStream(
+		        new FileInputStream(indexFile)), crc))) {
+			if (in.readInt() != INDEX_MAGIC) {
+				throw new IOException("Not an index file");
+			}
+			int count = in.readInt();
+			Map<String, Location> segmentIndex = new LinkedHashMap<>();
+			for (int i = 0; i < count; i++) {
+				String uuid = in.readUTF();
+				long offset = in.readLong();
+				int length = in.readInt();
+				if (offset < 0 || length < 0 || offset + length > segmentLength) {
+					throw new IOException("The location of the document of " + uuid + " is outside the segment");
+				}
+				segmentIndex.put(uuid, new Location(segment, offset, length));
+			}
+			int expectedCrc = (int) crc.getValue();
+			if (in.readInt() != expectedCrc) {
+				throw new IOException("Checksum mismatch");
+			}
+			
+			return segmentIndex;
+		}
+	}
+	
+	/**
+	 * Adds the locations of the records in the specified segment to the specified index
+	 *
+	 * @param segment the segment number
+	 * @param channel the channel of the segment file
+	 * @param verify specifies if the checksums of the records should be verified
+	 * @param segmentIndex the index to add the locations to
+	 * @return the length of the segment up to the end of the last complete record
+	 */
+	private long scan(int segment, FileChannel channel, boolean verify, Map<String, Location> segmentIndex)
+	    throws IOException {
+		long size = channel.size();
+		long position = 0;
+		ByteBuffer intBuffer = ByteBuffer.allocate(8);
+		while (position + 8 <= size) {
+			intBuffer.clear();
+			readFully(channel, intBuffer, position);
+			if (intBuffer.getInt(0) != RECORD_MAGIC) {
+				break;
+			}
+			
+			int uuidLength = intBuffer.getInt(4);
+			if (uuidLength <= 0 || position + 16 + uuidLength > size) {
+				break;
+			}
+			ByteBuffer header = ByteBuffer.allocate(uuidLength + 8);
+			readFully(channel, header, position + 8);
+			String uuid = new String(header.array(), 0, uuidLength, UTF_8);
+			int length = header.getInt(uuidLength);
+			long offset = position + 16 + uuidLength;
+			if (length < 0 || offset + length > size) {
+				break;
+			}
+			
+			if (verify) {
+				ByteBuffer data = ByteBuffer.allocate(length);
+				readFully(channel, data, offset);
+				CRC32 crc = new CRC32();
+				crc.update(data.array());
+				if ((int) crc.getValue() != header.getInt(uuidLength + 4)) {
+					break;
+				}
+			}
+			
+			segmentIndex.put(uuid, new Location(segment, offset, length));
+			position = offset + length;
+		}
+		
+		return position;
+	}
+	
+	/**
+	 * Gets the specified full segment mapped into memory, it is only mapped once since full segments
+	 * are never modified
+	 *
+	 * @param segment the segment number
+	 * @return the mapped segment
+	 */
+	private MappedByteBuffer getMappedSegment(int segment) throws IOException {
+		MappedByteBuffer buffer = mappedSegments.get(segment);
+		if (buffer == null) {
+			synchronized (mappedSegments) {
+				buffer = mappedSegments.get(segment);
+				if (buffer == null) {
+					//The mapping remains valid after the channel is closed
+					try (RandomAccessFile file = new RandomAccessFile(getSegmentFile(segment), "r")) {
+						buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+					}
+					mappedSegments.put(segment, buffer);
+				}
+			}
+		}
+		
+		return buffer;
+	}
+	
+	private FileChannel openChannel(int segment) throws IOException {
+		return new RandomAccessFile(getSegmentFile(segment), "rw").getChannel();
+	}
+	
+	private File getSegmentFile(int segment) {
+		return new File(dir, SEGMENT_PREFIX + String.format("%06d", segment) + SEGMENT_EXT);
+	}
+	
+	private File getIndexFile(int segment) {
+		return new File(dir, SEGMENT_PREFIX + String.format("%06d", segment) + INDEX_EXT);
+	}
+	
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new EOFException();
+			}
+		}
+	}
+	
+	/**
+	 * The location of a compressed document in a segment
+	 */
+	private static class Location {
+		
+		private final int segment;
+		
+		private final long offset;
+		
+		private final int length;
+		
+		Location(int segment, long offset, int length) {
+			this.segment = segment;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+	
+	/**
+	 * An InputStream that reads from a ByteBuffer
+	 */
+	private static class ByteBufferInputStream extends InputStream {
+		
+		private final ByteBuffer buffer;
+		
+		ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+		
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+		}
+		
+		@Override
+		public int read(byte[] bytes, int offset, int length) {
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			int count = Math.min(length, buffer.remaining());
+			buffer.get(bytes, offset, count);
+			return count;
+		}
+		
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+	}
+}
@@ -0,0 +1,391 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.casereport;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.xml.bind.JAXBElement;
+import javax.xml.transform.stream.StreamSource;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang3.SystemUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.dcm4chee.xds2.common.XDSConstants;
+import org.dcm4chee.xds2.infoset.ihe.ObjectFactory;
+import org.dcm4chee.xds2.infoset.ihe.ProvideAndRegisterDocumentSetRequestType;
+import org.dcm4chee.xds2.infoset.rim.RegistryError;
+import org.dcm4chee.xds2.infoset.rim.RegistryResponseType;
+import org.openmrs.api.APIException;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.context.UserContext;
+import org.openmrs.module.casereport.api.CaseReportService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.ws.client.core.WebServiceMessageCallback;
+import org.springframework.ws.client.core.WebServiceTemplate;
+
+/**
+ * Delivers the documents of the submitted case reports in the outbox to the HIE, the documents of
+ * the same patient are sent together in batches of up to the configured batch size and the batches
+ * are sent in parallel up to the configured concurrency. If a batch is rejected, its documents are
+ * sent one at a time. A failed delivery is retried with an exponential backoff and the item is moved
+ * to the dead letter state once the maximum number of attempts is reached.
+ * 
+ * @see SubmissionOutboxItem
+ * @see SubmissionDispatcherTask
+ */
+@Component
+public class SubmissionDispatcher {
+	
+	protected final Log log = LogFactory.getLog(this.getClass());
+	
+	//The maximum number of items fetched from the outbox per run
+	private static final int MAX_ITEMS_PER_RUN = 100;
+	
+	private static final long MAX_RETRY_DELAY = 24 * 60 * 60 * 1000L;
+	
+	private final Lock lock = new ReentrantLock();
+	
+	private ObjectFactory objectFactory = new ObjectFactory();
+	
+	@Autowired
+	private WebServiceTemplate webServiceTemplate;
+	
+	@Autowired
+	private WebServiceMessageCallback messageCallback;
+	
+	@Autowired
+	private SubmittedDocumentStore documentStore;
+	
+	/**
+	 * Delivers the documents of the due outbox items, if another thread is already dispatching the
+	 * call returns immediately.
+	 * 
+	 * @return the number of outbox items that were processed
+	 * <strong>Should</strong> deliver the document and mark the item as delivered
+	 * <strong>Should</strong> schedule a retry for a failed delivery
+	 * <strong>Should</strong> move the item to the dead letter state when the attempts are exhausted
+	 * <strong>Should</strong> send the documents of the same patient in a single request
+	 * <strong>Should</strong> send the documents one at a time if the batch is rejected
+	 */
+	public int dispatch() {
+		if (!lock.tryLock()) {
+			if (log.isDebugEnabled()) {
+				log.debug("Case report documents are already being dispatched");
+			}
+			return 0;
+		}
+		
+		try {
+			CaseReportService service = Context.getService(CaseReportService.class);
+			List<SubmissionOutboxItem> items = service.getDueSubmissionOutboxItems(MAX_ITEMS_PER_RUN);
+			if (items.isEmpty()) {
+				return 0;
+			}
+			
+			String url = CaseReportConfig.get().getOpenHIMUrl();
+			int batchSize = CaseReportUtil.getPositiveIntegerGlobalProperty(DocumentConstants.GP_OUTBOX_BATCH_SIZE,
+			    DocumentConstants.DEFAULT_OUTBOX_BATCH_SIZE);
+			List<SubmissionOutboxItem> batchedItems = new ArrayList<>(items.size());
+			List<Delivery> deliveries = new ArrayList<>();
+			for (List<SubmissionOutboxItem> batch : createBatches(items, batchSize)) {
+				batchedItems.addAll(batch);
+				deliveries.add(createDelivery(batch, url));
+			}
+			
+			int concurrency = CaseReportUtil.getPositiveIntegerGlobalProperty(DocumentConstants.GP_OUTBOX_CONCURRENCY,
+			    DocumentConstants.DEFAULT_OUTBOX_CONCURRENCY);
+			List<Throwable> errors;
+			if (concurrency == 1) {
+				errors = new ArrayList<>(items.size());
+				for (Delivery delivery : deliveries) {
+					errors.addAll(delivery.call());
+				}
+			} else {
+				errors = deliverInParallel(deliveries, Math.min(concurrency, deliveries.size()));
+			}
+			
+			for (int i = 0; i < batchedItems.size(); i++) {
+				updateItem(batchedItems.get(i), errors.get(i));
+			}
+			
+			return items.size();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Groups the specified items into batches of at most the specified size, only the items for
+	 * the same patient are batched together since a submission set is for a single patient. A
+	 * patient rarely has more than one report in the outbox at a time, so most batches hold a single
+	 * item, batching mainly saves round trips when the reports of a patient pile up during an outage
+	 * of the HIE.
+	 * 
+	 * @param items the outbox items to group
+	 * @param batchSize the maximum number of items in a batch
+	 * @return a list of the batches
+	 */
+	private List<List<SubmissionOutboxItem>> createBatches(List<SubmissionOutboxItem> items, int batchSize) {
+		Map<Integer, List<SubmissionOutboxItem>> patientIdAndItemsMap = new LinkedHashMap<>();
+		for (SubmissionOutboxItem item : items) {
+			Integer patientId = item.getCaseReport().getPatient().getPatientId();
+			List<SubmissionOutboxItem> patientItems = patientIdAndItemsMap.get(patientId);
+			if (patientItems == null) {
+				patientItems = new ArrayList<>();
+				patientIdAndItemsMap.put(patientId, patientItems);
+			}
+			patientItems.add(item);
+		}
+		
+		List<List<SubmissionOutboxItem>> batches = new ArrayList<>();
+		for (List<SubmissionOutboxItem> patientItems : patientIdAndItemsMap.values()) {
+			for (int fromIndex = 0; fromIndex < patientItems.size(); fromIndex += batchSize) {
+				batches.add(patientItems.subList(fromIndex, Math.min(fromIndex + batchSize, patientItems.size())));
+			}
+		}
+		
+		return batches;
+	}
+	
+	/**
+	 * Creates the delivery for the specified batch of items, for a batch with more than one item the
+	 * archived document set requests of the items are merged into a single request so that the same
+	 * documents are sent whether they are delivered together or one at a time.
+	 * 
+	 * @param batch the items to deliver together
+	 * @param url the url to send to
+	 * @return the Delivery object
+	 */
+	private Delivery createDelivery(List<SubmissionOutboxItem> batch, String url) {
+		List<CaseReport> caseReports = new ArrayList<>(batch.size());
+		for (SubmissionOutboxItem item : batch) {
+			caseReports.add(item.getCaseReport());
+		}
+		
+		Object batchRequest = null;
+		if (batch.size() > 1) {
+			try {
+				List<ProvideAndRegisterDocumentSetRequestType> requests = new ArrayList<>(batch.size());
+				for (CaseReport caseReport : caseReports) {
+					try (InputStream in = documentStore.read(caseReport)) {
+						Object request = webServiceTemplate.getUnmarshaller().unmarshal(new StreamSource(in));
+						requests.add(((JAXBElement<ProvideAndRegisterDocumentSetRequestType>) request).getValue());
+					}
+				}
+				ProvideAndRegisterDocumentSetRequestType docRequest = ProvideAndRegisterDocGenerator.merge(requests);
+				batchRequest = objectFactory.createProvideAndRegisterDocumentSetRequest(docRequest);
+			}
+			catch (Exception e) {
+				log.warn("Failed to merge the document set requests for a batch, the documents will be sent one at a time",
+				    e);
+			}
+		}
+		
+		return new Delivery(batchRequest, caseReports, url);
+	}
+	
+	/**
+	 * Runs the specified deliveries using a pool of worker threads, each worker opens its own
+	 * OpenMRS session since the interceptors read global properties.
+	 * 
+	 * @return a list of the errors for the items with null entries for the successful deliveries
+	 */
+	private List<Throwable> deliverInParallel(List<Delivery> deliveries, int poolSize) {
+		final UserContext userContext = Context.getUserContext();
+		List<Callable<List<Throwable>>> tasks = new ArrayList<>(deliveries.size());
+		for (final Delivery delivery : deliveries) {
+			tasks.add(new Callable<List<Throwable>>() {
+				
+				@Override
+				public List<Throwable> call() {
+					try {
+						Context.openSession();
+						Context.setUserContext(userContext);
+						return delivery.call();
+					}
+					finally {
+						Context.closeSession();
+					}
+				}
+			});
+		}
+		
+		ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+		try {
+			List<Throwable> errors = new ArrayList<>();
+			List<Future<List<Throwable>>> futures = executor.invokeAll(tasks);
+			for (int i = 0; i < futures.size(); i++) {
+				try {
+					errors.addAll(futures.get(i).get());
+				}
+				catch (ExecutionException e) {
+					for (int j = 0; j < deliveries.get(i).caseReports.size(); j++) {
+						errors.add(e.getCause());
+					}
+				}
+			}
+			
+			return errors;
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new APIException("Interrupted while dispatching case report documents", e);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Sends the specified document set request to the specified url
+	 * 
+	 * @param request the document set request to send
+	 * @param url the url to send to
+	 * @throws Exception if the request fails to be sent or the response is not a success
+	 */
+	private void send(Object request, String url) throws Exception {
+		if (log.isDebugEnabled()) {
+			log.debug("Sending Case report document.....");
+		}
+		
+		Object response = webServiceTemplate.marshalSendAndReceive(url, request, messageCallback);
+		String lf = SystemUtils.LINE_SEPARATOR;
+		RegistryResponseType regResp = ((JAXBElement<RegistryResponseType>) response).getValue();
+		if (!XDSConstants.XDS_B_STATUS_SUCCESS.equals(regResp.getStatus())) {
+			StringBuffer sb = new StringBuffer();
+			if (regResp.getRegistryErrorList() != null && regResp.getRegistryErrorList().getRegistryError() != null) {
+				for (RegistryError re : regResp.getRegistryErrorList().getRegistryError()) {
+					sb.append("Severity: "
+					        + (StringUtils.isNotBlank(re.getSeverity()) ? re.getSeverity().substring(
+					            re.getSeverity().lastIndexOf(":") + 1) : "?") + ", Code: "
+					        + (StringUtils.isNotBlank(re.getErrorCode()) ? re.getErrorCode() : "?") + ", Message: "
+					        + (StringUtils.isNotBlank(re.getCodeContext()) ? re.getCodeContext() : "?") + lf);
+				}
+			}
+			
+			throw new APIException(sb.toString());
+		}
+		
+		if (log.isDebugEnabled()) {
+			log.debug("Case report document successfully sent");
+		}
+	}
+	
+	/**
+	 * Records the outcome of a delivery attempt for the specified item
+	 * 
+	 * @param item the outbox item to update
+	 * @param error the error that occurred or null if the delivery was successful
+	 */
+	private void updateItem(SubmissionOutboxItem item, Throwable error) {
+		item.setAttempts(item.getAttempts() + 1);
+		if (error == null) {
+			item.setStatus(SubmissionOutboxItem.Status.DELIVERED);
+			item.setLastError(null);
+		} else {
+			String message = error.getMessage() != null ? error.getMessage() : error.getClass().getName();
+			item.setLastError(StringUtils.abbreviate(message, 1024));
+			int maxAttempts = CaseReportUtil.getPositiveIntegerGlobalProperty(DocumentConstants.GP_OUTBOX_MAX_ATTEMPTS,
+			    DocumentConstants.DEFAULT_OUTBOX_MAX_ATTEMPTS);
+			if (item.getAttempts() >= maxAttempts) {
+				log.error("Giving up on delivering the document for " + item.getCaseReport() + " after "
+				        + item.getAttempts() + " attempts", error);
+				item.setStatus(SubmissionOutboxItem.Status.DEAD);
+			} else {
+				log.warn("Failed to deliver the document for " + item.getCaseReport() + ", will retry", error);
+				item.setNextAttemptDate(new Date(System.currentTimeMillis() + getRetryDelay(item.getAttempts())));
+			}
+		}
+		
+		Context.getService(CaseReportService.class).saveSubmissionOutboxItem(item);
+	}
+	
+	/**
+	 * Gets the delay in milliseconds before the next attempt, it is doubled after each failed
+	 * attempt and capped at a day
+	 */
+	private long getRetryDelay(int attempts) {
+		long delay = CaseReportUtil.getPositiveIntegerGlobalProperty(DocumentConstants.GP_OUTBOX_RETRY_DELAY,
+		    DocumentConstants.DEFAULT_OUTBOX_RETRY_DELAY) * 1000L;
+		for (int i = 1; i < attempts && delay < MAX_RETRY_DELAY; i++) {
+			delay *= 2;
+		}
+		
+		return Math.min(delay, MAX_RETRY_DELAY);
+	}
+	
+	/**
+	 * Encapsulates the documents of a batch of outbox items to deliver together, if the batch
+	 * request is rejected or fails to be sent, the saved documents are sent one at a time.
+	 */
+	private class Delivery implements Callable<List<Throwable>> {
+		
+		private Object batchRequest;
+		
+		private List<CaseReport> caseReports;
+		
+		private String url;
+		
+		Delivery(Object batchRequest, List<CaseReport> caseReports, String url) {
+			this.batchRequest = batchRequest;
+			this.caseReports = caseReports;
+			this.url = url;
+		}
+		
+		/**
+		 * @return a list of the errors for the documents with null entries for the successful ones
+		 * @see Callable#call()
+		 */
+		@Override
+		public List<Throwable> call() {
+			List<Throwable> errors = new ArrayList<>(caseReports.size());
+			if (batchRequest != null) {
+				try {
+					send(batchRequest, url);
+					for (int i = 0; i < caseReports.size(); i++) {
+						errors.add(null);
+					}
+					return errors;
+				}
+				catch (Throwable t) {
+					log.warn("Failed to deliver a batch of " + caseReports.size()
+					        + " documents, the documents will be sent one at a time", t);
+				}
+			}
+			
+			for (CaseReport caseReport : caseReports) {
+				try (InputStream in = documentStore.read(caseReport)) {
+					send(webServiceTemplate.getUnmarshaller().unmarshal(new StreamSource(in)), url);
+					errors.add(null);
+				}
+				catch (Throwable t) {
+					errors.add(t);
+				}
+			}
+			
+			return errors;
+		}
+	}
+}
@@ -0,0 +1,54 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.casereport;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.scheduler.tasks.AbstractTask;
+
+/**
+ * An instance of this task delivers the documents of the submitted case reports in the outbox to
+ * the HIE, it is registered by the module activator.
+ * 
+ * @see SubmissionDispatcher
+ */
+public class SubmissionDispatcherTask extends AbstractTask {
+	
+	protected Log log = LogFactory.getLog(getClass());
+	
+	/**
+	 * @see AbstractTask#execute()
+	 */
+	@Override
+	public void execute() {
+		if (!isExecuting) {
+			if (log.isDebugEnabled()) {
+				log.debug("Executing case report submission dispatcher task...");
+			}
+			
+			startExecuting();
+			
+			try {
+				int count = Context.getRegisteredComponents(SubmissionDispatcher.class).get(0).dispatch();
+				
+				if (log.isDebugEnabled()) {
+					log.debug("Case report submission dispatcher task processed " + count + " item(s)");
+				}
+			}
+			catch (Exception e) {
+				log.error("Error while running case report submission dispatcher task: ", e);
+			}
+			finally {
+				stopExecuting();
+			}
+		}
+	}
+}
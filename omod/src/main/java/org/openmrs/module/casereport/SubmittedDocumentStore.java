@@ -0,0 +1,60 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.casereport;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Archives the documents generated for submitted case reports, implementations must be safe to
+ * use from multiple threads.
+ */
+public interface SubmittedDocumentStore {
+	
+	/**
+	 * Saves the document for the specified submitted case report, replacing any previously saved
+	 * document for it. The document is streamed to the store by the specified writer, a document
+	 * that fails to be written completely isn't saved.
+	 * 
+	 * @param caseReport the submitted case report
+	 * @param writer the writer of the document contents
+	 * @throws IOException
+	 */
+	void save(CaseReport caseReport, DocumentWriter writer) throws IOException;
+	
+	/**
+	 * Opens a stream to read the saved document for the specified submitted case report, the caller
+	 * is responsible for closing it
+	 * 
+	 * @param caseReport the submitted case report
+	 * @return an InputStream for the document contents
+	 * @throws FileNotFoundException if no document is saved for the case report
+	 * @throws IOException
+	 */
+	InputStream read(CaseReport caseReport) throws IOException;
+	
+	/**
+	 * Writes the contents of a document to the output stream provided by a document store
+	 */
+	interface DocumentWriter {
+		
+		/**
+		 * Writes the document contents to the specified stream, implementations shouldn't close it
+		 * 
+		 * @param out the stream to write to
+		 * @throws IOException
+		 */
+		void write(OutputStream out) throws IOException;
+		
+	}
+
+}
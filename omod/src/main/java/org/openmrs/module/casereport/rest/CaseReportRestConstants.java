@@ -19,4 +19,10 @@ public class CaseReportRestConstants {
 	
 	public static final String PARAM_STATUS = "status";
 	
+	public static final String PARAM_TRIGGER = "trigger";
+	
+	public static final String PARAM_SORT = "sort";
+	
+	public static final String PARAM_ORDER = "order";
+
 }
@@ -9,25 +9,21 @@
  */
 package org.openmrs.module.casereport.rest.v1_0.controller;
 
-import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
 
-import javax.xml.bind.JAXBElement;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-
-import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.xml.serializer.OutputPropertiesFactory;
-import org.dcm4chee.xds2.infoset.ihe.ProvideAndRegisterDocumentSetRequestType;
 import org.openmrs.api.APIException;
+import org.openmrs.api.context.Context;
 import org.openmrs.module.casereport.CaseReport;
 import org.openmrs.module.casereport.CaseReportConstants;
-import org.openmrs.module.casereport.DocumentUtil;
+import org.openmrs.module.casereport.CdaExtractor;
+import org.openmrs.module.casereport.ConceptCache;
+import org.openmrs.module.casereport.DocumentConstants;
+import org.openmrs.module.casereport.DocumentToolkit;
+import org.openmrs.module.casereport.RenderedDocumentCache;
+import org.openmrs.module.casereport.SubmittedDocumentStore;
 import org.openmrs.module.casereport.api.CaseReportService;
 import org.openmrs.module.casereport.rest.CaseReportRestConstants;
 import org.openmrs.module.webservices.rest.SimpleObject;
@@ -38,11 +34,9 @@ import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
-import org.springframework.ws.client.core.WebServiceTemplate;
-import org.springframework.xml.transform.StringResult;
-import org.springframework.xml.transform.StringSource;
-import org.w3c.dom.Document;
+import org.springframework.web.context.request.WebRequest;
 
 @Controller
 @RequestMapping("/rest/" + CaseReportRestConstants.REST_NAMESPACE)
@@ -54,7 +48,10 @@ public class CaseReportController extends MainResourceController {
 	private CaseReportService service;
 	
 	@Autowired
-	private WebServiceTemplate webServiceTemplate;
+	private SubmittedDocumentStore documentStore;
+	
+	@Autowired
+	private RenderedDocumentCache documentCache;
 	
 	/**
 	 * @see MainResourceController#getNamespace()
@@ -64,43 +61,95 @@ public class CaseReportController extends MainResourceController {
 		return CaseReportRestConstants.REST_NAMESPACE;
 	}
 	
+	/**
+	 * Gets the CDA document of the submitted case report with the specified uuid, the rendered
+	 * document is cached and the response carries an ETag and Last-Modified header so that clients
+	 * can revalidate the document without it being sent again. The document is extracted from the
+	 * archived XDS envelope as it is streamed from the document store, if raw is true the CDA
+	 * document is returned as it was submitted instead of being re-indented.
+	 */
 	@RequestMapping(value = "/" + CaseReportConstants.MODULE_ID + "/{uuid}/document", method = RequestMethod.GET)
 	@ResponseBody
-	public Object getSubmittedCDAContents(@PathVariable("uuid") String uuid) {
+	public Object getSubmittedCDAContents(@PathVariable("uuid") String uuid,
+	                                      @RequestParam(value = "raw", required = false) boolean raw,
+	                                      WebRequest webRequest) {
 		
 		CaseReport cr = service.getCaseReportByUuid(uuid);
 		if (cr == null) {
 			throw new ObjectNotFoundException();
 		}
+		if (!cr.isSubmitted()) {
+			throw new APIException(cr + " is not submitted");
+		}
+		
+		String tag = null;
+		if (cr.getResolutionDate() != null) {
+			//A document is only replaced if the case report is submitted again
+			long lastModified = cr.getResolutionDate().getTime();
+			tag = "\"" + cr.getUuid() + "-" + lastModified + (raw ? "-raw" : "") + "\"";
+			boolean notModified = webRequest.checkNotModified(tag);
+			if (!notModified && webRequest.getHeader("If-None-Match") == null) {
+				notModified = webRequest.checkNotModified(lastModified);
+			}
+			if (notModified) {
+				return null;
+			}
+			
+			String contents = raw ? null : documentCache.get(cr.getUuid(), tag);
+			if (contents != null) {
+				SimpleObject so = new SimpleObject();
+				so.add("contents", contents);
+				return so;
+			}
+		}
 		
-		SimpleObject so = new SimpleObject();
-		String pnrDoc = DocumentUtil.getSubmittedDocumentContents(cr);
 		Exception e = null;
-		if (StringUtils.isNotBlank(pnrDoc)) {
-			try {
-				Object o = webServiceTemplate.getUnmarshaller().unmarshal(new StringSource(pnrDoc));
-				byte[] bytes = ((JAXBElement<ProvideAndRegisterDocumentSetRequestType>) o).getValue().getDocument().get(0)
-				        .getValue();
-				DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-				factory.setNamespaceAware(true);
-				DocumentBuilder db = factory.newDocumentBuilder();
-				Transformer transformer = TransformerFactory.newInstance().newTransformer();
-				transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
-				transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-				transformer.setOutputProperty(OutputPropertiesFactory.S_KEY_INDENT_AMOUNT, "2");
-				transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
-				Document cdaDoc = db.parse(new ByteArrayInputStream(bytes));
-				StringResult result = new StringResult();
-				transformer.transform(new DOMSource(cdaDoc), result);
-				so.add("contents", result.toString());
+		try (InputStream in = documentStore.read(cr)) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+			if (CdaExtractor.extract(in, out)) {
+				String contents;
+				if (raw) {
+					contents = out.toString(DocumentConstants.ENCODING);
+				} else {
+					contents = DocumentToolkit.prettyPrint(out.toByteArray());
+					if (tag != null) {
+						documentCache.put(cr.getUuid(), tag, contents);
+					}
+				}
+				SimpleObject so = new SimpleObject();
+				so.add("contents", contents);
 				
 				return so;
 			}
-			catch (Exception ex) {
-				e = ex;
-			}
+		}
+		catch (Exception ex) {
+			e = ex;
 		}
 		
 		throw new APIException("casereport.error.submittedCDAdoc.fail", e);
 	}
+	
+	/**
+	 * Gets the hit, miss and eviction counts of the rendered document cache
+	 */
+	@RequestMapping(value = "/documentcache", method = RequestMethod.GET)
+	@ResponseBody
+	public Object getDocumentCacheStatistics() {
+		Context.requirePrivilege(CaseReportConstants.PRIV_GET_CASE_REPORTS);
+		SimpleObject so = new SimpleObject();
+		so.putAll(documentCache.getStatistics());
+		return so;
+	}
+	
+	/**
+	 * Gets the size and the hit and miss counts of the cache of concepts looked up by mapping
+	 */
+	@RequestMapping(value = "/conceptcache", method = RequestMethod.GET)
+	@ResponseBody
+	public Object getConceptCacheStatistics() {
+		Context.requirePrivilege(CaseReportConstants.PRIV_GET_CASE_REPORTS);
+		SimpleObject so = new SimpleObject();
+		so.putAll(ConceptCache.getStatistics());
+		return so;
+	}
 }
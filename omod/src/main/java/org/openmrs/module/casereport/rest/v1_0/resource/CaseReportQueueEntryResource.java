@@ -0,0 +1,157 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.casereport.rest.v1_0.resource;
+
+import static org.openmrs.module.casereport.CaseReport.Status;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.casereport.CaseReportQueueEntry;
+import org.openmrs.module.casereport.api.CaseReportService;
+import org.openmrs.module.casereport.rest.CaseReportRestConstants;
+import org.openmrs.module.casereport.rest.CaseReportRestException;
+import org.openmrs.module.webservices.rest.web.RequestContext;
+import org.openmrs.module.webservices.rest.web.annotation.PropertyGetter;
+import org.openmrs.module.webservices.rest.web.annotation.Resource;
+import org.openmrs.module.webservices.rest.web.representation.Representation;
+import org.openmrs.module.webservices.rest.web.resource.api.PageableResult;
+import org.openmrs.module.webservices.rest.web.resource.impl.AlreadyPaged;
+import org.openmrs.module.webservices.rest.web.resource.impl.DelegatingCrudResource;
+import org.openmrs.module.webservices.rest.web.resource.impl.DelegatingResourceDescription;
+import org.openmrs.module.webservices.rest.web.response.ResourceDoesNotSupportOperationException;
+import org.openmrs.module.webservices.rest.web.response.ResponseException;
+
+/**
+ * A read-only summary of the case report queue backed by the denormalized queue entries, the queue
+ * can be filtered by patient name or identifier via the q parameter, by trigger name and by status,
+ * and sorted by any of the displayed properties, the filtering, sorting and paging are all done by
+ * the database.
+ */
+@Resource(name = CaseReportRestConstants.REST_NAMESPACE + "/queueentry", supportedClass = CaseReportQueueEntry.class, supportedOpenmrsVersions = { "1.11.*,1.12.*" })
+public class CaseReportQueueEntryResource extends DelegatingCrudResource<CaseReportQueueEntry> {
+	
+	private static final List<String> SORTABLE_PROPERTIES = Arrays.asList("patientName", "patientIdentifier",
+	    "triggerNames", "status", "dateCreated", "resolutionDate");
+	
+	/**
+	 * @see DelegatingCrudResource#getRepresentationDescription(Representation)
+	 */
+	@Override
+	public DelegatingResourceDescription getRepresentationDescription(Representation representation) {
+		DelegatingResourceDescription description = new DelegatingResourceDescription();
+		description.addProperty("uuid");
+		description.addProperty("display");
+		description.addProperty("patientUuid");
+		description.addProperty("patientName");
+		description.addProperty("patientIdentifier");
+		description.addProperty("triggerNames");
+		description.addProperty("status");
+		description.addProperty("dateCreated");
+		description.addProperty("resolutionDate");
+		description.addProperty("voided");
+		return description;
+	}
+	
+	@PropertyGetter("display")
+	public String getDisplayString(CaseReportQueueEntry delegate) {
+		return delegate.getPatientName() + " - " + delegate.getTriggerNames();
+	}
+	
+	/**
+	 * @see DelegatingCrudResource#doGetAll(RequestContext)
+	 */
+	@Override
+	protected PageableResult doGetAll(RequestContext context) throws ResponseException {
+		return getQueueEntries(context);
+	}
+	
+	/**
+	 * @see DelegatingCrudResource#doSearch(RequestContext)
+	 */
+	@Override
+	protected PageableResult doSearch(RequestContext context) {
+		return getQueueEntries(context);
+	}
+	
+	/**
+	 * Fetches the requested page of the queue entries matching the request parameters, only the
+	 * entries of the reports in the queue are returned unless the statuses are specified
+	 */
+	private PageableResult getQueueEntries(RequestContext context) {
+		Status[] statuses = new Status[] { Status.NEW, Status.DRAFT };
+		if (StringUtils.isNotBlank(context.getParameter(CaseReportRestConstants.PARAM_STATUS))) {
+			String[] values = StringUtils.split(context.getParameter(CaseReportRestConstants.PARAM_STATUS).trim(), ",");
+			statuses = new Status[values.length];
+			for (int i = 0; i < statuses.length; i++) {
+				statuses[i] = Status.valueOf(values[i]);
+			}
+		}
+		
+		String orderBy = context.getParameter(CaseReportRestConstants.PARAM_SORT);
+		if (StringUtils.isBlank(orderBy)) {
+			orderBy = "dateCreated";
+		} else if (!SORTABLE_PROPERTIES.contains(orderBy)) {
+			throw new CaseReportRestException("The queue can't be sorted by " + orderBy);
+		}
+		boolean asc = !"desc".equalsIgnoreCase(context.getParameter(CaseReportRestConstants.PARAM_ORDER));
+		
+		CaseReportService service = Context.getService(CaseReportService.class);
+		String query = context.getParameter("q");
+		String triggerName = context.getParameter(CaseReportRestConstants.PARAM_TRIGGER);
+		List<CaseReportQueueEntry> entries = service.getQueueEntries(query, triggerName, context.getIncludeAll(),
+		    orderBy, asc, context.getStartIndex(), context.getLimit(), statuses);
+		long count = service.getQueueEntryCount(query, triggerName, context.getIncludeAll(), statuses);
+		
+		return new AlreadyPaged<>(context, entries, context.getStartIndex() + entries.size() < count);
+	}
+	
+	/**
+	 * @see DelegatingCrudResource#getByUniqueId(String)
+	 */
+	@Override
+	public CaseReportQueueEntry getByUniqueId(String uniqueId) {
+		throw new ResourceDoesNotSupportOperationException();
+	}
+	
+	/**
+	 * @see DelegatingCrudResource#newDelegate()
+	 */
+	@Override
+	public CaseReportQueueEntry newDelegate() {
+		throw new ResourceDoesNotSupportOperationException("read-only resource");
+	}
+	
+	/**
+	 * @see DelegatingCrudResource#save(Object)
+	 */
+	@Override
+	public CaseReportQueueEntry save(CaseReportQueueEntry entry) {
+		throw new ResourceDoesNotSupportOperationException("read-only resource");
+	}
+	
+	/**
+	 * @see DelegatingCrudResource#delete(Object, String, RequestContext)
+	 */
+	@Override
+	protected void delete(CaseReportQueueEntry entry, String reason, RequestContext context) throws ResponseException {
+		throw new ResourceDoesNotSupportOperationException("read-only resource");
+	}
+	
+	/**
+	 * @see DelegatingCrudResource#purge(Object, RequestContext)
+	 */
+	@Override
+	public void purge(CaseReportQueueEntry entry, RequestContext context) throws ResponseException {
+		throw new ResourceDoesNotSupportOperationException("read-only resource");
+	}
+}
@@ -12,9 +12,11 @@ package org.openmrs.module.casereport.rest.v1_0.resource;
 import static org.openmrs.module.casereport.CaseReport.Status;
 
 import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import org.apache.commons.lang3.StringUtils;
-import org.codehaus.jackson.map.ObjectMapper;
 import org.openmrs.Patient;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.casereport.CaseReport;
@@ -22,6 +24,7 @@ import org.openmrs.module.casereport.CaseReportConstants;
 import org.openmrs.module.casereport.CaseReportForm;
 import org.openmrs.module.casereport.CaseReportTrigger;
 import org.openmrs.module.casereport.CaseReportUtil;
+import org.openmrs.module.casereport.JsonCodec;
 import org.openmrs.module.casereport.api.CaseReportService;
 import org.openmrs.module.casereport.rest.CaseReportRestConstants;
 import org.openmrs.module.casereport.rest.CaseReportRestException;
@@ -33,13 +36,15 @@ import org.openmrs.module.webservices.rest.web.annotation.PropertyGetter;
 import org.openmrs.module.webservices.rest.web.annotation.PropertySetter;
 import org.openmrs.module.webservices.rest.web.annotation.Resource;
 import org.openmrs.module.webservices.rest.web.api.RestService;
+import org.openmrs.module.webservices.rest.web.representation.CustomRepresentation;
 import org.openmrs.module.webservices.rest.web.representation.DefaultRepresentation;
 import org.openmrs.module.webservices.rest.web.representation.FullRepresentation;
+import org.openmrs.module.webservices.rest.web.representation.RefRepresentation;
 import org.openmrs.module.webservices.rest.web.representation.Representation;
 import org.openmrs.module.webservices.rest.web.resource.api.PageableResult;
+import org.openmrs.module.webservices.rest.web.resource.impl.AlreadyPaged;
 import org.openmrs.module.webservices.rest.web.resource.impl.DataDelegatingCrudResource;
 import org.openmrs.module.webservices.rest.web.resource.impl.DelegatingResourceDescription;
-import org.openmrs.module.webservices.rest.web.resource.impl.NeedsPaging;
 import org.openmrs.module.webservices.rest.web.response.GenericRestException;
 import org.openmrs.module.webservices.rest.web.response.ResourceDoesNotSupportOperationException;
 import org.openmrs.module.webservices.rest.web.response.ResponseException;
@@ -121,7 +126,7 @@ public class CaseReportResource extends DataDelegatingCrudResource<CaseReport> {
 			form = new CaseReportForm(delegate);
 		} else {
 			try {
-				form = new ObjectMapper().readValue(delegate.getReportForm(), CaseReportForm.class);
+				form = JsonCodec.readForm(delegate.getReportForm());
 			}
 			catch (IOException e) {
 				throw new GenericRestException("Failed to parse report form data", e);
@@ -188,14 +193,13 @@ public class CaseReportResource extends DataDelegatingCrudResource<CaseReport> {
 			}
 		}
 		
-		CaseReportService service = Context.getService(CaseReportService.class);
 		RestService rs = Context.getService(RestService.class);
 		if (StringUtils.isNotBlank(context.getParameter(CaseReportRestConstants.PARAM_PATIENT))) {
 			String uuid = context.getParameter(CaseReportRestConstants.PARAM_PATIENT);
 			patient = ((PatientResource1_9) rs.getResourceBySupportedClass(Patient.class)).getByUniqueId(uuid);
 		}
 		
-		return new NeedsPaging<>(service.getCaseReports(patient, context.getIncludeAll(), null, null, statuses), context);
+		return getCaseReports(patient, null, null, context, statuses);
 	}
 	
 	/**
@@ -205,9 +209,82 @@ public class CaseReportResource extends DataDelegatingCrudResource<CaseReport> {
 	protected PageableResult doGetAll(RequestContext context) throws ResponseException {
 		//This actually returns the case report queue and should never return all
 		Status[] statuses = new Status[] { Status.NEW, Status.DRAFT };
+		
+		return getCaseReports(null, "dateCreated", true, context, statuses);
+	}
+	
+	/**
+	 * Fetches the requested page of the case reports matching the specified arguments, the paging is
+	 * done by the database and a count query is used to tell if there are more results. The triggers
+	 * and patient details are fetched along with the reports if the representation includes them.
+	 */
+	private PageableResult getCaseReports(Patient patient, String orderBy, Boolean asc, RequestContext context,
+	                                      Status... statuses) {
 		CaseReportService service = Context.getService(CaseReportService.class);
+		boolean fetchTriggersAndPatient = includesTriggersOrPatient(context.getRepresentation());
+		List<CaseReport> caseReports = service.getCaseReports(patient, context.getIncludeAll(), orderBy, asc,
+		    context.getStartIndex(), context.getLimit(), fetchTriggersAndPatient, statuses);
+		long count = service.getCaseReportCount(patient, context.getIncludeAll(), statuses);
+		
+		return new AlreadyPaged<>(context, caseReports, context.getStartIndex() + caseReports.size() < count);
+	}
+	
+	/**
+	 * Checks if the specified representation includes the triggers or the patient, the display
+	 * property includes both of them
+	 *
+	 * @param representation the representation to check
+	 * @return true if the triggers or the patient are included otherwise false
+	 */
+	private boolean includesTriggersOrPatient(Representation representation) {
+		if (representation instanceof CustomRepresentation) {
+			Set<String> properties = getTopLevelProperties(((CustomRepresentation) representation).getRepresentation());
+			return properties.contains("display") || properties.contains("patient")
+			        || properties.contains("reportTriggers");
+		}
+		
+		return !(representation instanceof RefRepresentation);
+	}
+	
+	/**
+	 * Gets the names of the top level properties in the specified custom representation, the nested
+	 * representations of the properties are skipped e.g. (uuid,patient:(uuid,display)) yields uuid
+	 * and patient.
+	 *
+	 * @param spec the custom representation
+	 * @return the property names
+	 */
+	static Set<String> getTopLevelProperties(String spec) {
+		String properties = StringUtils.removeStart(spec.trim(), "custom:").trim();
+		if (properties.startsWith("(") && properties.endsWith(")")) {
+			properties = properties.substring(1, properties.length() - 1);
+		}
+		
+		Set<String> names = new HashSet<>();
+		StringBuilder name = new StringBuilder();
+		//Characters at a depth greater than zero belong to a nested representation
+		int depth = 0;
+		boolean inName = true;
+		for (char c : properties.toCharArray()) {
+			if (c == '(') {
+				depth++;
+			} else if (c == ')') {
+				depth--;
+			} else if (depth == 0) {
+				if (c == ',') {
+					names.add(name.toString().trim());
+					name.setLength(0);
+					inName = true;
+				} else if (c == ':') {
+					inName = false;
+				} else if (inName) {
+					name.append(c);
+				}
+			}
+		}
+		names.add(name.toString().trim());
 		
-		return new NeedsPaging(service.getCaseReports(null, context.getIncludeAll(), "dateCreated", true, statuses), context);
+		return names;
 	}
 	
 	/**
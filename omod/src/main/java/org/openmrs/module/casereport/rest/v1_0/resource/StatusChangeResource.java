@@ -11,10 +11,10 @@ package org.openmrs.module.casereport.rest.v1_0.resource;
 
 import java.io.IOException;
 
-import org.codehaus.jackson.map.ObjectMapper;
 import org.openmrs.api.APIException;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.casereport.CaseReport;
+import org.openmrs.module.casereport.JsonCodec;
 import org.openmrs.module.casereport.api.CaseReportService;
 import org.openmrs.module.casereport.rest.StatusChange;
 import org.openmrs.module.webservices.rest.web.RequestContext;
@@ -57,7 +57,7 @@ public class StatusChangeResource extends DelegatingSubResource<StatusChange, Ca
 		if (StatusChange.Action.SUBMIT == delegate.getAction()) {
 			CaseReport caseReport = getParent(delegate);
 			try {
-				caseReport.setReportForm(new ObjectMapper().writeValueAsString(delegate.getReportForm()));
+				caseReport.setReportForm(JsonCodec.writeForm(delegate.getReportForm()));
 			}
 			catch (IOException e) {
 				throw new APIException("Failed to serialize case report form data", e);
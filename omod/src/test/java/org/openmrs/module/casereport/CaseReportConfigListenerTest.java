@@ -0,0 +1,79 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.casereport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.AdministrationService;
+import org.openmrs.api.context.Context;
+import org.openmrs.web.test.BaseModuleWebContextSensitiveTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+public class CaseReportConfigListenerTest extends BaseModuleWebContextSensitiveTest {
+	
+	@Autowired
+	private CaseReportConfigListener listener;
+	
+	@Before
+	public void setup() {
+		CaseReportConfig.clear();
+		//The activator which registers the listener isn't run in tests
+		Context.getAdministrationService().addGlobalPropertyListener(listener);
+	}
+	
+	@After
+	public void after() {
+		Context.getAdministrationService().removeGlobalPropertyListener(listener);
+		CaseReportConfig.clear();
+	}
+	
+	/**
+	 * @see CaseReportConfigListener#globalPropertyChanged(GlobalProperty)
+	 * @verifies clear the config when a module global property is changed
+	 */
+	@Test
+	public void globalPropertyChanged_shouldClearTheConfigWhenAModuleGlobalPropertyIsChanged() throws Exception {
+		AdministrationService as = Context.getAdministrationService();
+		CaseReportConfig config = CaseReportConfig.get();
+		as.saveGlobalProperty(new GlobalProperty("some.other.property", "some value"));
+		assertSame(config, CaseReportConfig.get());
+		
+		as.saveGlobalProperty(new GlobalProperty(DocumentConstants.GP_ORG_NAME, "Some Clinic"));
+		
+		assertNotSame(config, CaseReportConfig.get());
+		assertEquals("Some Clinic", CaseReportConfig.get().getOrganisationName());
+	}
+	
+	/**
+	 * @see CaseReportConfigListener#globalPropertyChanged(GlobalProperty)
+	 * @verifies clear the config again after the transaction completes
+	 */
+	@Test
+	public void globalPropertyChanged_shouldClearTheConfigAgainAfterTheTransactionCompletes() throws Exception {
+		listener.globalPropertyChanged(new GlobalProperty(DocumentConstants.GP_ORG_NAME, "Some Clinic"));
+		//Simulates another thread loading the config before the transaction commits
+		CaseReportConfig config = CaseReportConfig.get();
+		assertSame(config, CaseReportConfig.get());
+		
+		for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+			synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+		}
+		
+		assertNotSame(config, CaseReportConfig.get());
+	}
+}
@@ -0,0 +1,72 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.casereport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.web.test.BaseModuleWebContextSensitiveTest;
+
+public class CaseReportConfigTest extends BaseModuleWebContextSensitiveTest {
+	
+	private static final String ORG_OID = "2.16.840.1.113883.3.7194.1.1";
+	
+	@Before
+	public void setup() {
+		CaseReportConfig.clear();
+	}
+	
+	/**
+	 * @see CaseReportConfig#get()
+	 * @verifies return the same snapshot until it is cleared
+	 */
+	@Test
+	public void get_shouldReturnTheSameSnapshotUntilItIsCleared() throws Exception {
+		CaseReportConfig config = CaseReportConfig.get();
+		assertNull(config.getOrganisationOID());
+		//Datasets are inserted directly into the database so the snapshot isn't discarded
+		executeDataSet("moduleTestData-HIE.xml");
+		
+		assertSame(config, CaseReportConfig.get());
+		assertNull(CaseReportConfig.get().getOrganisationOID());
+	}
+	
+	/**
+	 * @see CaseReportConfig#get()
+	 * @verifies load a new snapshot after it is cleared
+	 */
+	@Test
+	public void get_shouldLoadANewSnapshotAfterItIsCleared() throws Exception {
+		CaseReportConfig config = CaseReportConfig.get();
+		executeDataSet("moduleTestData-HIE.xml");
+		
+		CaseReportConfig.clear();
+		
+		assertNotSame(config, CaseReportConfig.get());
+		assertEquals(ORG_OID, CaseReportConfig.get().getOrganisationOID());
+	}
+	
+	/**
+	 * @see CaseReportConfig#getMappedHieIdentifier(String)
+	 * @verifies return the mapped HIE identifier ignoring the case of the uuid
+	 */
+	@Test
+	public void getMappedHieIdentifier_shouldReturnTheMappedHieIdentifierIgnoringTheCaseOfTheUuid() throws Exception {
+		executeDataSet("moduleTestData-HIE.xml");
+		CaseReportConfig config = CaseReportConfig.get();
+		
+		assertEquals("2.16.840.1.113883.1.3", config.getMappedHieIdentifier("1a339fe9-38bc-4ab3-b180-320988c0b968"));
+		assertEquals("2.16.840.1.113883.1.3", config.getMappedHieIdentifier("1A339FE9-38BC-4AB3-B180-320988C0B968"));
+	}
+}
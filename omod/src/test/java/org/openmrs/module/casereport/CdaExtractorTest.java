@@ -0,0 +1,51 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.casereport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+import org.junit.Test;
+import org.openmrs.util.OpenmrsClassLoader;
+
+public class CdaExtractorTest {
+	
+	/**
+	 * @see CdaExtractor#extract(InputStream, java.io.OutputStream)
+	 * @verifies write the decoded CDA document to the stream
+	 */
+	@Test
+	public void extract_shouldWriteTheDecodedCDADocumentToTheStream() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (InputStream in = OpenmrsClassLoader.getInstance().getResourceAsStream("submitted-doc.xml")) {
+			assertTrue(CdaExtractor.extract(in, out));
+		}
+		
+		assertEquals("<ClinicalDocument/>", out.toString(DocumentConstants.ENCODING));
+	}
+	
+	/**
+	 * @see CdaExtractor#extract(InputStream, java.io.OutputStream)
+	 * @verifies return false if the envelope has no document
+	 */
+	@Test
+	public void extract_shouldReturnFalseIfTheEnvelopeHasNoDocument() throws Exception {
+		String envelope = "<ProvideAndRegisterDocumentSetRequest xmlns=\"urn:ihe:iti:xds-b:2007\"/>";
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		
+		assertFalse(CdaExtractor.extract(new ByteArrayInputStream(envelope.getBytes(DocumentConstants.ENCODING)), out));
+		assertEquals(0, out.size());
+	}
+}
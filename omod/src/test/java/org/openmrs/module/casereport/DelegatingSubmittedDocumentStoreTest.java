@@ -0,0 +1,70 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.casereport;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.InputStream;
+import java.util.Date;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.context.Context;
+import org.openmrs.web.test.BaseModuleWebContextSensitiveTest;
+import org.springframework.beans.factory.annotation.Autowired;
+
+public class DelegatingSubmittedDocumentStoreTest extends BaseModuleWebContextSensitiveTest {
+	
+	@Autowired
+	private DelegatingSubmittedDocumentStore store;
+	
+	@Before
+	public void setup() {
+		CaseReportConfig.clear();
+		System.setProperty("OPENMRS_APPLICATION_DATA_DIRECTORY", SystemUtils.JAVA_IO_TMPDIR);
+	}
+	
+	@After
+	public void after() throws Exception {
+		//Discard the store so that other tests get the default one
+		store.destroy();
+		CaseReportConfig.clear();
+	}
+	
+	/**
+	 * @see DelegatingSubmittedDocumentStore#read(CaseReport)
+	 * @verifies read documents not found in the segment store from the file store
+	 */
+	@Test
+	public void read_shouldReadDocumentsNotFoundInTheSegmentStoreFromTheFileStore() throws Exception {
+		Context.getAdministrationService().saveGlobalProperty(
+		    new GlobalProperty(DocumentConstants.GP_SUBMITTED_DOCUMENT_STORE, DocumentConstants.DOCUMENT_STORE_SEGMENT));
+		CaseReport fileReport = new CaseReport();
+		fileReport.setResolutionDate(new Date());
+		FileUtils.writeStringToFile(DocumentUtil.getSubmittedCaseReportFile(fileReport), "<doc>file</doc>",
+		    DocumentConstants.ENCODING);
+		CaseReport segmentReport = new CaseReport();
+		segmentReport.setResolutionDate(new Date());
+		
+		store.save(segmentReport, TestUtils.createDocumentWriter("<doc>segment</doc>"));
+		
+		try (InputStream in = store.read(segmentReport)) {
+			assertEquals("<doc>segment</doc>", IOUtils.toString(in, DocumentConstants.ENCODING));
+		}
+		try (InputStream in = store.read(fileReport)) {
+			assertEquals("<doc>file</doc>", IOUtils.toString(in, DocumentConstants.ENCODING));
+		}
+	}
+}
@@ -0,0 +1,89 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.casereport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Test;
+import org.marc.everest.rmim.uv.cdar2.pocd_mt000040uv.ClinicalDocument;
+import org.openmrs.Provider;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.casereport.api.CaseReportService;
+import org.openmrs.web.test.BaseModuleWebContextSensitiveTest;
+
+public class DocumentToolkitTest extends BaseModuleWebContextSensitiveTest {
+	
+	private static final Log log = LogFactory.getLog(DocumentToolkitTest.class);
+	
+	/**
+	 * @see DocumentToolkit#prettyPrint(byte[])
+	 * @verifies indent the specified document
+	 */
+	@Test
+	public void prettyPrint_shouldIndentTheSpecifiedDocument() throws Exception {
+		byte[] xml = "<?xml version=\"1.0\"?><doc><title>Case Report</title></doc>".getBytes(DocumentConstants.ENCODING);
+		
+		String expected = "<doc>\n  <title>Case Report</title>\n</doc>";
+		assertEquals(expected, DocumentToolkit.prettyPrint(xml).trim().replace("\r\n", "\n"));
+		//The second call reuses the parser and transformer of the thread
+		assertEquals(expected, DocumentToolkit.prettyPrint(xml).trim().replace("\r\n", "\n"));
+	}
+	
+	/**
+	 * Compares the number of CDA documents formatted per second with the pooled formatters and with a
+	 * formatter created for every document as was previously done
+	 */
+	@Test
+	public void formatCda_shouldFormatMoreDocumentsPerSecondThanAFormatterCreatedPerDocument() throws Exception {
+		CaseReportConfig.clear();
+		executeDataSet("moduleTestData-initial.xml");
+		executeDataSet("moduleTestData-other.xml");
+		executeDataSet("moduleTestData-HIE.xml");
+		CaseReportForm form = new CaseReportForm(Context.getService(CaseReportService.class).getCaseReport(1));
+		Provider provider = Context.getProviderService().getProvider(1);
+		form.setSubmitter(new UuidAndValue(provider.getUuid(), provider.getIdentifier()));
+		ClinicalDocument cdaDocument = new ClinicalDocumentGenerator(form).generate();
+		final int warmUpCount = 5;
+		final int documentCount = 20;
+		
+		double[] documentsPerSecond = new double[2];
+		for (int i = 0; i < documentsPerSecond.length; i++) {
+			boolean pooled = i == 0;
+			//Warms up the JIT and the static caches of the formatters so that only the formatting is measured
+			for (int j = 0; j < warmUpCount; j++) {
+				format(cdaDocument, pooled);
+			}
+			long start = System.nanoTime();
+			for (int j = 0; j < documentCount; j++) {
+				format(cdaDocument, pooled);
+			}
+			documentsPerSecond[i] = documentCount * 1e9 / (System.nanoTime() - start);
+		}
+		
+		log.info(String.format("CDA documents formatted per second, pooled: %.1f, formatter per document: %.1f",
+		    documentsPerSecond[0], documentsPerSecond[1]));
+		assertTrue(documentsPerSecond[0] > documentsPerSecond[1]);
+	}
+	
+	private static byte[] format(ClinicalDocument cdaDocument, boolean pooled) {
+		if (pooled) {
+			return DocumentToolkit.formatCda(cdaDocument);
+		}
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		DocumentToolkit.createFormatter().graph(out, cdaDocument);
+		return out.toByteArray();
+	}
+}
@@ -21,6 +21,7 @@ import java.util.UUID;
 
 import org.apache.commons.lang3.SystemUtils;
 import org.hamcrest.CoreMatchers;
+import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -30,6 +31,11 @@ import org.openmrs.web.test.BaseModuleWebContextSensitiveTest;
 
 public class DocumentUtilTest extends BaseModuleWebContextSensitiveTest {
 	
+	@Before
+	public void setup() {
+		CaseReportConfig.clear();
+	}
+	
 	@Rule
 	public ExpectedException expectedException = ExpectedException.none();
 	
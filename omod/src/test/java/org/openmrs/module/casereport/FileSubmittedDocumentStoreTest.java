@@ -0,0 +1,96 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.casereport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Date;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.web.test.BaseModuleWebContextSensitiveTest;
+
+public class FileSubmittedDocumentStoreTest extends BaseModuleWebContextSensitiveTest {
+	
+	private FileSubmittedDocumentStore store = new FileSubmittedDocumentStore();
+	
+	@Before
+	public void setup() {
+		System.setProperty("OPENMRS_APPLICATION_DATA_DIRECTORY", SystemUtils.JAVA_IO_TMPDIR);
+	}
+	
+	/**
+	 * @see FileSubmittedDocumentStore#save(CaseReport, SubmittedDocumentStore.DocumentWriter)
+	 * @verifies write the document to the file for the case report
+	 */
+	@Test
+	public void save_shouldWriteTheDocumentToTheFileForTheCaseReport() throws Exception {
+		CaseReport cr = new CaseReport();
+		cr.setResolutionDate(new Date());
+		
+		store.save(cr, TestUtils.createDocumentWriter("<doc>first</doc>"));
+		store.save(cr, TestUtils.createDocumentWriter("<doc>second</doc>"));
+		
+		File docFile = DocumentUtil.getSubmittedCaseReportFile(cr);
+		assertEquals("<doc>second</doc>", FileUtils.readFileToString(docFile, DocumentConstants.ENCODING));
+		assertEquals(1, docFile.getParentFile().list(new PrefixFilter(cr.getUuid())).length);
+	}
+	
+	/**
+	 * @see FileSubmittedDocumentStore#save(CaseReport, SubmittedDocumentStore.DocumentWriter)
+	 * @verifies not leave a file behind if the writer fails
+	 */
+	@Test
+	public void save_shouldNotLeaveAFileBehindIfTheWriterFails() throws Exception {
+		CaseReport cr = new CaseReport();
+		cr.setResolutionDate(new Date());
+		
+		try {
+			store.save(cr, new SubmittedDocumentStore.DocumentWriter() {
+				
+				@Override
+				public void write(OutputStream out) throws IOException {
+					out.write("<doc>".getBytes(DocumentConstants.ENCODING));
+					throw new IOException("Failed to marshal");
+				}
+			});
+			fail("The writer error should have been rethrown");
+		}
+		catch (IOException e) {
+			assertEquals("Failed to marshal", e.getMessage());
+		}
+		
+		File docFile = DocumentUtil.getSubmittedCaseReportFile(cr);
+		assertFalse(docFile.exists());
+		assertEquals(0, docFile.getParentFile().list(new PrefixFilter(cr.getUuid())).length);
+	}
+	
+	private static class PrefixFilter implements FilenameFilter {
+		
+		private String prefix;
+		
+		PrefixFilter(String prefix) {
+			this.prefix = prefix;
+		}
+		
+		@Override
+		public boolean accept(File dir, String name) {
+			return name.startsWith(prefix);
+		}
+	}
+}
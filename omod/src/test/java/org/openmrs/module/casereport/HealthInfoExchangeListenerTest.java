@@ -9,32 +9,47 @@
  */
 package org.openmrs.module.casereport;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.List;
+
+import javax.xml.bind.JAXBElement;
+import javax.xml.transform.stream.StreamResult;
 
 import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.codehaus.jackson.map.ObjectMapper;
-import org.hamcrest.Matchers;
+import org.dcm4chee.xds2.infoset.ihe.ObjectFactory;
+import org.dcm4chee.xds2.infoset.ihe.ProvideAndRegisterDocumentSetRequestType;
+import org.dcm4chee.xds2.infoset.ihe.ProvideAndRegisterDocumentSetRequestType.Document;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
-import org.junit.rules.ExpectedException;
 import org.openmrs.Provider;
-import org.openmrs.api.APIException;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.casereport.api.CaseReportService;
 import org.openmrs.module.casereport.api.CaseReportSubmittedEvent;
 import org.openmrs.web.test.BaseModuleWebContextSensitiveTest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.ws.client.core.WebServiceTemplate;
+import org.springframework.xml.transform.StringResult;
 
 import com.github.tomakehurst.wiremock.client.WireMock;
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
 
 public class HealthInfoExchangeListenerTest extends BaseModuleWebContextSensitiveTest {
 	
+	private static final Log log = LogFactory.getLog(HealthInfoExchangeListenerTest.class);
+	
 	private static final DateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd");
 	
 	private static final Integer OpenHIM_PORT = TestUtils.getAvailablePort();
@@ -42,14 +57,15 @@ public class HealthInfoExchangeListenerTest extends BaseModuleWebContextSensitiv
 	@Autowired
 	private HealthInfoExchangeListener listener;
 	
-	@Rule
-	public WireMockRule wireMockRule = new WireMockRule(OpenHIM_PORT);
+	@Autowired
+	private WebServiceTemplate webServiceTemplate;
 	
 	@Rule
-	public ExpectedException expectedException = ExpectedException.none();
+	public WireMockRule wireMockRule = new WireMockRule(OpenHIM_PORT);
 	
 	@Before
 	public void setup() throws Exception {
+		CaseReportConfig.clear();
 		executeDataSet("moduleTestData-initial.xml");
 		executeDataSet("moduleTestData-other.xml");
 		executeDataSet("moduleTestData-HIE.xml");
@@ -59,7 +75,7 @@ public class HealthInfoExchangeListenerTest extends BaseModuleWebContextSensitiv
 	 * @see org.openmrs.module.casereport.HealthInfoExchangeListener#onApplicationEvent(CaseReportSubmittedEvent)
 	 */
 	@Test
-	public void onApplicationEvent_shouldSubmitTheDocumentSuccessfullyToTheConfiguredUrl() throws Exception {
+	public void onApplicationEvent_shouldSaveTheDocumentAndAddItToTheOutbox() throws Exception {
 		
 		CaseReportService service = Context.getService(CaseReportService.class);
 		CaseReport caseReport = service.getCaseReport(1);
@@ -72,42 +88,72 @@ public class HealthInfoExchangeListenerTest extends BaseModuleWebContextSensitiv
 		caseReport.setStatus(CaseReport.Status.SUBMITTED);
 		TestUtils.createPostStub(true);
 		TestUtils.setOpenHIMPort(OpenHIM_PORT);
+		assertTrue(service.getSubmissionOutboxItems(caseReport).isEmpty());
 		
 		listener.onApplicationEvent(new CaseReportSubmittedEvent(caseReport));
 		
-		final String path = "/xdsrepository";
-		String expectedUrl = "http://localhost:" + OpenHIM_PORT + path;
-		WireMock.verify(1,
-		    WireMock.postRequestedFor(WireMock.urlEqualTo(path)).withRequestBody(WireMock.containing(expectedUrl)));
-		
 		//Should have saved a copy to the filesystem
 		String docContents = DocumentUtil.getSubmittedDocumentContents(caseReport);
 		assertTrue(StringUtils.isNotBlank(docContents));
 		assertTrue(docContents.indexOf("ProvideAndRegisterDocumentSetRequest") > -1);
+		
+		//The document should only be sent by the dispatcher
+		WireMock.verify(0, WireMock.postRequestedFor(WireMock.urlEqualTo("/xdsrepository")));
+		List<SubmissionOutboxItem> items = service.getSubmissionOutboxItems(caseReport);
+		assertEquals(1, items.size());
+		assertEquals(SubmissionOutboxItem.Status.PENDING, items.get(0).getStatus());
+		assertEquals(0, items.get(0).getAttempts().intValue());
 	}
 	
 	/**
-	 * @see org.openmrs.module.casereport.HealthInfoExchangeListener#onApplicationEvent(CaseReportSubmittedEvent)
+	 * Compares the heap allocated by the current thread to archive a large document by marshalling
+	 * it to a string first as was previously done and by streaming it to the document store
 	 */
 	@Test
-	public void onApplicationEvent_shouldFailForAResponseThatIsNotASuccess() throws Exception {
-		
-		CaseReportService service = Context.getService(CaseReportService.class);
-		CaseReport caseReport = service.getCaseReport(1);
-		CaseReportForm form = new CaseReportForm(caseReport);
-		Provider p = Context.getProviderService().getProvider(1);
-		form.setSubmitter(new UuidAndValue(p.getUuid(), p.getIdentifier()));
-		caseReport.setReportForm(new ObjectMapper().writeValueAsString(form));
-		Date resolutionDate = DATE_FORMAT.parse("2017-04-26");
-		caseReport.setResolutionDate(resolutionDate);
-		TestUtils.createPostStub(false);
-		TestUtils.setOpenHIMPort(OpenHIM_PORT);
+	public void onApplicationEvent_shouldAllocateLessHeapWhenStreamingTheDocumentToTheStore() throws Exception {
+		Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+		final com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory
+		        .getThreadMXBean();
+		Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+		threadBean.setThreadAllocatedMemoryEnabled(true);
+		ProvideAndRegisterDocumentSetRequestType docRequest = new ProvideAndRegisterDocumentSetRequestType();
+		Document document = new Document();
+		document.setId("Document1");
+		document.setValue(new byte[2 * 1024 * 1024]);
+		docRequest.getDocument().add(document);
+		final JAXBElement rootElement = new ObjectFactory().createProvideAndRegisterDocumentSetRequest(docRequest);
+		final FileSubmittedDocumentStore store = new FileSubmittedDocumentStore();
+		final CaseReport caseReport = new CaseReport();
+		caseReport.setResolutionDate(new Date());
+		SubmittedDocumentStore.DocumentWriter stringWriter = new SubmittedDocumentStore.DocumentWriter() {
+			
+			@Override
+			public void write(OutputStream out) throws IOException {
+				StringResult result = new StringResult();
+				webServiceTemplate.getMarshaller().marshal(rootElement, result);
+				out.write(result.toString().getBytes(DocumentConstants.ENCODING));
+			}
+		};
+		SubmittedDocumentStore.DocumentWriter streamingWriter = new SubmittedDocumentStore.DocumentWriter() {
+			
+			@Override
+			public void write(OutputStream out) throws IOException {
+				webServiceTemplate.getMarshaller().marshal(rootElement, new StreamResult(out));
+			}
+		};
 		
-		expectedException.expect(APIException.class);
-		String errorMsg = "Severity: Error, Code: XDSDocumentUniqueIdError, Message: Document id 2.25.123 is duplicate"
-		        + System.getProperty("line.separator");
-		expectedException.expectMessage(Matchers.equalTo(errorMsg));
+		long[] allocated = new long[2];
+		SubmittedDocumentStore.DocumentWriter[] writers = { stringWriter, streamingWriter };
+		for (int i = 0; i < writers.length; i++) {
+			//The first save warms up the marshaller so that only the document itself is measured
+			store.save(caseReport, writers[i]);
+			long start = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+			store.save(caseReport, writers[i]);
+			allocated[i] = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - start;
+		}
 		
-		listener.onApplicationEvent(new CaseReportSubmittedEvent(caseReport));
+		log.info("Heap allocated to archive a document of " + document.getValue().length + " bytes, as a string: "
+		        + allocated[0] + " bytes, streamed: " + allocated[1] + " bytes");
+		assertTrue(allocated[1] < allocated[0]);
 	}
 }
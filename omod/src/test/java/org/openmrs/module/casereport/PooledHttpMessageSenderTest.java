@@ -0,0 +1,72 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.casereport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.net.URI;
+
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.Configurable;
+import org.junit.After;
+import org.junit.Test;
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.AdministrationService;
+import org.openmrs.api.context.Context;
+import org.openmrs.web.test.BaseModuleWebContextSensitiveTest;
+
+public class PooledHttpMessageSenderTest extends BaseModuleWebContextSensitiveTest {
+	
+	private static final URI HIE_URI = URI.create("http://localhost:8080/xdsrepository");
+	
+	private PooledHttpMessageSender sender = new PooledHttpMessageSender();
+	
+	@After
+	public void after() throws Exception {
+		sender.destroy();
+	}
+	
+	/**
+	 * @see PooledHttpMessageSender#createConnection(URI)
+	 * @verifies create the http client from the global properties
+	 */
+	@Test
+	public void createConnection_shouldCreateTheHttpClientFromTheGlobalProperties() throws Exception {
+		AdministrationService as = Context.getAdministrationService();
+		as.saveGlobalProperty(new GlobalProperty(DocumentConstants.GP_HIE_CONNECT_TIMEOUT, "5"));
+		as.saveGlobalProperty(new GlobalProperty(DocumentConstants.GP_HIE_READ_TIMEOUT, "15"));
+		
+		sender.createConnection(HIE_URI);
+		
+		RequestConfig config = ((Configurable) sender.getHttpClient()).getConfig();
+		assertEquals(5000, config.getConnectTimeout());
+		assertEquals(5000, config.getConnectionRequestTimeout());
+		assertEquals(15000, config.getSocketTimeout());
+	}
+	
+	/**
+	 * @see PooledHttpMessageSender#createConnection(URI)
+	 * @verifies reuse the http client for subsequent connections
+	 */
+	@Test
+	public void createConnection_shouldReuseTheHttpClientForSubsequentConnections() throws Exception {
+		sender.createConnection(HIE_URI);
+		HttpClient httpClient = sender.getHttpClient();
+		
+		sender.createConnection(HIE_URI);
+		
+		assertSame(httpClient, sender.getHttpClient());
+		RequestConfig config = ((Configurable) httpClient).getConfig();
+		assertEquals(DocumentConstants.DEFAULT_HIE_CONNECT_TIMEOUT * 1000, config.getConnectTimeout());
+		assertEquals(DocumentConstants.DEFAULT_HIE_READ_TIMEOUT * 1000, config.getSocketTimeout());
+	}
+}
@@ -15,10 +15,13 @@ import static org.openmrs.module.casereport.TestUtils.attributeContainsText;
 import static org.openmrs.module.casereport.TestUtils.elementExists;
 import static org.openmrs.module.casereport.TestUtils.elementHasText;
 import static org.openmrs.module.casereport.TestUtils.getAttribute;
+import static org.openmrs.module.casereport.TestUtils.getCount;
 import static org.openmrs.module.casereport.TestUtils.getElement;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
 import java.util.UUID;
 
 import javax.xml.bind.JAXBContext;
@@ -29,8 +32,13 @@ import javax.xml.parsers.DocumentBuilderFactory;
 import org.dcm4chee.xds2.common.XDSConstants;
 import org.dcm4chee.xds2.infoset.ihe.ObjectFactory;
 import org.dcm4chee.xds2.infoset.ihe.ProvideAndRegisterDocumentSetRequestType;
+import org.hamcrest.Matchers;
+import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.ExpectedException;
 import org.openmrs.Provider;
+import org.openmrs.api.APIException;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.casereport.api.CaseReportService;
 import org.openmrs.web.test.BaseModuleWebContextSensitiveTest;
@@ -38,8 +46,16 @@ import org.w3c.dom.Document;
 
 public class ProvideAndRegisterDocGeneratorTest extends BaseModuleWebContextSensitiveTest {
 	
+	@Before
+	public void setup() {
+		CaseReportConfig.clear();
+	}
+	
 	private ObjectFactory objectFactory = new ObjectFactory();
 	
+	@Rule
+	public ExpectedException expectedException = ExpectedException.none();
+	
 	/**
 	 * @see ProvideAndRegisterDocGenerator#generate()
 	 */
@@ -131,4 +147,125 @@ public class ProvideAndRegisterDocGeneratorTest extends BaseModuleWebContextSens
 		assertTrue(elementExists(doc, "//Association"));
 		assertTrue(elementHasText(doc, "//*[local-name() = 'Document']"));
 	}
+	
+	private CaseReportForm createForm(Integer caseReportId) {
+		CaseReport caseReport = Context.getService(CaseReportService.class).getCaseReport(caseReportId);
+		CaseReportForm form = new CaseReportForm(caseReport);
+		Provider provider = Context.getProviderService().getProvider(1);
+		form.setSubmitter(new UuidAndValue(provider.getUuid(), provider.getIdentifier()));
+		return form;
+	}
+	
+	/**
+	 * @see ProvideAndRegisterDocGenerator#generate()
+	 * @verifies generate a document set request with a document for each form
+	 */
+	@Test
+	public void generate_shouldGenerateADocumentSetRequestWithADocumentForEachForm() throws Exception {
+		executeDataSet("moduleTestData-initial.xml");
+		executeDataSet("moduleTestData-other.xml");
+		executeDataSet("moduleTestData-HIE.xml");
+		CaseReportForm form1 = createForm(1);
+		CaseReportForm form2 = createForm(3);
+		
+		ProvideAndRegisterDocumentSetRequestType docRequest = new ProvideAndRegisterDocGenerator(Arrays.asList(form1,
+		    form2)).generate();
+		JAXBElement docRequestElement = objectFactory.createProvideAndRegisterDocumentSetRequest(docRequest);
+		Marshaller marshaller = JAXBContext.newInstance(ProvideAndRegisterDocumentSetRequestType.class).createMarshaller();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		marshaller.marshal(docRequestElement, out);
+		Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+		        .parse(new ByteArrayInputStream(out.toByteArray()));
+		
+		assertEquals(2, docRequest.getDocument().size());
+		assertEquals("Document1", docRequest.getDocument().get(0).getId());
+		assertEquals("Document2", docRequest.getDocument().get(1).getId());
+		assertEquals(2, getCount(doc, "//ExtrinsicObject"));
+		assertEquals(1, getCount(doc, "//RegistryPackage"));
+		assertEquals("Document1", getAttribute(doc, "//Association[@id='Assoc1']", "targetObject"));
+		assertEquals("Document2", getAttribute(doc, "//Association[@id='Assoc2']", "targetObject"));
+		final String idScheme = "identificationScheme";
+		final String uniqueIdPath = "//ExtrinsicObject[@id='%s']/ExternalIdentifier[@" + idScheme + "='"
+		        + XDSConstants.UUID_XDSDocumentEntry_uniqueId + "']";
+		assertEquals(DocumentConstants.OID_PREFIX + DocumentUtil.convertToDecimal(UUID.fromString(form1.getReportUuid())),
+		    getAttribute(doc, String.format(uniqueIdPath, "Document1"), "value"));
+		assertEquals(DocumentConstants.OID_PREFIX + DocumentUtil.convertToDecimal(UUID.fromString(form2.getReportUuid())),
+		    getAttribute(doc, String.format(uniqueIdPath, "Document2"), "value"));
+	}
+	
+	/**
+	 * @see ProvideAndRegisterDocGenerator#generate()
+	 * @verifies fail if the forms are for different patients
+	 */
+	@Test
+	public void generate_shouldFailIfTheFormsAreForDifferentPatients() throws Exception {
+		executeDataSet("moduleTestData-initial.xml");
+		executeDataSet("moduleTestData-other.xml");
+		executeDataSet("moduleTestData-HIE.xml");
+		List<CaseReportForm> forms = Arrays.asList(createForm(1), createForm(4));
+		expectedException.expect(APIException.class);
+		String errorMsg = "All the documents in a submission set must be for the same patient";
+		expectedException.expectMessage(Matchers.equalTo(errorMsg));
+		
+		new ProvideAndRegisterDocGenerator(forms).generate();
+	}
+	
+	/**
+	 * @see ProvideAndRegisterDocGenerator#merge(List)
+	 * @verifies add the documents of the other requests to the submission set of the first
+	 */
+	@Test
+	public void merge_shouldAddTheDocumentsOfTheOtherRequestsToTheSubmissionSetOfTheFirst() throws Exception {
+		executeDataSet("moduleTestData-initial.xml");
+		executeDataSet("moduleTestData-other.xml");
+		executeDataSet("moduleTestData-HIE.xml");
+		CaseReportForm form1 = createForm(1);
+		CaseReportForm form2 = createForm(3);
+		ProvideAndRegisterDocumentSetRequestType request1 = new ProvideAndRegisterDocGenerator(form1).generate();
+		ProvideAndRegisterDocumentSetRequestType request2 = new ProvideAndRegisterDocGenerator(form2).generate();
+		byte[] document2 = request2.getDocument().get(0).getValue();
+		
+		ProvideAndRegisterDocumentSetRequestType docRequest = ProvideAndRegisterDocGenerator.merge(Arrays.asList(
+		    request1, request2));
+		JAXBElement docRequestElement = objectFactory.createProvideAndRegisterDocumentSetRequest(docRequest);
+		Marshaller marshaller = JAXBContext.newInstance(ProvideAndRegisterDocumentSetRequestType.class).createMarshaller();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		marshaller.marshal(docRequestElement, out);
+		Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+		        .parse(new ByteArrayInputStream(out.toByteArray()));
+		
+		assertEquals(2, docRequest.getDocument().size());
+		assertEquals("Document1", docRequest.getDocument().get(0).getId());
+		assertEquals("Document2", docRequest.getDocument().get(1).getId());
+		assertTrue(Arrays.equals(document2, docRequest.getDocument().get(1).getValue()));
+		assertEquals(2, getCount(doc, "//ExtrinsicObject"));
+		assertEquals(1, getCount(doc, "//RegistryPackage"));
+		assertEquals("Document1", getAttribute(doc, "//Association[@id='Assoc1']", "targetObject"));
+		assertEquals("Document2", getAttribute(doc, "//Association[@id='Assoc2']", "targetObject"));
+		assertEquals(0, getCount(doc, "//ExtrinsicObject[@id='Document2']/Classification[@classifiedObject!='Document2']"));
+		final String idScheme = "identificationScheme";
+		final String uniqueIdPath = "//ExtrinsicObject[@id='%s']/ExternalIdentifier[@" + idScheme + "='"
+		        + XDSConstants.UUID_XDSDocumentEntry_uniqueId + "']";
+		assertEquals(DocumentConstants.OID_PREFIX + DocumentUtil.convertToDecimal(UUID.fromString(form2.getReportUuid())),
+		    getAttribute(doc, String.format(uniqueIdPath, "Document2"), "value"));
+		assertEquals(0, getCount(doc, "//ExtrinsicObject[@id='Document2']/*[@id and not(starts-with(@id, 'Document2_'))]"));
+	}
+	
+	/**
+	 * @see ProvideAndRegisterDocGenerator#merge(List)
+	 * @verifies fail if the requests are for different patients
+	 */
+	@Test
+	public void merge_shouldFailIfTheRequestsAreForDifferentPatients() throws Exception {
+		executeDataSet("moduleTestData-initial.xml");
+		executeDataSet("moduleTestData-other.xml");
+		executeDataSet("moduleTestData-HIE.xml");
+		ProvideAndRegisterDocumentSetRequestType request1 = new ProvideAndRegisterDocGenerator(createForm(1)).generate();
+		ProvideAndRegisterDocumentSetRequestType request2 = new ProvideAndRegisterDocGenerator(createForm(4)).generate();
+		expectedException.expect(APIException.class);
+		String errorMsg = "All the documents in a submission set must be for the same patient";
+		expectedException.expectMessage(Matchers.equalTo(errorMsg));
+		
+		ProvideAndRegisterDocGenerator.merge(Arrays.asList(request1, request2));
+	}
 }
@@ -0,0 +1,66 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.casereport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class RenderedDocumentCacheTest {
+	
+	/**
+	 * @see RenderedDocumentCache#get(String, String)
+	 * @verifies return null if the cached document has a different tag
+	 */
+	@Test
+	public void get_shouldReturnNullIfTheCachedDocumentHasADifferentTag() throws Exception {
+		RenderedDocumentCache cache = new RenderedDocumentCache(100);
+		cache.put("uuid1", "tag1", "<doc/>");
+		
+		assertEquals("<doc/>", cache.get("uuid1", "tag1"));
+		assertNull(cache.get("uuid1", "tag2"));
+		assertEquals(1L, cache.getStatistics().get("hits"));
+		assertEquals(1L, cache.getStatistics().get("misses"));
+	}
+	
+	/**
+	 * @see RenderedDocumentCache#put(String, String, String)
+	 * @verifies evict the least recently used documents when the maximum length is exceeded
+	 */
+	@Test
+	public void put_shouldEvictTheLeastRecentlyUsedDocumentsWhenTheMaximumLengthIsExceeded() throws Exception {
+		RenderedDocumentCache cache = new RenderedDocumentCache(10);
+		cache.put("uuid1", "tag", "1234");
+		cache.put("uuid2", "tag", "1234");
+		cache.get("uuid1", "tag");
+		
+		cache.put("uuid3", "tag", "1234");
+		
+		assertEquals("1234", cache.get("uuid1", "tag"));
+		assertNull(cache.get("uuid2", "tag"));
+		assertEquals("1234", cache.get("uuid3", "tag"));
+		assertEquals(8L, cache.getStatistics().get("length"));
+		assertEquals(1L, cache.getStatistics().get("evictions"));
+	}
+	
+	/**
+	 * @see RenderedDocumentCache#put(String, String, String)
+	 * @verifies not cache a document longer than the maximum length
+	 */
+	@Test
+	public void put_shouldNotCacheADocumentLongerThanTheMaximumLength() throws Exception {
+		RenderedDocumentCache cache = new RenderedDocumentCache(10);
+		cache.put("uuid1", "tag", "12345678901");
+		
+		assertNull(cache.get("uuid1", "tag"));
+		assertEquals(0, cache.getStatistics().get("size"));
+	}
+}
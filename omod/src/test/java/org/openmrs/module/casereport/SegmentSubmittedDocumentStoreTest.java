@@ -0,0 +1,191 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.casereport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.filefilter.SuffixFileFilter;
+import org.apache.commons.lang.StringUtils;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SegmentSubmittedDocumentStoreTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private SegmentSubmittedDocumentStore store;
+	
+	@After
+	public void after() throws Exception {
+		if (store != null) {
+			store.close();
+		}
+	}
+	
+	private String read(CaseReport caseReport) throws IOException {
+		try (InputStream in = store.read(caseReport)) {
+			return IOUtils.toString(in, DocumentConstants.ENCODING);
+		}
+	}
+	
+	private void save(CaseReport caseReport, String document) throws IOException {
+		store.save(caseReport, TestUtils.createDocumentWriter(document));
+	}
+	
+	/**
+	 * @see SegmentSubmittedDocumentStore#save(CaseReport, byte[])
+	 * @verifies save and read back documents
+	 */
+	@Test
+	public void save_shouldSaveAndReadBackDocuments() throws Exception {
+		store = new SegmentSubmittedDocumentStore(folder.getRoot(), DocumentConstants.SEGMENT_SIZE);
+		CaseReport cr1 = new CaseReport();
+		CaseReport cr2 = new CaseReport();
+		String doc2 = "<doc>" + StringUtils.repeat("second", 1000) + "</doc>";
+		
+		save(cr1, "<doc>first</doc>");
+		save(cr2, doc2);
+		
+		assertEquals("<doc>first</doc>", read(cr1));
+		assertEquals(doc2, read(cr2));
+		save(cr1, "<doc>replaced</doc>");
+		assertEquals("<doc>replaced</doc>", read(cr1));
+	}
+	
+	/**
+	 * @see SegmentSubmittedDocumentStore#save(CaseReport, byte[])
+	 * @verifies start a new segment when the current one is full
+	 */
+	@Test
+	public void save_shouldStartANewSegmentWhenTheCurrentOneIsFull() throws Exception {
+		store = new SegmentSubmittedDocumentStore(folder.getRoot(), 150);
+		CaseReport cr1 = new CaseReport();
+		CaseReport cr2 = new CaseReport();
+		CaseReport cr3 = new CaseReport();
+		
+		save(cr1, "<doc>first</doc>");
+		save(cr2, "<doc>second</doc>");
+		save(cr3, "<doc>third</doc>");
+		
+		assertEquals(3, folder.getRoot().list(new SuffixFileFilter(".dat")).length);
+		assertEquals("<doc>first</doc>", read(cr1));
+		assertEquals("<doc>second</doc>", read(cr2));
+		assertEquals("<doc>third</doc>", read(cr3));
+	}
+	
+	/**
+	 * @see SegmentSubmittedDocumentStore#save(CaseReport, byte[])
+	 * @verifies load the index from existing segments
+	 */
+	@Test
+	public void save_shouldLoadTheIndexFromExistingSegments() throws Exception {
+		store = new SegmentSubmittedDocumentStore(folder.getRoot(), 150);
+		CaseReport cr1 = new CaseReport();
+		CaseReport cr2 = new CaseReport();
+		save(cr1, "<doc>first</doc>");
+		save(cr2, "<doc>second</doc>");
+		store.close();
+		
+		store = new SegmentSubmittedDocumentStore(folder.getRoot(), 150);
+		
+		assertEquals("<doc>first</doc>", read(cr1));
+		assertEquals("<doc>second</doc>", read(cr2));
+	}
+	
+	/**
+	 * @see SegmentSubmittedDocumentStore#save(CaseReport, byte[])
+	 * @verifies discard a partially written record at the end of the last segment
+	 */
+	@Test
+	public void save_shouldDiscardAPartiallyWrittenRecordAtTheEndOfTheLastSegment() throws Exception {
+		store = new SegmentSubmittedDocumentStore(folder.getRoot(), DocumentConstants.SEGMENT_SIZE);
+		CaseReport cr1 = new CaseReport();
+		save(cr1, "<doc>first</doc>");
+		store.close();
+		File segment = folder.getRoot().listFiles()[0];
+		long validLength = segment.length();
+		try (FileOutputStream out = new FileOutputStream(segment, true)) {
+			out.write(new byte[] { 0x43, 0x52, 0x44, 0x53, 0, 0, 0, 36, 1, 2, 3 });
+		}
+		
+		store = new SegmentSubmittedDocumentStore(folder.getRoot(), DocumentConstants.SEGMENT_SIZE);
+		CaseReport cr2 = new CaseReport();
+		save(cr2, "<doc>second</doc>");
+		
+		assertEquals("<doc>first</doc>", read(cr1));
+		assertEquals("<doc>second</doc>", read(cr2));
+		assertTrue(segment.length() > validLength);
+		store.close();
+		store = new SegmentSubmittedDocumentStore(folder.getRoot(), DocumentConstants.SEGMENT_SIZE);
+		assertEquals("<doc>second</doc>", read(cr2));
+	}
+	
+	/**
+	 * @see SegmentSubmittedDocumentStore#save(CaseReport, byte[])
+	 * @verifies write an index file for a full segment and load the index from it
+	 */
+	@Test
+	public void save_shouldWriteAnIndexFileForAFullSegmentAndLoadTheIndexFromIt() throws Exception {
+		store = new SegmentSubmittedDocumentStore(folder.getRoot(), 150);
+		CaseReport cr1 = new CaseReport();
+		CaseReport cr2 = new CaseReport();
+		save(cr1, "<doc>first</doc>");
+		assertFalse(new File(folder.getRoot(), "segment-000000.idx").exists());
+		save(cr2, "<doc>second</doc>");
+		assertTrue(new File(folder.getRoot(), "segment-000000.idx").exists());
+		assertFalse(new File(folder.getRoot(), "segment-000001.idx").exists());
+		store.close();
+		//The header of the record is corrupted so the document can only be found via the index file
+		File segment = new File(folder.getRoot(), "segment-000000.dat");
+		byte[] bytes = FileUtils.readFileToByteArray(segment);
+		bytes[0] = 0;
+		FileUtils.writeByteArrayToFile(segment, bytes);
+		
+		store = new SegmentSubmittedDocumentStore(folder.getRoot(), 150);
+		
+		assertEquals("<doc>first</doc>", read(cr1));
+		assertEquals("<doc>second</doc>", read(cr2));
+	}
+	
+	/**
+	 * @see SegmentSubmittedDocumentStore#save(CaseReport, byte[])
+	 * @verifies scan a full segment whose index file is invalid
+	 */
+	@Test
+	public void save_shouldScanAFullSegmentWhoseIndexFileIsInvalid() throws Exception {
+		store = new SegmentSubmittedDocumentStore(folder.getRoot(), 150);
+		CaseReport cr1 = new CaseReport();
+		CaseReport cr2 = new CaseReport();
+		save(cr1, "<doc>first</doc>");
+		save(cr2, "<doc>second</doc>");
+		store.close();
+		File indexFile = new File(folder.getRoot(), "segment-000000.idx");
+		FileUtils.writeStringToFile(indexFile, "invalid", DocumentConstants.ENCODING);
+		
+		store = new SegmentSubmittedDocumentStore(folder.getRoot(), 150);
+		
+		assertEquals("<doc>first</doc>", read(cr1));
+		assertEquals("<doc>second</doc>", read(cr2));
+		//The index file is written again after the scan
+		assertTrue(indexFile.length() > "invalid".length());
+	}
+}
@@ -0,0 +1,185 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.casereport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.openmrs.GlobalProperty;
+import org.openmrs.Provider;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.casereport.api.CaseReportService;
+import org.openmrs.module.casereport.api.CaseReportSubmittedEvent;
+import org.openmrs.web.test.BaseModuleWebContextSensitiveTest;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+
+public class SubmissionDispatcherTest extends BaseModuleWebContextSensitiveTest {
+	
+	private static final DateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd");
+	
+	private static final Integer OpenHIM_PORT = TestUtils.getAvailablePort();
+	
+	private static final String PATH = "/xdsrepository";
+	
+	@Autowired
+	private HealthInfoExchangeListener listener;
+	
+	@Autowired
+	private SubmissionDispatcher dispatcher;
+	
+	@Rule
+	public WireMockRule wireMockRule = new WireMockRule(OpenHIM_PORT);
+	
+	@Before
+	public void setup() throws Exception {
+		CaseReportConfig.clear();
+		executeDataSet("moduleTestData-initial.xml");
+		executeDataSet("moduleTestData-other.xml");
+		executeDataSet("moduleTestData-HIE.xml");
+		TestUtils.setOpenHIMPort(OpenHIM_PORT);
+	}
+	
+	private CaseReport addToOutbox() throws Exception {
+		return addToOutbox(1);
+	}
+	
+	private CaseReport addToOutbox(Integer caseReportId) throws Exception {
+		CaseReportService service = Context.getService(CaseReportService.class);
+		CaseReport caseReport = service.getCaseReport(caseReportId);
+		CaseReportForm form = new CaseReportForm(caseReport);
+		Provider p = Context.getProviderService().getProvider(1);
+		form.setSubmitter(new UuidAndValue(p.getUuid(), p.getIdentifier()));
+		caseReport.setReportForm(new ObjectMapper().writeValueAsString(form));
+		caseReport.setResolutionDate(DATE_FORMAT.parse("2017-04-26"));
+		caseReport.setStatus(CaseReport.Status.SUBMITTED);
+		listener.onApplicationEvent(new CaseReportSubmittedEvent(caseReport));
+		return caseReport;
+	}
+	
+	private SubmissionOutboxItem getOutboxItem(CaseReport caseReport) {
+		List<SubmissionOutboxItem> items = Context.getService(CaseReportService.class).getSubmissionOutboxItems(caseReport);
+		assertEquals(1, items.size());
+		return items.get(0);
+	}
+	
+	/**
+	 * @see SubmissionDispatcher#dispatch()
+	 * @verifies deliver the document and mark the item as delivered
+	 */
+	@Test
+	public void dispatch_shouldDeliverTheDocumentAndMarkTheItemAsDelivered() throws Exception {
+		CaseReport caseReport = addToOutbox();
+		TestUtils.createPostStub(true);
+		
+		assertEquals(1, dispatcher.dispatch());
+		
+		String expectedUrl = "http://localhost:" + OpenHIM_PORT + PATH;
+		WireMock.verify(1,
+		    WireMock.postRequestedFor(WireMock.urlEqualTo(PATH)).withRequestBody(WireMock.containing(expectedUrl)));
+		SubmissionOutboxItem item = getOutboxItem(caseReport);
+		assertEquals(SubmissionOutboxItem.Status.DELIVERED, item.getStatus());
+		assertEquals(1, item.getAttempts().intValue());
+		assertNull(item.getLastError());
+		//Should not be delivered again
+		assertEquals(0, dispatcher.dispatch());
+	}
+	
+	/**
+	 * @see SubmissionDispatcher#dispatch()
+	 * @verifies schedule a retry for a failed delivery
+	 */
+	@Test
+	public void dispatch_shouldScheduleARetryForAFailedDelivery() throws Exception {
+		CaseReport caseReport = addToOutbox();
+		TestUtils.createPostStub(false);
+		Date timeBeforeDispatch = new Date();
+		
+		assertEquals(1, dispatcher.dispatch());
+		
+		SubmissionOutboxItem item = getOutboxItem(caseReport);
+		assertEquals(SubmissionOutboxItem.Status.PENDING, item.getStatus());
+		assertEquals(1, item.getAttempts().intValue());
+		String errorMsg = "Severity: Error, Code: XDSDocumentUniqueIdError, Message: Document id 2.25.123 is duplicate"
+		        + System.getProperty("line.separator");
+		assertEquals(errorMsg, item.getLastError());
+		long delay = DocumentConstants.DEFAULT_OUTBOX_RETRY_DELAY * 1000L;
+		assertTrue(item.getNextAttemptDate().getTime() >= timeBeforeDispatch.getTime() + delay);
+		//Should not be retried before the next attempt date
+		assertEquals(0, dispatcher.dispatch());
+	}
+	
+	/**
+	 * @see SubmissionDispatcher#dispatch()
+	 * @verifies move the item to the dead letter state when the attempts are exhausted
+	 */
+	@Test
+	public void dispatch_shouldMoveTheItemToTheDeadLetterStateWhenTheAttemptsAreExhausted() throws Exception {
+		Context.getAdministrationService().saveGlobalProperty(
+		    new GlobalProperty(DocumentConstants.GP_OUTBOX_MAX_ATTEMPTS, "1"));
+		CaseReport caseReport = addToOutbox();
+		TestUtils.createPostStub(false);
+		
+		assertEquals(1, dispatcher.dispatch());
+		
+		SubmissionOutboxItem item = getOutboxItem(caseReport);
+		assertEquals(SubmissionOutboxItem.Status.DEAD, item.getStatus());
+		assertEquals(1, item.getAttempts().intValue());
+		assertEquals(0, dispatcher.dispatch());
+	}
+	
+	/**
+	 * @see SubmissionDispatcher#dispatch()
+	 * @verifies send the documents of the same patient in a single request
+	 */
+	@Test
+	public void dispatch_shouldSendTheDocumentsOfTheSamePatientInASingleRequest() throws Exception {
+		CaseReport caseReport1 = addToOutbox(1);
+		CaseReport caseReport2 = addToOutbox(3);
+		assertEquals(caseReport1.getPatient(), caseReport2.getPatient());
+		TestUtils.createPostStub(true);
+		
+		assertEquals(2, dispatcher.dispatch());
+		
+		WireMock.verify(1, WireMock.postRequestedFor(WireMock.urlEqualTo(PATH)));
+		assertEquals(SubmissionOutboxItem.Status.DELIVERED, getOutboxItem(caseReport1).getStatus());
+		assertEquals(SubmissionOutboxItem.Status.DELIVERED, getOutboxItem(caseReport2).getStatus());
+	}
+	
+	/**
+	 * @see SubmissionDispatcher#dispatch()
+	 * @verifies send the documents one at a time if the batch is rejected
+	 */
+	@Test
+	public void dispatch_shouldSendTheDocumentsOneAtATimeIfTheBatchIsRejected() throws Exception {
+		CaseReport caseReport1 = addToOutbox(1);
+		CaseReport caseReport2 = addToOutbox(3);
+		TestUtils.createPostStub(false);
+		
+		assertEquals(2, dispatcher.dispatch());
+		
+		//The batch request and then a request for each document
+		WireMock.verify(3, WireMock.postRequestedFor(WireMock.urlEqualTo(PATH)));
+		assertEquals(1, getOutboxItem(caseReport1).getAttempts().intValue());
+		assertEquals(1, getOutboxItem(caseReport2).getAttempts().intValue());
+	}
+}
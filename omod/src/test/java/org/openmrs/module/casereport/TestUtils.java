@@ -10,6 +10,7 @@
 package org.openmrs.module.casereport;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.ServerSocket;
 
 import javax.xml.xpath.XPath;
@@ -111,4 +112,14 @@ public class TestUtils {
 		as.saveGlobalProperty(gp);
 	}
 	
+	public static SubmittedDocumentStore.DocumentWriter createDocumentWriter(final String document) {
+		return new SubmittedDocumentStore.DocumentWriter() {
+			
+			@Override
+			public void write(OutputStream out) throws IOException {
+				out.write(document.getBytes(DocumentConstants.ENCODING));
+			}
+		};
+	}
+
 }
@@ -18,8 +18,11 @@ import static org.junit.Assert.assertTrue;
 import java.io.File;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 
+import javax.servlet.http.HttpServletResponse;
+
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
@@ -30,8 +33,10 @@ import org.junit.rules.ExpectedException;
 import org.openmrs.Patient;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.casereport.CaseReport;
+import org.openmrs.module.casereport.ConceptCache;
 import org.openmrs.module.casereport.DocumentConstants;
 import org.openmrs.module.casereport.DocumentUtil;
+import org.openmrs.module.casereport.RenderedDocumentCache;
 import org.openmrs.module.casereport.api.CaseReportService;
 import org.openmrs.module.casereport.rest.CaseReportRestConstants;
 import org.openmrs.module.casereport.rest.v1_0.resource.CaseReportResourceTest;
@@ -40,6 +45,7 @@ import org.openmrs.module.webservices.rest.test.Util;
 import org.openmrs.module.webservices.rest.web.RestConstants;
 import org.openmrs.util.OpenmrsClassLoader;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
 
 public class CaseReportControllerTest extends BaseCaseReportRestControllerTest {
@@ -47,6 +53,9 @@ public class CaseReportControllerTest extends BaseCaseReportRestControllerTest {
 	@Autowired
 	private CaseReportService service;
 	
+	@Autowired
+	private RenderedDocumentCache documentCache;
+	
 	@Rule
 	public ExpectedException expectedException = ExpectedException.none();
 	
@@ -54,6 +63,7 @@ public class CaseReportControllerTest extends BaseCaseReportRestControllerTest {
 	public void setup() throws Exception {
 		executeDataSet("moduleTestData-initial.xml");
 		executeDataSet("moduleTestData-other.xml");
+		documentCache.clear();
 	}
 	
 	@Override
@@ -155,6 +165,23 @@ public class CaseReportControllerTest extends BaseCaseReportRestControllerTest {
 		assertEquals(getAllCount(), Util.getResultsSize(result));
 	}
 	
+	@Test
+	public void shouldGetThePagesOfTheCaseReportQueue() throws Exception {
+		SimpleObject result = deserialize(handle(newGetRequest(getURI(), new Parameter(
+		        RestConstants.REQUEST_PROPERTY_FOR_LIMIT, "2"))));
+		assertEquals(2, Util.getResultsSize(result));
+		assertNotNull(result.get("links"));
+		String firstUuid = Util.getByPath(Util.getResultsList(result).get(0), "uuid").toString();
+		String secondUuid = Util.getByPath(Util.getResultsList(result).get(1), "uuid").toString();
+		
+		result = deserialize(handle(newGetRequest(getURI(), new Parameter(RestConstants.REQUEST_PROPERTY_FOR_LIMIT, "2"),
+		    new Parameter(RestConstants.REQUEST_PROPERTY_FOR_START_INDEX, "2"))));
+		assertEquals(getAllCount() - 2, Util.getResultsSize(result));
+		assertNull(result.get("links"));
+		String thirdUuid = Util.getByPath(Util.getResultsList(result).get(0), "uuid").toString();
+		assertEquals(3, new HashSet<>(Arrays.asList(firstUuid, secondUuid, thirdUuid)).size());
+	}
+	
 	@Test
 	public void shouldFetchAllUnvoidedSubmittedCaseReports() throws Exception {
 		SimpleObject responseData = deserialize(handle(newGetRequest(getURI(), new Parameter(
@@ -211,4 +238,65 @@ public class CaseReportControllerTest extends BaseCaseReportRestControllerTest {
 		assertTrue(StringUtils.isNotBlank(resp.getContentAsString()));
 		assertTrue(resp.getContentAsString().indexOf("<ClinicalDocument/>") > -1);
 	}
+	
+	@Test
+	public void shouldFetchTheRawDocumentOfAGivenCaseReport() throws Exception {
+		final String uuid = "5e7d57f0-9077-11e1-aaa4-00248140a5ec";
+		CaseReport cr = service.getCaseReportByUuid(uuid);
+		String contents = IOUtils.toString(OpenmrsClassLoader.getInstance().getResourceAsStream("submitted-doc.xml"));
+		FileUtils.writeStringToFile(DocumentUtil.getSubmittedCaseReportFile(cr), contents, DocumentConstants.ENCODING);
+		
+		SimpleObject result = deserialize(handle(newGetRequest(getURI() + "/" + uuid + "/document",
+		    new Parameter("raw", "true"))));
+		
+		assertEquals("<ClinicalDocument/>", result.get("contents"));
+		assertEquals(0, documentCache.getStatistics().get("size"));
+	}
+	
+	@Test
+	public void shouldReturnNotModifiedIfTheDocumentHasNotChanged() throws Exception {
+		final String uuid = "5e7d57f0-9077-11e1-aaa4-00248140a5ec";
+		CaseReport cr = service.getCaseReportByUuid(uuid);
+		String contents = IOUtils.toString(OpenmrsClassLoader.getInstance().getResourceAsStream("submitted-doc.xml"));
+		FileUtils.writeStringToFile(DocumentUtil.getSubmittedCaseReportFile(cr), contents, DocumentConstants.ENCODING);
+		MockHttpServletResponse resp = handle(newGetRequest(getURI() + "/" + uuid + "/document"));
+		String etag = resp.getHeader("ETag");
+		assertNotNull(etag);
+		
+		MockHttpServletRequest req = newGetRequest(getURI() + "/" + uuid + "/document");
+		req.addHeader("If-None-Match", etag);
+		resp = handle(req);
+		
+		assertEquals(HttpServletResponse.SC_NOT_MODIFIED, resp.getStatus());
+		assertTrue(StringUtils.isBlank(resp.getContentAsString()));
+	}
+	
+	@Test
+	public void shouldServeTheRenderedDocumentFromTheCacheOnSubsequentRequests() throws Exception {
+		final String uuid = "5e7d57f0-9077-11e1-aaa4-00248140a5ec";
+		CaseReport cr = service.getCaseReportByUuid(uuid);
+		String contents = IOUtils.toString(OpenmrsClassLoader.getInstance().getResourceAsStream("submitted-doc.xml"));
+		File file = DocumentUtil.getSubmittedCaseReportFile(cr);
+		FileUtils.writeStringToFile(file, contents, DocumentConstants.ENCODING);
+		String expected = handle(newGetRequest(getURI() + "/" + uuid + "/document")).getContentAsString();
+		long hits = (Long) documentCache.getStatistics().get("hits");
+		//The cached document should be returned even after the file is gone
+		assertTrue(file.delete());
+		
+		MockHttpServletResponse resp = handle(newGetRequest(getURI() + "/" + uuid + "/document"));
+		
+		assertEquals(expected, resp.getContentAsString());
+		assertEquals(hits + 1, documentCache.getStatistics().get("hits"));
+	}
+	
+	@Test
+	public void shouldGetTheConceptCacheStatistics() throws Exception {
+		ConceptCache.clear();
+		
+		SimpleObject stats = deserialize(handle(newGetRequest(getURI() + "/conceptcache")));
+		
+		assertEquals(0, Util.getByPath(stats, "size"));
+		assertEquals(ConceptCache.getHitCount(), ((Number) Util.getByPath(stats, "hits")).longValue());
+		assertEquals(ConceptCache.getMissCount(), ((Number) Util.getByPath(stats, "misses")).longValue());
+	}
 }
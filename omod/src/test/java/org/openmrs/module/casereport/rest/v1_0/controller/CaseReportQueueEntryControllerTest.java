@@ -0,0 +1,101 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * 
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.casereport.rest.v1_0.controller;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.openmrs.module.casereport.CaseReport;
+import org.openmrs.module.casereport.api.CaseReportService;
+import org.openmrs.module.casereport.rest.CaseReportRestConstants;
+import org.openmrs.module.casereport.rest.CaseReportRestException;
+import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.module.webservices.rest.test.Util;
+import org.openmrs.module.webservices.rest.web.RestConstants;
+import org.openmrs.module.webservices.rest.web.response.ResourceDoesNotSupportOperationException;
+import org.springframework.beans.factory.annotation.Autowired;
+
+public class CaseReportQueueEntryControllerTest extends BaseCaseReportRestControllerTest {
+	
+	@Autowired
+	private CaseReportService service;
+	
+	@Rule
+	public ExpectedException expectedException = ExpectedException.none();
+	
+	@Before
+	public void setup() throws Exception {
+		executeDataSet("moduleTestData-initial.xml");
+		service.addMissingQueueEntries();
+	}
+	
+	@Override
+	public String getURI() {
+		return "queueentry";
+	}
+	
+	@Override
+	public String getUuid() {
+		return null;
+	}
+	
+	@Override
+	public long getAllCount() {
+		return service.getQueueEntryCount(null, null, false, CaseReport.Status.NEW, CaseReport.Status.DRAFT);
+	}
+	
+	@Override
+	public void shouldGetDefaultByUuid() throws Exception {
+		expectedException.expect(ResourceDoesNotSupportOperationException.class);
+		super.shouldGetRefByUuid();
+	}
+	
+	@Override
+	public void shouldGetFullByUuid() throws Exception {
+		expectedException.expect(ResourceDoesNotSupportOperationException.class);
+		super.shouldGetRefByUuid();
+	}
+	
+	@Override
+	public void shouldGetRefByUuid() throws Exception {
+		expectedException.expect(ResourceDoesNotSupportOperationException.class);
+		super.shouldGetRefByUuid();
+	}
+	
+	@Test
+	public void shouldFilterTheQueueByTriggerName() throws Exception {
+		SimpleObject responseData = deserialize(handle(newGetRequest(getURI(), new Parameter(
+		        CaseReportRestConstants.PARAM_TRIGGER, "HIV Switched To Second Line"))));
+		assertEquals(1, Util.getResultsSize(responseData));
+		assertEquals("5f7d57f0-9077-11e1-aaa4-00248140a5ef",
+		    Util.getByPath(Util.getResultsList(responseData).get(0), "uuid"));
+	}
+	
+	@Test
+	public void shouldSortAndPageTheQueue() throws Exception {
+		SimpleObject responseData = deserialize(handle(newGetRequest(getURI(), new Parameter(
+		        CaseReportRestConstants.PARAM_SORT, "dateCreated"), new Parameter(CaseReportRestConstants.PARAM_ORDER,
+		        "desc"), new Parameter(RestConstants.REQUEST_PROPERTY_FOR_LIMIT, "2"))));
+		assertEquals(2, Util.getResultsSize(responseData));
+		assertEquals("6f7d57f0-9077-11e1-aaa4-00248140a5ef",
+		    Util.getByPath(Util.getResultsList(responseData).get(0), "uuid"));
+		assertEquals("7u7d57f0-9077-11e1-aaa4-00248140a5ec",
+		    Util.getByPath(Util.getResultsList(responseData).get(1), "uuid"));
+	}
+	
+	@Test
+	public void shouldFailForAPropertyTheQueueCannotBeSortedBy() throws Exception {
+		expectedException.expect(CaseReportRestException.class);
+		handle(newGetRequest(getURI(), new Parameter(CaseReportRestConstants.PARAM_SORT, "patientId")));
+	}
+}
@@ -20,6 +20,7 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.openmrs.module.casereport.CaseReport;
+import org.openmrs.module.casereport.CaseReportConfig;
 import org.openmrs.module.casereport.CaseReportForm;
 import org.openmrs.module.casereport.CaseReportUtil;
 import org.openmrs.module.casereport.TestUtils;
@@ -46,6 +47,7 @@ public class StatusChangeControllerTest extends BaseCaseReportRestControllerTest
 	
 	@Before
 	public void setup() throws Exception {
+		CaseReportConfig.clear();
 		executeDataSet("moduleTestData-initial.xml");
 	}
 	
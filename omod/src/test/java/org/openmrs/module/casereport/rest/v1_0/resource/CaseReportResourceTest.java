@@ -9,7 +9,15 @@
  */
 package org.openmrs.module.casereport.rest.v1_0.resource;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
 import org.junit.Before;
+import org.junit.Test;
 import org.openmrs.module.casereport.CaseReport;
 import org.openmrs.module.casereport.api.CaseReportService;
 import org.openmrs.module.webservices.rest.web.resource.impl.BaseDelegatingResourceTest;
@@ -67,4 +75,14 @@ public class CaseReportResourceTest extends BaseDelegatingResourceTest<CaseRepor
 		assertPropPresent("reportTriggers");
 		assertPropPresent("auditInfo");
 	}
+	
+	@Test
+	public void getTopLevelProperties_shouldSkipTheNestedRepresentations() throws Exception {
+		Set<String> properties = CaseReportResource.getTopLevelProperties("custom:(uuid,status,patientUuid:"
+		        + "(display),reportTriggers:(uuid,patient:(uuid)))");
+		
+		assertEquals(new HashSet<>(Arrays.asList("uuid", "status", "patientUuid", "reportTriggers")), properties);
+		assertFalse(properties.contains("patient"));
+		assertFalse(properties.contains("display"));
+	}
 }